@@ -31,12 +31,16 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
@@ -46,6 +50,9 @@ import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.bind.DatatypeConverter;
 
 import org.fakekoji.xmlrpc.server.JavaServerConstants;
 
@@ -71,6 +78,10 @@ public class FileReturningHandler implements HttpHandler {
      */
     private static final boolean ALLOW_FAKE_FILE = false;
 
+    private static final String SHA256_SUFFIX = ".sha256";
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
     @Override
     public void handle(HttpExchange t) throws IOException {
         //moving result toseparate thread is increasing performance by 1000%
@@ -116,8 +127,16 @@ public class FileReturningHandler implements HttpHandler {
                 }
                 if (f.exists()) {
                     sentFile(f, t);
+                } else if (isSha256Of(f)) {
+                    sentSha256(f, t);
                 } else {
                     LOGGER.info(f.getAbsolutePath() + " not found");
+                    if (isHead(t)) {
+                        // there is no body to close for HEAD
+                        t.sendResponseHeaders(404, -1);
+                        t.close();
+                        return;
+                    }
                     t.sendResponseHeaders(404, 0);
                     OutputStream os = t.getResponseBody();
                     os.close();
@@ -199,13 +218,117 @@ public class FileReturningHandler implements HttpHandler {
     private static void sentFile(File f, HttpExchange t) throws IOException {
         long size = f.length();
         LOGGER.info(f.getAbsolutePath() + " is " + size + " bytes long");
-        t.sendResponseHeaders(200, size);
+        t.getResponseHeaders().set("Accept-Ranges", "bytes");
+        if (isHead(t)) {
+            // clients (like the plugin) check existence of files by HEAD
+            t.getResponseHeaders().set("Content-Length", String.valueOf(size));
+            t.sendResponseHeaders(200, -1);
+            t.close();
+            return;
+        }
+        final String range = t.getRequestHeaders().getFirst("Range");
+        final Matcher matcher = range == null ? null : RANGE.matcher(range.trim());
+        // multiple ranges are not supported, whole file is sent instead
+        if (matcher == null || !matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+            t.sendResponseHeaders(200, size);
+            try (OutputStream os = t.getResponseBody();
+                 InputStream is = new FileInputStream(f)) {
+                copy(is, os);
+            }
+            return;
+        }
+        final long from;
+        long to;
+        if (matcher.group(1).isEmpty()) {
+            // last n bytes
+            from = Math.max(0, size - Long.parseLong(matcher.group(2)));
+            to = size - 1;
+        } else {
+            from = Long.parseLong(matcher.group(1));
+            to = matcher.group(2).isEmpty() ? size - 1 : Math.min(Long.parseLong(matcher.group(2)), size - 1);
+        }
+        if (from >= size || from > to) {
+            LOGGER.info(f.getAbsolutePath() + " has no range " + range);
+            t.getResponseHeaders().set("Content-Range", "bytes */" + size);
+            t.sendResponseHeaders(416, -1);
+            t.close();
+            return;
+        }
+        LOGGER.info(f.getAbsolutePath() + " sending range " + from + "-" + to);
+        t.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + size);
+        t.sendResponseHeaders(206, to - from + 1);
         try (OutputStream os = t.getResponseBody();
              InputStream is = new FileInputStream(f)) {
-            copy(is, os);
+            skip(is, from);
+            copy(is, os, to - from + 1);
+        }
+    }
+
+    private static void skip(InputStream is, long count) throws IOException {
+        while (count > 0) {
+            final long skipped = is.skip(count);
+            if (skipped <= 0) {
+                throw new IOException("Unable to skip " + count + " bytes");
+            }
+            count -= skipped;
+        }
+    }
+
+    private static void copy(InputStream from, OutputStream to, long count) throws IOException {
+        byte[] buf = new byte[BUF_SIZE];
+        while (count > 0) {
+            int r = from.read(buf, 0, (int) Math.min(buf.length, count));
+            if (r == -1) {
+                throw new IOException("File ended " + count + " bytes before end of range");
+            }
+            to.write(buf, 0, r);
+            count -= r;
         }
     }
 
+    private static File getSha256Base(File f) {
+        return new File(f.getParentFile(), f.getName().substring(0, f.getName().length() - SHA256_SUFFIX.length()));
+    }
+
+    private static boolean isSha256Of(File f) {
+        return f.getName().endsWith(SHA256_SUFFIX) && getSha256Base(f).isFile();
+    }
+
+    /**
+     * Checksum of each file is published next to it, in format of sha256sum,
+     * so clients can verify what they downloaded.
+     */
+    private static void sentSha256(File f, HttpExchange t) throws IOException {
+        final File base = getSha256Base(f);
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+        try (InputStream is = new DigestInputStream(new FileInputStream(base), digest)) {
+            byte[] buf = new byte[BUF_SIZE];
+            while (is.read(buf) != -1) {
+                ;
+            }
+        }
+        final byte[] result = (DatatypeConverter.printHexBinary(digest.digest()).toLowerCase() + "  " + base.getName() + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+        if (isHead(t)) {
+            t.sendResponseHeaders(200, -1);
+            t.close();
+            return;
+        }
+        t.sendResponseHeaders(200, result.length);
+        try (OutputStream os = t.getResponseBody()) {
+            os.write(result);
+        }
+    }
+
+    private static boolean isHead(HttpExchange t) {
+        return "HEAD".equalsIgnoreCase(t.getRequestMethod());
+    }
+
     private static final int BUF_SIZE = 0x1000; // 4K
 
     public static long copy(InputStream from, OutputStream to)
@@ -247,6 +370,11 @@ public class FileReturningHandler implements HttpHandler {
         String close = "  </body>\n</html>\n";
         String result = init + sb1.toString() + "<hr/>" + sb2.toString() + "<hr/>" + sb3.toString() + close;
         long size = result.length(); //yahnot perfect, ets assuemno one will use this on chinese chars
+        if (isHead(t)) {
+            t.sendResponseHeaders(200, -1);
+            t.close();
+            return;
+        }
         t.sendResponseHeaders(200, size);
         try (OutputStream os = t.getResponseBody()) {
             os.write(result.getBytes());
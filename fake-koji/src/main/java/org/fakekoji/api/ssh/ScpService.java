@@ -44,6 +44,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -67,6 +68,7 @@ import org.apache.sshd.server.scp.ScpCommandFactory;
 import org.apache.sshd.server.session.ServerSession;
 
 import org.fakekoji.core.FakeKojiDB;
+import org.fakekoji.core.JenkinsNotifier;
 import org.fakekoji.core.utils.OToolArchiveParser;
 import org.fakekoji.jobmanager.ConfigManager;
 import org.fakekoji.jobmanager.model.JDKProject;
@@ -191,6 +193,7 @@ import org.fakekoji.xmlrpc.server.JavaServerConstants;
 public class ScpService {
 
     private static final Logger LOGGER = Logger.getLogger(JavaServerConstants.FAKE_KOJI_LOGGER);
+    private static final int MAX_NOTIFIED_PROJECTS = 64;
     private static final String AUTHORIZED_KEYS = "authorized_keys";
     private static final String ID_RSA_PUB = "id_rsa.pub";
     private static final String terrible_env_var = "FAKE_KOJI_ALTERNATE_ID_RSA_PUB_OR_AUTHORISED_KEYS";
@@ -199,6 +202,14 @@ public class ScpService {
     private int port;
     final File configsRoot;
     private String[] keys;
+    private JenkinsNotifier jenkinsNotifier;
+    // project of recently uploaded builds, by nvr
+    private final Map<String, String> notifiedProjects = new LinkedHashMap<String, String>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_NOTIFIED_PROJECTS;
+        }
+    };
 
     private SshServer sshServer;
 
@@ -227,6 +238,14 @@ public class ScpService {
     public int getPort() {
         return port;
     }
+
+    /**
+     * @param jenkinsNotifier notifier to tell about uploaded builds, or null
+     * to not notify anybody
+     */
+    public void setJenkinsNotifier(JenkinsNotifier jenkinsNotifier) {
+        this.jenkinsNotifier = jenkinsNotifier;
+    }
     
     
 
@@ -308,8 +327,10 @@ public class ScpService {
                     }
 
                     @Override
-                    public void postProcessReceivedData(String string, boolean bln, Set<PosixFilePermission> set, ScpTimestamp st) throws IOException {
-                        //todo something here?
+                    public void postProcessReceivedData(String name, boolean bln, Set<PosixFilePermission> set, ScpTimestamp st) throws IOException {
+                        if (jenkinsNotifier != null) {
+                            notifyBuildArrived(mergeNameIntoPathOrNot(path, name));
+                        }
                     }
 
                     private Path mergeNameIntoPathOrNot(Path path, String name) {
@@ -607,6 +628,55 @@ public class ScpService {
 
     }
 
+    /**
+     * Binaries of the build were uploaded, so the build is there. Logs and
+     * data are not considered new builds.
+     */
+    private void notifyBuildArrived(Path uploaded) {
+        final String[] parts;
+        try {
+            final String path = deductPathName(uploaded.toString());
+            if (path.contains("/data/")) {
+                return;
+            }
+            parts = path.split("/");
+        } catch (Exception ex) {
+            LOGGER.info("Not notifying about " + uploaded + ", it is not a build: " + ex);
+            return;
+        }
+        final String nvr = parts[0] + "-" + parts[1] + "-" + parts[2];
+        String project;
+        synchronized (notifiedProjects) {
+            // build is uploaded file by file, configs are loaded only until one of them is recognized
+            project = notifiedProjects.get(nvr);
+            if (project == null) {
+                project = findProject(uploaded);
+                if (project != null) {
+                    notifiedProjects.put(nvr, project);
+                }
+            }
+        }
+        if (project == null) {
+            LOGGER.info("Not notifying about " + nvr + ", its project is unknown");
+            return;
+        }
+        jenkinsNotifier.buildArrived(nvr, project);
+    }
+
+    private String findProject(Path uploaded) {
+        try {
+            final List<JDKProject> jdkProjects = ConfigManager.create(configsRoot.getAbsolutePath())
+                    .getJdkProjectStorage()
+                    .loadAll(JDKProject.class);
+            return new OToolArchiveParser(jdkProjects).parse(uploaded.getFileName().toString())
+                    .map(OToolArchive::getProjectName)
+                    .orElse(null);
+        } catch (StorageException ex) {
+            LOGGER.warning(ex.getMessage());
+            return null;
+        }
+    }
+
     private NVRA parseNVRA(String fileName) {
         final List<JDKProject> jdkProjects;
         try {
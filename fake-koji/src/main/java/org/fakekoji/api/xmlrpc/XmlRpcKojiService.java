@@ -24,46 +24,67 @@
 package org.fakekoji.api.xmlrpc;
 
 import hudson.plugins.scm.koji.Constants;
+import org.apache.xmlrpc.XmlRpcException;
 import org.apache.xmlrpc.server.XmlRpcHandlerMapping;
 import org.apache.xmlrpc.server.XmlRpcServerConfigImpl;
-import org.apache.xmlrpc.webserver.WebServer;
+import org.apache.xmlrpc.webserver.XmlRpcServlet;
+import org.apache.xmlrpc.webserver.XmlRpcServletServer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
 import org.fakekoji.core.AccessibleSettings;
 import org.fakekoji.core.FakeKojiDB;
 import org.fakekoji.xmlrpc.server.JavaServerConstants;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetBuildDetail;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetBuildList;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetChangeToken;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetPackageId;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListArchives;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListBuilds;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListRPMs;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListTagged;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListTags;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.MultiCall;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.ArchiveList;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.BuildList;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.ChangeToken;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.FakeBuildDetail;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.FakeBuildList;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.MultiCallResponse;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.PackageId;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.RPMList;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.TagSet;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.XmlRpcResponse;
 
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This Server implements Koji XmlRpc API (It is called by jenkins koji plugin )
  *
  * Based on code, which was originally in JavaServer class.
+ *
+ * Served by jetty, so connections are kept alive, and responses are gzip
+ * compressed for clients asking for it. Server announces it accepts compressed
+ * requests too (by Accept-Encoding response header).
  */
 public class XmlRpcKojiService {
 
     private static final Logger LOGGER = Logger.getLogger(JavaServerConstants.FAKE_KOJI_LOGGER);
 
-    private WebServer webServer;
+    private Server server;
     AccessibleSettings settings;
 
     public XmlRpcKojiService(AccessibleSettings settings) {
         this.settings = settings;
-        this.webServer = new WebServer(settings.getXmlRpcPort());
     }
 
     /**
@@ -93,14 +114,12 @@ public class XmlRpcKojiService {
     }
 
     public void start() throws IOException {
-        webServer = new WebServer(settings.getXmlRpcPort());
-        webServer.setParanoid(false);
-        XmlRpcServerConfigImpl config = new XmlRpcServerConfigImpl();
-        config.setEnabledForExtensions(true);
-        webServer.getXmlRpcServer().setConfig(config);
-
-        XmlRpcHandlerMapping xxx = string -> xmlRpcRequest -> {
+        final XmlRpcHandlerMapping xxx = string -> xmlRpcRequest -> {
             LOGGER.info("Requested: " + xmlRpcRequest.getMethodName());
+            if (xmlRpcRequest.getMethodName().equals(Constants.getChangeToken)) {
+                // must stay cheap, so no db is created
+                return getChangeToken(GetChangeToken.create(xmlRpcRequest.getParameter(0))).toObject();
+            }
             //need reinitializzing, as new  build could be added
             FakeKojiDB kojiDb = new FakeKojiDB(settings);
             if (xmlRpcRequest.getMethodName().equals("sample.sum")) {
@@ -108,46 +127,118 @@ public class XmlRpcKojiService {
                 return sum(xmlRpcRequest.getParameter(0), xmlRpcRequest.getParameter(1));
             }
             final Object parameter = xmlRpcRequest.getParameter(0);
-
-            final XmlRpcResponse response;
-            switch (xmlRpcRequest.getMethodName()) {
-                case Constants.getPackageID:
-                    response = new PackageId(kojiDb.getPkgId(GetPackageId.create(parameter).getPackageName()));
-                    break;
-                case Constants.listBuilds:
-                    response = new BuildList(kojiDb.getProjectBuilds(ListBuilds.create(parameter).getPackageId()));
-                    break;
-                case Constants.listTags:
-                    response = new TagSet(kojiDb.getTags(ListTags.create(parameter).getBuildId()));
-                    break;
-                case Constants.listRPMs:
-                    final ListRPMs listRPMsParams = ListRPMs.create(parameter);
-                    response = new RPMList(kojiDb.getRpms(listRPMsParams.getBuildId(), listRPMsParams.getArchs()));
-                    break;
-                case Constants.listArchives:
-                    final ListArchives listArchivesParams = ListArchives.create(parameter);
-                    response = new ArchiveList(kojiDb.getArchives(listArchivesParams.getBuildId(), listArchivesParams.getArchs()));
-                    break;
-                case Constants.getBuildList:
-                    final GetBuildList getBuildListParams = GetBuildList.create(parameter);
-                    response = new FakeBuildList(kojiDb.getBuildList(getBuildListParams));
-                    break;
-                case Constants.getBuildDetail:
-                    final GetBuildDetail getBuildDetailParams = GetBuildDetail.create(parameter);
-                    response = new FakeBuildDetail(kojiDb.getBuildDetail(getBuildDetailParams));
-                    break;
-                default:
-                    return null;
+            if (xmlRpcRequest.getMethodName().equals(Constants.multicall)) {
+                return multicall(kojiDb, MultiCall.create(parameter)).toObject();
             }
-            return response.toObject();
+            final XmlRpcResponse response = execute(kojiDb, xmlRpcRequest.getMethodName(), parameter);
+            return response == null ? null : response.toObject();
         };
-        webServer.getXmlRpcServer().setHandlerMapping(xxx);
-        //server.addHandler("sample", new JavaServer());
-        webServer.start();
+        final ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(new KojiServlet(xxx)), "/*");
+        server = new Server(settings.getXmlRpcPort());
+        server.setHandler(context);
+        try {
+            server.start();
+        } catch (Exception ex) {
+            throw new IOException("Failed to start XML-RPC server on port " + settings.getXmlRpcPort(), ex);
+        }
+    }
+
+    private static class KojiServlet extends XmlRpcServlet {
+
+        private final XmlRpcHandlerMapping handlerMapping;
+
+        KojiServlet(XmlRpcHandlerMapping handlerMapping) {
+            this.handlerMapping = handlerMapping;
+        }
+
+        @Override
+        protected XmlRpcServletServer newXmlRpcServer(ServletConfig servletConfig) throws XmlRpcException {
+            final XmlRpcServletServer xmlRpcServer = super.newXmlRpcServer(servletConfig);
+            // extensions are needed for nil values and for gzip
+            final XmlRpcServerConfigImpl config = new XmlRpcServerConfigImpl();
+            config.setEnabledForExtensions(true);
+            xmlRpcServer.setConfig(config);
+            return xmlRpcServer;
+        }
+
+        @Override
+        protected XmlRpcHandlerMapping newXmlRpcHandlerMapping() {
+            return handlerMapping;
+        }
+
+        @Override
+        public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+            response.setHeader("Accept-Encoding", "gzip");
+            super.doPost(request, response);
+        }
+    }
+
+    private static XmlRpcResponse execute(FakeKojiDB kojiDb, String methodName, Object parameter) {
+        switch (methodName) {
+            case Constants.getPackageID:
+                return new PackageId(kojiDb.getPkgId(GetPackageId.create(parameter).getPackageName()));
+            case Constants.listBuilds:
+                return new BuildList(kojiDb.getProjectBuilds(ListBuilds.create(parameter).getPackageId()));
+            case Constants.listTags:
+                return new TagSet(kojiDb.getTags(ListTags.create(parameter).getBuildId()));
+            case Constants.listTagged:
+                final ListTagged listTaggedParams = ListTagged.create(parameter);
+                return new BuildList(kojiDb.getTaggedBuilds(listTaggedParams.getTag(), listTaggedParams.getPackageName()));
+            case Constants.listRPMs:
+                final ListRPMs listRPMsParams = ListRPMs.create(parameter);
+                return new RPMList(kojiDb.getRpms(listRPMsParams.getBuildId(), listRPMsParams.getArchs()));
+            case Constants.listArchives:
+                final ListArchives listArchivesParams = ListArchives.create(parameter);
+                return new ArchiveList(kojiDb.getArchives(listArchivesParams.getBuildId(), listArchivesParams.getArchs()));
+            case Constants.getBuildList:
+                final GetBuildList getBuildListParams = GetBuildList.create(parameter);
+                return new FakeBuildList(kojiDb.getBuildList(getBuildListParams));
+            case Constants.getBuildDetail:
+                final GetBuildDetail getBuildDetailParams = GetBuildDetail.create(parameter);
+                return new FakeBuildDetail(kojiDb.getBuildDetail(getBuildDetailParams));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Projects are not mapped to packages here, as it would need the configs,
+     * so project's token covers all packages.
+     */
+    private ChangeToken getChangeToken(GetChangeToken params) {
+        final String packageName = params.getProjectName() == null ? params.getPackageName() : null;
+        return new ChangeToken(FakeKojiDB.getChangeToken(settings.getDbFileRoot(), packageName));
+    }
+
+    /**
+     * All calls of the multicall are served from the same db snapshot. Failure
+     * of one call is reported as fault and does not affect the others.
+     */
+    private static MultiCallResponse multicall(FakeKojiDB kojiDb, MultiCall multiCall) {
+        final List<Object> results = new ArrayList<>(multiCall.getCalls().size());
+        for (XmlRpcRequestParams call : multiCall.getCalls()) {
+            try {
+                final XmlRpcResponse response = execute(kojiDb, call.getMethodName(), call.toObject());
+                if (response == null) {
+                    results.add(new MultiCallResponse.Fault(1, "Unknown method: " + call.getMethodName()));
+                } else {
+                    results.add(response.toObject());
+                }
+            } catch (Exception ex) {
+                LOGGER.log(Level.WARNING, "Failed to execute " + call.getMethodName() + " in " + Constants.multicall, ex);
+                results.add(new MultiCallResponse.Fault(1, ex.toString()));
+            }
+        }
+        return new MultiCallResponse(results);
     }
 
     public void stop() {
-        webServer.shutdown();
+        try {
+            server.stop();
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to stop XML-RPC server", ex);
+        }
     }
 
 }
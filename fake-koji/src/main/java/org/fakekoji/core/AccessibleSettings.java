@@ -47,6 +47,7 @@ public class AccessibleSettings {
     private URL xmlRpcUrl;
     private URL downloadUrl;
     private URL jenkinsUrlString;
+    private String jenkinsNotifyToken;
     private ProjectMapping projectMapping;
 
     public AccessibleSettings(
@@ -178,6 +179,18 @@ public class AccessibleSettings {
         return jenkinsUrlString;
     }
 
+    /**
+     * @return token jenkins accepts notifications about new builds with, or
+     * null if jenkins is not notified
+     */
+    public String getJenkinsNotifyToken() {
+        return jenkinsNotifyToken;
+    }
+
+    public void setJenkinsNotifyToken(String jenkinsNotifyToken) {
+        this.jenkinsNotifyToken = jenkinsNotifyToken;
+    }
+
     public URL getDownloadUrl() {
         return downloadUrl;
     }
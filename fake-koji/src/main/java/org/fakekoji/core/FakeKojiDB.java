@@ -83,6 +83,41 @@ public class FakeKojiDB {
 
     }
 
+    /**
+     * Token, which changes whenever a build of the package is added, removed,
+     * or gets new files (binaries, logs, data). It is based on modification
+     * times of directories only, so it is much cheaper than reading the whole
+     * db. If package is null, token covers all packages.
+     * <p>
+     * Structure is package/version/release/arch/files and
+     * package/version/release/data/logs/arch/files.
+     */
+    public static String getChangeToken(File dbRoot, String packageName) {
+        final File root = packageName == null ? dbRoot : new File(dbRoot, packageName);
+        if (!root.isDirectory()) {
+            return "0";
+        }
+        final long[] stamp = new long[]{root.lastModified(), 1};
+        collectDirStamp(root, packageName == null ? 6 : 5, stamp);
+        // newest modification and number of directories
+        return stamp[0] + "-" + stamp[1];
+    }
+
+    private static void collectDirStamp(File dir, int depth, long[] stamp) {
+        if (depth == 0) {
+            return;
+        }
+        final File[] dirs = dir.listFiles(new DirFilter());
+        if (dirs == null) {
+            return;
+        }
+        for (File subDir : dirs) {
+            stamp[0] = Math.max(stamp[0], subDir.lastModified());
+            stamp[1]++;
+            collectDirStamp(subDir, depth - 1, stamp);
+        }
+    }
+
     public Integer getPkgId(String requestedProject) {
         StringBuilder triedProjects = new StringBuilder();
         for (String project : projects) {
@@ -119,6 +154,23 @@ public class FakeKojiDB {
         return getProjectBuilds(projectId, null);
     }
 
+    /**
+     * Builds of the package, which are tagged by given tag.
+     */
+    public List<Build> getTaggedBuilds(String tag, String packageName) {
+        final Integer pkgId = getPkgId(packageName);
+        if (pkgId == null) {
+            return Collections.emptyList();
+        }
+        final List<Build> tagged = new ArrayList<>();
+        for (Build build : getProjectBuilds(pkgId)) {
+            if (build.getTags().contains(tag)) {
+                tagged.add(build);
+            }
+        }
+        return tagged;
+    }
+
     FakeBuild getBuildById(Integer buildId) {
         for (FakeBuild build : builds) {
             if (build.getBuildID() == buildId) {
@@ -0,0 +1,124 @@
+package org.fakekoji.core;
+
+import hudson.plugins.scm.koji.Constants;
+import org.fakekoji.xmlrpc.server.JavaServerConstants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tells jenkins (koji-scm plugin), that new build arrived, so the jobs using it
+ * can poll right away instead of waiting for their next scheduled poll.
+ * <p>
+ * Notifications are sent in background, one by one. Upload of single build
+ * usually consists of several files, so the same build is notified only once
+ * while its notification is waiting to be sent. Failure to notify is only
+ * logged, jobs will find the build by regular polling anyway.
+ * <p>
+ * Jenkins accepts only notifications with the token configured there.
+ */
+public class JenkinsNotifier {
+
+    private static final Logger LOGGER = Logger.getLogger(JavaServerConstants.FAKE_KOJI_LOGGER);
+
+    private static final int TIMEOUT = 10000;
+
+    private final URL jenkinsUrl;
+    private final String token;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "fake-koji-jenkins-notifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param jenkinsUrl root url of jenkins, may be without trailing slash
+     * @param token notification token configured in jenkins
+     */
+    public JenkinsNotifier(URL jenkinsUrl, String token) {
+        this.jenkinsUrl = withTrailingSlash(jenkinsUrl);
+        this.token = token;
+    }
+
+    /**
+     * Relative urls resolve against the last directory of the base, so
+     * without trailing slash the context path of jenkins would be lost.
+     */
+    static URL withTrailingSlash(URL url) {
+        if (url.getPath().endsWith("/")) {
+            return url;
+        }
+        try {
+            return new URL(url, url.getPath() + "/");
+        } catch (MalformedURLException ex) {
+            throw new IllegalArgumentException("Invalid jenkins url " + url, ex);
+        }
+    }
+
+    /**
+     * @param nvr name-version-release of arrived build
+     * @param project fake koji project of the build
+     */
+    public void buildArrived(String nvr, String project) {
+        final String key = nvr + " " + project;
+        if (!pending.add(key)) {
+            return;
+        }
+        executor.submit(() -> {
+            pending.remove(key);
+            send(nvr, project);
+        });
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private void send(String nvr, String project) {
+        HttpURLConnection connection = null;
+        try {
+            final URL url = new URL(jenkinsUrl, Constants.notifyUrl + "/" + Constants.notifyBuild);
+            final String body = Constants.nvr + "=" + encode(nvr)
+                    + "&" + Constants.project + "=" + encode(project)
+                    + "&" + Constants.notifyToken + "=" + encode(token);
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+            final int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_OK) {
+                LOGGER.info("Notified " + url + " about " + nvr);
+            } else {
+                LOGGER.warning("Notification of " + url + " about " + nvr + " failed: " + code);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Notification of " + jenkinsUrl + " about " + nvr + " failed", ex);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static String encode(String s) throws UnsupportedEncodingException {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8.name());
+    }
+}
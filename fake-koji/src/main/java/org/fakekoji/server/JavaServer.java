@@ -44,6 +44,7 @@ import java.util.logging.Logger;
 
 import org.fakekoji.api.http.rest.OToolService;
 import org.fakekoji.core.AccessibleSettings;
+import org.fakekoji.core.JenkinsNotifier;
 import org.fakekoji.jobmanager.ConfigManager;
 import org.fakekoji.xmlrpc.server.JavaServerConstants;
 import org.fakekoji.api.http.filehandling.FileDownloadService;
@@ -61,6 +62,7 @@ public class JavaServer {
     private final XmlRpcKojiService xmlRpcKojiService;
     private final FileDownloadService fileDownloadService;
     private final ScpService scpService;
+    private final JenkinsNotifier jenkinsNotifier;
     private final OToolService oToolService;
 
     public JavaServer(AccessibleSettings settings) {
@@ -71,6 +73,15 @@ public class JavaServer {
         xmlRpcKojiService = new XmlRpcKojiService(settings);
         fileDownloadService = new FileDownloadService(settings.getDbFileRoot(), settings.getFileDownloadPort());
         scpService = new ScpService(settings.getDbFileRoot(), settings.getSshPort(), settings.getConfigRoot());
+        /* uploaded builds are pushed to jenkins, so jobs do not wait for next poll */
+        final String notifyToken = settings.getJenkinsNotifyToken();
+        if (notifyToken == null || notifyToken.isEmpty()) {
+            LOGGER.info("No jenkins notify token set, jenkins will not be notified about uploaded builds");
+            jenkinsNotifier = null;
+        } else {
+            jenkinsNotifier = new JenkinsNotifier(settings.getJenkinsUrlString(), notifyToken);
+        }
+        scpService.setJenkinsNotifier(jenkinsNotifier);
         this.oToolService = oToolService;
     }
 
@@ -100,6 +111,9 @@ public class JavaServer {
         } catch (IOException ex) {
             Logger.getLogger(JavaServer.class.getName()).log(Level.SEVERE, null, ex);
         }
+        if (jenkinsNotifier != null) {
+            jenkinsNotifier.stop();
+        }
         fileDownloadService.stop();
         xmlRpcKojiService.stop();
         if (oToolService != null) {
@@ -141,6 +155,8 @@ public class JavaServer {
                 webappPort
         );
 
+        settings.setJenkinsNotifyToken(props.getProperty(Property.JENKINS_NOTIFY_TOKEN.value));
+
         final OToolService oToolService = new OToolService(settings);
 
         new JavaServer(settings, oToolService).start();
@@ -151,6 +167,7 @@ public class JavaServer {
         FILE_DOWNLOAD_PORT("port.file.download"),
         SSH_PORT("port.ssh"),
         JENKINS_PORT("port.jenkins"),
+        JENKINS_NOTIFY_TOKEN("jenkins.notify.token"),
         WEBAPP_PORT("port.webapp"),
         REPOS_ROOT("root.repos"),
         BUILD_DB_ROOT("root.build.db"),
@@ -25,14 +25,23 @@ package hudson.plugins.scm.koji.client.tools;
 
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.xmlrpc.XmlRpcException;
 import org.apache.xmlrpc.XmlRpcHandler;
 import org.apache.xmlrpc.XmlRpcRequest;
+import org.apache.xmlrpc.client.XmlRpcClient;
 import org.apache.xmlrpc.server.XmlRpcHandlerMapping;
 import org.apache.xmlrpc.server.XmlRpcNoSuchHandlerException;
 import org.apache.xmlrpc.server.XmlRpcServerConfigImpl;
 import org.junit.Test;
 import org.apache.xmlrpc.webserver.WebServer;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetPackageId;
 import org.junit.Assert;
 
 public class XmlRpcHelperTest {
@@ -162,4 +171,150 @@ public class XmlRpcHelperTest {
         Assert.assertNotNull(thrown);
 
     }
+
+    @Test
+    public void pooledClientServesConcurrentCalls() throws Exception {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        TimeoutingXmlRpcServer w = new TimeoutingXmlRpcServer(port, 1);
+        w.start();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                final int x = i;
+                results.add(executor.submit(() -> new XmlRpcHelper.XmlRpcExecutioner("http://localhost:" + port + "/RPC2/").execute("sample.sum", x, 1)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Assert.assertEquals(i + 1, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+            w.stop();
+        }
+    }
+
+    @Test
+    public void clientIsSharedUntilSettingsChange() {
+        XmlRpcClientPool.Settings original = XmlRpcClientPool.getSettings();
+        try {
+            XmlRpcClient client = XmlRpcClientPool.get("http://localhost:1/RPC2/", null);
+            Assert.assertSame(client, XmlRpcClientPool.get("http://localhost:1/RPC2/", null));
+            Assert.assertNotSame(client, XmlRpcClientPool.get("http://localhost:1/RPC2/", 1000));
+            XmlRpcClientPool.configure(new XmlRpcClientPool.Settings(1000, 2000, 2));
+            Assert.assertNotSame(client, XmlRpcClientPool.get("http://localhost:1/RPC2/", null));
+        } finally {
+            XmlRpcClientPool.configure(original);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    @Test
+    public void idempotentCallIsRetried() throws IOException {
+        XmlRpcClientPool.Settings original = XmlRpcClientPool.getSettings();
+        String url = "http://localhost:" + freePort() + "/RPC2/";
+        try {
+            XmlRpcClientPool.configure(new XmlRpcClientPool.Settings(1000, 1000, 2, 2, 10, 0, 60000));
+            try {
+                new XmlRpcHelper.XmlRpcExecutioner(url).execute(new GetPackageId("java"));
+                Assert.fail("Nothing listens on the port");
+            } catch (RuntimeException ex) {
+                Assert.assertTrue(HubCircuitBreaker.isTransient(ex));
+            }
+            Assert.assertEquals(3, HubCircuitBreaker.get(url).getStatus().getFailures());
+            try {
+                new XmlRpcHelper.XmlRpcExecutioner(url).execute("sample.sum", 3, 5);
+                Assert.fail("Nothing listens on the port");
+            } catch (RuntimeException ex) {
+                // methods without params may not be idempotent
+            }
+            Assert.assertEquals(4, HubCircuitBreaker.get(url).getStatus().getFailures());
+        } finally {
+            XmlRpcClientPool.configure(original);
+        }
+    }
+
+    @Test
+    public void asyncRetryDoesNotHoldSlotOfHub() throws Exception {
+        XmlRpcClientPool.Settings original = XmlRpcClientPool.getSettings();
+        String url = "http://localhost:" + freePort() + "/RPC2/";
+        try {
+            XmlRpcClientPool.configure(new XmlRpcClientPool.Settings(1000, 1000, 1, 1, 2000, 0, 60000));
+            CompletableFuture<Object> result = new XmlRpcHelper.XmlRpcExecutioner(url).executeAsync(new GetPackageId("java"));
+            while (HubCircuitBreaker.get(url).getStatus().getFailures() < 1) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+            // first attempt failed, retry waits for its backoff outside of the hub
+            Assert.assertFalse(result.isDone());
+            Assert.assertEquals(0, XmlRpcDispatcher.getPending(url));
+            try {
+                result.get();
+                Assert.fail("Nothing listens on the port");
+            } catch (ExecutionException ex) {
+                Assert.assertTrue(HubCircuitBreaker.isTransient(ex.getCause()));
+            }
+            Assert.assertEquals(2, HubCircuitBreaker.get(url).getStatus().getFailures());
+        } finally {
+            XmlRpcClientPool.configure(original);
+        }
+    }
+
+    @Test
+    public void hubWhichIsDownFailsFastUntilProbeSucceeds() throws Exception {
+        XmlRpcClientPool.Settings original = XmlRpcClientPool.getSettings();
+        int port = freePort();
+        String url = "http://localhost:" + port + "/RPC2/";
+        XmlRpcHelper.XmlRpcExecutioner executioner = new XmlRpcHelper.XmlRpcExecutioner(url);
+        try {
+            XmlRpcClientPool.configure(new XmlRpcClientPool.Settings(1000, 1000, 2, 0, 0, 2, 500));
+            for (int i = 0; i < 2; i++) {
+                try {
+                    executioner.execute("sample.sum", 3, 5);
+                    Assert.fail("Nothing listens on the port");
+                } catch (RuntimeException ex) {
+                    Assert.assertTrue(HubCircuitBreaker.isTransient(ex));
+                }
+            }
+            TimeoutingXmlRpcServer w = new TimeoutingXmlRpcServer(port, 1);
+            w.start();
+            try {
+                try {
+                    executioner.execute("sample.sum", 3, 5);
+                    Assert.fail("Hub should be considered down");
+                } catch (RuntimeException ex) {
+                    Assert.assertFalse(HubCircuitBreaker.isTransient(ex));
+                }
+                Assert.assertEquals(HubCircuitBreaker.State.OPEN, HubCircuitBreaker.get(url).getStatus().getState());
+                Thread.sleep(600);
+                Assert.assertEquals(8, executioner.execute("sample.sum", 3, 5));
+                Assert.assertEquals(HubCircuitBreaker.State.CLOSED, HubCircuitBreaker.get(url).getStatus().getState());
+            } finally {
+                w.stop();
+            }
+        } finally {
+            XmlRpcClientPool.configure(original);
+        }
+    }
+
+    @Test
+    public void retiredClientIsShutDownOnceItsCallsFinish() {
+        final XmlRpcClientPool.PooledClient client = new XmlRpcClientPool.PooledClient("http://localhost/RPC2", 1000, 1000, 1);
+        client.callStarted();
+        client.retire();
+        Assert.assertFalse(client.isShutDown());
+        client.callFinished();
+        Assert.assertTrue(client.isShutDown());
+
+        final XmlRpcClientPool.PooledClient idleClient = new XmlRpcClientPool.PooledClient("http://localhost/RPC2", 1000, 1000, 1);
+        idleClient.retire();
+        Assert.assertTrue(idleClient.isShutDown());
+    }
 }
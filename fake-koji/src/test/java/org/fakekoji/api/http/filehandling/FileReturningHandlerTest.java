@@ -1,5 +1,15 @@
 package org.fakekoji.api.http.filehandling;
 
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Collections;
@@ -7,11 +17,15 @@ import java.util.List;
 import java.util.ArrayList;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 
 public class FileReturningHandlerTest {
 
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
 
 
     private final String[] ojdk7files = new String[] {
@@ -188,4 +202,52 @@ public class FileReturningHandlerTest {
                     fi3, fi2, fi1
                 }, fi);
     }
+
+    private static HttpURLConnection get(HttpServer server, String range) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getAddress().getPort() + "/file").openConnection();
+        if (range != null) {
+            connection.setRequestProperty("Range", range);
+        }
+        return connection;
+    }
+
+    private static String body(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            FileReturningHandler.copy(in, bytes);
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testRangeOfFile() throws Exception {
+        File root = temporaryFolder.newFolder();
+        Files.write(new File(root, "file").toPath(), "0123456789".getBytes(StandardCharsets.UTF_8));
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new FileReturningHandler(root));
+        server.start();
+        try {
+            HttpURLConnection whole = get(server, null);
+            Assert.assertEquals(200, whole.getResponseCode());
+            Assert.assertEquals("bytes", whole.getHeaderField("Accept-Ranges"));
+            Assert.assertEquals("0123456789", body(whole));
+
+            HttpURLConnection range = get(server, "bytes=2-5");
+            Assert.assertEquals(206, range.getResponseCode());
+            Assert.assertEquals("bytes 2-5/10", range.getHeaderField("Content-Range"));
+            Assert.assertEquals("2345", body(range));
+
+            Assert.assertEquals("789", body(get(server, "bytes=7-")));
+            Assert.assertEquals("6789", body(get(server, "bytes=-4")));
+            Assert.assertEquals("89", body(get(server, "bytes=8-100")));
+            // multiple ranges are not supported
+            Assert.assertEquals("0123456789", body(get(server, "bytes=0-1,4-5")));
+
+            HttpURLConnection unsatisfiable = get(server, "bytes=10-");
+            Assert.assertEquals(416, unsatisfiable.getResponseCode());
+            Assert.assertEquals("bytes */10", unsatisfiable.getHeaderField("Content-Range"));
+        } finally {
+            server.stop(0);
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package org.fakekoji.api.xmlrpc;
+
+import hudson.plugins.scm.koji.client.tools.XmlRpcHelper;
+import org.fakekoji.DataGenerator;
+import org.fakekoji.core.AccessibleSettings;
+import org.fakekoji.core.FakeKojiTestUtil;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetChangeToken;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.ChangeToken;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.ServerSocket;
+
+public class ChangeTokenTest {
+
+    @ClassRule
+    public static final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static XmlRpcKojiService service;
+    private static XmlRpcHelper.XmlRpcExecutioner executioner;
+    private static File buildsRoot;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        final DataGenerator.FolderHolder folderHolder = DataGenerator.initFolders(temporaryFolder.getRoot());
+        FakeKojiTestUtil.generateFakeKojiData(folderHolder.buildsRoot, folderHolder.reposRoot);
+        buildsRoot = folderHolder.buildsRoot;
+        final int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        service = new XmlRpcKojiService(new AccessibleSettings(
+                folderHolder.buildsRoot,
+                folderHolder.reposRoot,
+                folderHolder.configsRoot,
+                folderHolder.jenkinsJobsRoot,
+                folderHolder.jenkinsJobArchiveRoot,
+                folderHolder.scriptsRoot,
+                port,
+                0,
+                0,
+                8080,
+                0
+        ));
+        service.start();
+        executioner = new XmlRpcHelper.XmlRpcExecutioner("http://localhost:" + port + "/RPC2/");
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        service.stop();
+    }
+
+    private static String token(GetChangeToken params) {
+        return ChangeToken.create(executioner.execute(params)).getValue();
+    }
+
+    @Test
+    public void tokenChangesOnlyWithBuilds() throws Exception {
+        final String pkg = token(GetChangeToken.ofPackage("java-1.8.0-openjdk"));
+        final String all = token(GetChangeToken.ofProject("jdk8u"));
+        Assert.assertEquals(pkg, token(GetChangeToken.ofPackage("java-1.8.0-openjdk")));
+        Assert.assertEquals(all, token(GetChangeToken.ofProject("jdk8u")));
+
+        final File otherPackage = new File(buildsRoot, "other-package");
+        Assert.assertTrue(new File(otherPackage, "1/1/x86_64").mkdirs());
+        Assert.assertEquals(pkg, token(GetChangeToken.ofPackage("java-1.8.0-openjdk")));
+        Assert.assertNotEquals(all, token(GetChangeToken.ofProject("jdk8u")));
+
+        final File release = new File(buildsRoot, "java-1.8.0-openjdk/1.8.0.999/1.el7/x86_64");
+        Assert.assertTrue(release.mkdirs());
+        Assert.assertNotEquals(pkg, token(GetChangeToken.ofPackage("java-1.8.0-openjdk")));
+    }
+
+    @Test
+    public void unknownPackageHasToken() {
+        Assert.assertEquals("0", token(GetChangeToken.ofPackage("no-such-package")));
+    }
+}
@@ -0,0 +1,130 @@
+package org.fakekoji.api.xmlrpc;
+
+import hudson.plugins.scm.koji.client.tools.XmlRpcClientPool;
+import hudson.plugins.scm.koji.client.tools.XmlRpcHelper;
+import hudson.plugins.scm.koji.client.tools.XmlRpcHelperTest;
+import hudson.plugins.scm.koji.model.Build;
+import org.fakekoji.DataGenerator;
+import org.fakekoji.core.AccessibleSettings;
+import org.fakekoji.core.FakeKojiTestUtil;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetPackageId;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListBuilds;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListTags;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.BuildList;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.PackageId;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.TagSet;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GzipTransportTest {
+
+    @ClassRule
+    public static final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static XmlRpcKojiService service;
+    private static int port;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        final DataGenerator.FolderHolder folderHolder = DataGenerator.initFolders(temporaryFolder.getRoot());
+        FakeKojiTestUtil.generateFakeKojiData(folderHolder.buildsRoot, folderHolder.reposRoot);
+        port = freePort();
+        service = new XmlRpcKojiService(new AccessibleSettings(
+                folderHolder.buildsRoot,
+                folderHolder.reposRoot,
+                folderHolder.configsRoot,
+                folderHolder.jenkinsJobsRoot,
+                folderHolder.jenkinsJobArchiveRoot,
+                folderHolder.scriptsRoot,
+                port,
+                0,
+                0,
+                8080,
+                0
+        ));
+        service.start();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        service.stop();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static List<XmlRpcRequestParams> listTagsOfAllBuilds() {
+        final XmlRpcHelper.XmlRpcExecutioner executioner = new XmlRpcHelper.XmlRpcExecutioner("http://localhost:" + port + "/RPC2/");
+        final Integer packageId = PackageId.create(executioner.execute(new GetPackageId("java-1.8.0-openjdk"))).getValue();
+        final List<XmlRpcRequestParams> params = new ArrayList<>();
+        for (Build build : BuildList.create(executioner.execute(new ListBuilds(packageId))).getValue()) {
+            for (int i = 0; i < 20; i++) {
+                params.add(new ListTags(build.getId()));
+            }
+        }
+        return params;
+    }
+
+    private static XmlRpcClientPool.Traffic multicall(XmlRpcHelper.XmlRpcExecutioner executioner, List<XmlRpcRequestParams> params) {
+        final XmlRpcClientPool.TrafficCounter counter = new XmlRpcClientPool.TrafficCounter();
+        executioner.setTrafficCounter(counter);
+        Assert.assertEquals(params.size(), executioner.multicall(params, TagSet::create).size());
+        return counter.getTraffic();
+    }
+
+    @Test
+    public void responsesAreCompressed() {
+        final List<XmlRpcRequestParams> params = listTagsOfAllBuilds();
+        final XmlRpcHelper.XmlRpcExecutioner executioner = new XmlRpcHelper.XmlRpcExecutioner("http://localhost:" + port + "/RPC2/");
+        final XmlRpcClientPool.Traffic traffic = multicall(executioner, params);
+        Assert.assertTrue(traffic.toString(), traffic.getReceived() * 2 < traffic.getDecoded());
+    }
+
+    @Test
+    public void requestsAreCompressedOnceServerAcceptsThem() {
+        final List<XmlRpcRequestParams> params = listTagsOfAllBuilds();
+        // other url than in other tests, so it has its own client, which did not talk to the server yet
+        final XmlRpcHelper.XmlRpcExecutioner executioner = new XmlRpcHelper.XmlRpcExecutioner("http://127.0.0.1:" + port + "/RPC2/");
+        final XmlRpcClientPool.Traffic first = multicall(executioner, params);
+        final XmlRpcClientPool.Traffic second = multicall(executioner, params);
+        Assert.assertEquals(first.getDecoded(), second.getDecoded());
+        Assert.assertTrue(first + " / " + second, second.getSent() * 2 < first.getSent());
+        // connection is still usable
+        multicall(executioner, params);
+    }
+
+    @Test
+    public void serverWithoutGzipKeepsWorking() throws IOException {
+        final int plainPort = freePort();
+        final XmlRpcHelperTest.TimeoutingXmlRpcServer plainServer = new XmlRpcHelperTest.TimeoutingXmlRpcServer(plainPort, 1);
+        final XmlRpcHelper.XmlRpcExecutioner executioner = new XmlRpcHelper.XmlRpcExecutioner("http://localhost:" + plainPort + "/RPC2/");
+        plainServer.start();
+        try {
+            final XmlRpcClientPool.Traffic before = XmlRpcClientPool.getTraffic();
+            final XmlRpcClientPool.TrafficCounter counter = new XmlRpcClientPool.TrafficCounter();
+            executioner.setTrafficCounter(counter);
+            Assert.assertEquals(8, executioner.execute("sample.sum", 3, 5));
+            Assert.assertEquals(8, executioner.execute("sample.sum", 3, 5));
+            final XmlRpcClientPool.Traffic traffic = counter.getTraffic();
+            Assert.assertEquals(2, traffic.getCalls());
+            // total traffic counts the calls too
+            Assert.assertTrue(XmlRpcClientPool.getTraffic().since(before).getCalls() >= 2);
+            Assert.assertEquals(traffic.getReceived(), traffic.getDecoded());
+        } finally {
+            plainServer.stop();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.fakekoji.api.xmlrpc;
+
+import hudson.plugins.scm.koji.client.tools.XmlRpcHelper;
+import hudson.plugins.scm.koji.model.Build;
+import org.fakekoji.DataGenerator;
+import org.fakekoji.core.AccessibleSettings;
+import org.fakekoji.core.FakeKojiTestUtil;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetPackageId;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListBuilds;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListTags;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.MultiCall;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.BuildList;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.MultiCallResponse;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.PackageId;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.TagSet;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class MultiCallTest {
+
+    @ClassRule
+    public static final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static XmlRpcKojiService service;
+    private static XmlRpcHelper.XmlRpcExecutioner executioner;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        final DataGenerator.FolderHolder folderHolder = DataGenerator.initFolders(temporaryFolder.getRoot());
+        FakeKojiTestUtil.generateFakeKojiData(folderHolder.buildsRoot, folderHolder.reposRoot);
+        final int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        service = new XmlRpcKojiService(new AccessibleSettings(
+                folderHolder.buildsRoot,
+                folderHolder.reposRoot,
+                folderHolder.configsRoot,
+                folderHolder.jenkinsJobsRoot,
+                folderHolder.jenkinsJobArchiveRoot,
+                folderHolder.scriptsRoot,
+                port,
+                0,
+                0,
+                8080,
+                0
+        ));
+        service.start();
+        executioner = new XmlRpcHelper.XmlRpcExecutioner("http://localhost:" + port + "/RPC2/");
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        service.stop();
+    }
+
+    private static List<Build> listBuilds() {
+        final Integer packageId = PackageId.create(executioner.execute(new GetPackageId("java-1.8.0-openjdk"))).getValue();
+        return BuildList.create(executioner.execute(new ListBuilds(packageId))).getValue();
+    }
+
+    @Test
+    public void multicallReturnsSameTagsAsSingleCalls() {
+        final List<Build> builds = listBuilds();
+        Assert.assertFalse(builds.isEmpty());
+        final List<XmlRpcRequestParams> params = new ArrayList<>();
+        for (Build build : builds) {
+            params.add(new ListTags(build.getId()));
+        }
+        final List<TagSet> tagSets = executioner.multicall(params, TagSet::create);
+        Assert.assertEquals(builds.size(), tagSets.size());
+        for (int i = 0; i < builds.size(); i++) {
+            final Set<String> expected = TagSet.create(executioner.execute(new ListTags(builds.get(i).getId()))).getValue();
+            Assert.assertEquals(expected, tagSets.get(i).getValue());
+        }
+    }
+
+    @Test
+    public void multicallIsSplitToBatches() {
+        final Build build = listBuilds().get(0);
+        final List<XmlRpcRequestParams> params = new ArrayList<>();
+        for (int i = 0; i < XmlRpcHelper.XmlRpcExecutioner.MULTICALL_BATCH_SIZE * 2 + 1; i++) {
+            params.add(new ListTags(build.getId()));
+        }
+        Assert.assertEquals(params.size(), executioner.multicall(params, TagSet::create).size());
+    }
+
+    @Test
+    public void asyncBatchesKeepOrderOfCalls() throws Exception {
+        final List<Build> builds = listBuilds();
+        final List<XmlRpcRequestParams> params = new ArrayList<>();
+        final List<Set<String>> expected = new ArrayList<>();
+        while (params.size() <= XmlRpcHelper.XmlRpcExecutioner.MULTICALL_BATCH_SIZE * 2) {
+            final Build build = builds.get(params.size() % builds.size());
+            params.add(new ListTags(build.getId()));
+            expected.add(TagSet.create(executioner.execute(new ListTags(build.getId()))).getValue());
+        }
+        final List<Object> results = executioner.multicallAsync(params).get(30, TimeUnit.SECONDS);
+        Assert.assertEquals(params.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(expected.get(i), TagSet.create(results.get(i)).getValue());
+        }
+        Assert.assertEquals(
+                expected.get(0),
+                executioner.executeAsync(params.get(0), TagSet::create).get(30, TimeUnit.SECONDS).getValue()
+        );
+    }
+
+    @Test
+    public void failedCallIsReportedAsFault() {
+        final List<XmlRpcRequestParams> params = Arrays.asList(
+                new GetPackageId("java-1.8.0-openjdk"),
+                new MultiCall.Call("noSuchMethod", null)
+        );
+        final MultiCallResponse response = MultiCallResponse.create(executioner.execute(new MultiCall(params)));
+        Assert.assertEquals(2, response.getValue().size());
+        Assert.assertFalse(response.getValue().get(0) instanceof MultiCallResponse.Fault);
+        Assert.assertTrue(response.getValue().get(1) instanceof MultiCallResponse.Fault);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void failedCallThrows() {
+        executioner.multicall(Arrays.asList(new MultiCall.Call("noSuchMethod", null)));
+    }
+}
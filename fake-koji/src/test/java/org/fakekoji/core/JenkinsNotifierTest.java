@@ -0,0 +1,84 @@
+package org.fakekoji.core;
+
+import com.sun.net.httpserver.HttpServer;
+import hudson.plugins.scm.koji.Constants;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JenkinsNotifierTest {
+
+    private HttpServer server;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private CountDownLatch received;
+
+    @Before
+    public void start() throws Exception {
+        received = new CountDownLatch(1);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/jenkins/" + Constants.notifyUrl + "/" + Constants.notifyBuild, exchange -> {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                final byte[] buffer = new byte[1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, read);
+                }
+            }
+            requests.add(exchange.getRequestMethod() + " " + new String(body.toByteArray(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            received.countDown();
+        });
+        server.start();
+    }
+
+    @After
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void buildArrivedIsPosted() throws Exception {
+        // context path without trailing slash must be kept
+        final JenkinsNotifier notifier = new JenkinsNotifier(new URL("http://localhost:" + server.getAddress().getPort() + "/jenkins"), "s3cr3t");
+        try {
+            notifier.buildArrived("java-1.8.0-openjdk-jdk8u1.b1-1.hotspot.el7", "jdk8u");
+            Assert.assertTrue(received.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, requests.size());
+            Assert.assertEquals("POST nvr=java-1.8.0-openjdk-jdk8u1.b1-1.hotspot.el7&project=jdk8u&token=s3cr3t", requests.get(0));
+        } finally {
+            notifier.stop();
+        }
+    }
+
+    @Test
+    public void unreachableJenkinsIsIgnored() throws Exception {
+        final int port = server.getAddress().getPort();
+        server.stop(0);
+        final JenkinsNotifier notifier = new JenkinsNotifier(new URL("http://localhost:" + port + "/jenkins/"), "s3cr3t");
+        try {
+            notifier.buildArrived("b-1-1", "jdk8u");
+            Assert.assertFalse(received.await(1, TimeUnit.SECONDS));
+        } finally {
+            notifier.stop();
+        }
+    }
+
+    @Test
+    public void trailingSlashIsAddedToJenkinsUrl() throws Exception {
+        Assert.assertEquals("http://localhost:8080/jenkins/", JenkinsNotifier.withTrailingSlash(new URL("http://localhost:8080/jenkins")).toExternalForm());
+        Assert.assertEquals("http://localhost:8080/jenkins/", JenkinsNotifier.withTrailingSlash(new URL("http://localhost:8080/jenkins/")).toExternalForm());
+        Assert.assertEquals("http://localhost:8080/", JenkinsNotifier.withTrailingSlash(new URL("http://localhost:8080")).toExternalForm());
+    }
+}
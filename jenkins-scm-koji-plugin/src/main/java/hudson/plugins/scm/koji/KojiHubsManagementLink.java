@@ -0,0 +1,45 @@
+package hudson.plugins.scm.koji;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.plugins.scm.koji.client.tools.HubCircuitBreaker;
+import hudson.plugins.scm.koji.client.tools.XmlRpcClientPool;
+
+import java.util.List;
+
+/**
+ * Page of Manage Jenkins showing state of koji hubs called by Jenkins master
+ * (see {@link HubCircuitBreaker}). Hubs called only from agents, when polling
+ * requires workspace, are not listed.
+ */
+@Extension
+public class KojiHubsManagementLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "network.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Koji hubs";
+    }
+
+    @Override
+    public String getDescription() {
+        return "State of koji hubs called by polling: failures and hubs considered down.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "koji-hubs";
+    }
+
+    public List<HubCircuitBreaker.Status> getHubs() {
+        return HubCircuitBreaker.getStatuses();
+    }
+
+    public XmlRpcClientPool.Traffic getTraffic() {
+        return XmlRpcClientPool.getTraffic();
+    }
+}
@@ -0,0 +1,202 @@
+package hudson.plugins.scm.koji;
+
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.UnprotectedRootAction;
+import hudson.scm.SCM;
+import hudson.security.ACL;
+import hudson.security.csrf.CrumbExclusion;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import jenkins.triggers.SCMTriggerItem;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Endpoint for fake-koji (or anything else) to tell, that new build arrived:
+ * <pre>
+ * POST /koji-notify/build nvr=...&amp;project=...&amp;token=...
+ * </pre>
+ * Jobs, which may be interested in the build, poll right away, whatever
+ * their poll schedule (see {@link KojiPollScheduler}) is.
+ * <p>
+ * Caller is not a jenkins user, so it must know the token configured in
+ * global settings instead, without token the endpoint is disabled. Even then
+ * it only schedules polling of jobs with SCM trigger, the poll itself decides
+ * whether there is anything new, and the same build is notified this way at
+ * most once per {@link #MIN_NOTIFY_INTERVAL}. Different builds, even of the
+ * same project, are never rejected, so no build waits for regular polling.
+ */
+@Extension
+public class KojiNotifyAction implements UnprotectedRootAction {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KojiNotifyAction.class);
+
+    private static final Pattern NVR = Pattern.compile("[\\w.+~^]+(-[\\w.+~^]+){2,}");
+    private static final Pattern PROJECT = Pattern.compile("[\\w.+-]+");
+    private static final int MAX_LENGTH = 256;
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Min time between notifications of the same build, in milliseconds.
+     */
+    static final long MIN_NOTIFY_INTERVAL = 10 * 1000;
+
+    private final RateLimit rateLimit = new RateLimit(MIN_NOTIFY_INTERVAL);
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return Constants.notifyUrl;
+    }
+
+    @RequirePOST
+    public HttpResponse doBuild(@QueryParameter String nvr, @QueryParameter String project, @QueryParameter String token) {
+        if (!isAuthorized(KojiSCM.DESCRIPTOR.getNotifyToken(), token)) {
+            return HttpResponses.error(HttpServletResponse.SC_FORBIDDEN, "Invalid token");
+        }
+        if (!isValid(nvr, NVR) || !isValid(project, PROJECT)) {
+            return HttpResponses.error(HttpServletResponse.SC_BAD_REQUEST, "Invalid nvr or project");
+        }
+        if (!rateLimit.tryAcquire(nvr, System.currentTimeMillis())) {
+            return HttpResponses.error(SC_TOO_MANY_REQUESTS, "Build " + nvr + " was notified less than "
+                    + MIN_NOTIFY_INTERVAL / 1000 + " seconds ago");
+        }
+        final String name = nameOf(nvr);
+        final List<String> scheduled = new ArrayList<>();
+        // caller is anonymous, but must reach all jobs
+        ACL.impersonate(ACL.SYSTEM, () -> {
+            for (Job<?, ?> job : Jenkins.getActiveInstance().getAllItems(Job.class)) {
+                final SCMTriggerItem item = SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(job);
+                if (item != null && isAffected(item, name, project)) {
+                    // otherwise the poll may be skipped by the schedule
+                    KojiPollScheduler.get(job.getRootDir()).markDue();
+                    if (item.schedulePolling()) {
+                        scheduled.add(job.getFullName());
+                    }
+                }
+            }
+        });
+        LOG.info("Build " + nvr + " arrived, scheduled polling of " + scheduled);
+        return HttpResponses.plainText("Scheduled polling of " + scheduled.size() + " jobs\n");
+    }
+
+    private static boolean isAffected(SCMTriggerItem item, String name, String project) {
+        for (SCM scm : item.getSCMs()) {
+            if (scm instanceof KojiSCM && isAffected(((KojiSCM) scm).getKojiXmlRpcApi(), name, project)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Real koji jobs are matched by package name. Fake koji jobs by project,
+     * as their builds are not named by it.
+     */
+    static boolean isAffected(KojiXmlRpcApi api, String name, String project) {
+        if (api instanceof RealKojiXmlRpcApi) {
+            return name.equals(((RealKojiXmlRpcApi) api).getPackageName());
+        }
+        if (api instanceof FakeKojiXmlRpcApi) {
+            return project.equals(((FakeKojiXmlRpcApi) api).getProjectName());
+        }
+        return false;
+    }
+
+    /**
+     * @return false if no token is configured or the given one differs
+     */
+    static boolean isAuthorized(Secret expected, String token) {
+        if (expected == null || token == null) {
+            return false;
+        }
+        final String plain = expected.getPlainText();
+        // constant time, so the token can not be guessed char by char
+        return !plain.isEmpty() && MessageDigest.isEqual(
+                plain.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return name part of name-version-release
+     */
+    static String nameOf(String nvr) {
+        final int releaseStart = nvr.lastIndexOf('-');
+        return nvr.substring(0, nvr.lastIndexOf('-', releaseStart - 1));
+    }
+
+    private static boolean isValid(String value, Pattern pattern) {
+        return value != null && value.length() <= MAX_LENGTH && pattern.matcher(value).matches();
+    }
+
+    /**
+     * Lets through at most one request per key in given interval.
+     */
+    static class RateLimit {
+
+        private static final int MAX_KEYS = 1024;
+
+        private final long interval;
+        private final Map<String, Long> lastAcquired = new HashMap<>();
+
+        RateLimit(long interval) {
+            this.interval = interval;
+        }
+
+        synchronized boolean tryAcquire(String key, long now) {
+            final Long last = lastAcquired.get(key);
+            if (last != null && now - last < interval) {
+                return false;
+            }
+            if (lastAcquired.size() >= MAX_KEYS) {
+                lastAcquired.values().removeIf(time -> now - time >= interval);
+            }
+            lastAcquired.put(key, now);
+            return true;
+        }
+    }
+
+    /**
+     * Notification comes from outside of jenkins, so it has no crumb.
+     */
+    @Extension
+    public static class KojiNotifyCrumbExclusion extends CrumbExclusion {
+
+        @Override
+        public boolean process(HttpServletRequest req, HttpServletResponse resp, FilterChain chain) throws IOException, ServletException {
+            final String pathInfo = req.getPathInfo();
+            if (pathInfo != null && pathInfo.startsWith("/" + Constants.notifyUrl + "/")) {
+                chain.doFilter(req, resp);
+                return true;
+            }
+            return false;
+        }
+    }
+}
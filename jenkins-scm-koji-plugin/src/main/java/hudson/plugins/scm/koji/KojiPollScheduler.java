@@ -0,0 +1,197 @@
+package hudson.plugins.scm.koji;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides, whether polling triggered by cron of a job should ask the
+ * providers at all, so jobs, which rarely get new builds, are polled rarely.
+ * <p>
+ * Each poll, which finds nothing, makes the interval between polls longer
+ * (up to max interval, or quarter of mean time between arrivals of builds,
+ * if it is shorter), poll, which finds new build, sets it back to min interval.
+ * Interval is never shorter than {@link #COST_FACTOR} times the time the last
+ * poll took. Cron of the job still limits how often the job is polled.
+ * <p>
+ * Notification of new build makes the job due right away. State is kept in
+ * the job directory, so it survives restarts.
+ */
+public class KojiPollScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KojiPollScheduler.class);
+
+    static final String SCHEDULE_FILE = "kojiPollSchedule.properties";
+
+    /**
+     * Default min interval between polls, in minutes.
+     */
+    public static final int DEFAULT_MIN_INTERVAL = 0;
+    /**
+     * Default max interval between polls, in minutes, 0 as the schedule is
+     * off by default, jobs are polled whenever their cron says.
+     */
+    public static final int DEFAULT_MAX_INTERVAL = 0;
+
+    /**
+     * First step, by which the interval grows.
+     */
+    static final long FIRST_STEP = 60 * 1000;
+    static final double BACKOFF = 1.5;
+    /**
+     * Polling of the job takes at most 1/COST_FACTOR of the time.
+     */
+    static final int COST_FACTOR = 20;
+
+    private static final Map<File, KojiPollScheduler> SCHEDULERS = new ConcurrentHashMap<>();
+
+    private final File file;
+    private boolean loaded;
+    // all times in milliseconds
+    private long interval;
+    private long nextPoll;
+    private long lastArrival;
+    private long meanGap;
+    private long lastCost;
+    private long polls;
+    private long skipped;
+    private long arrivals;
+
+    KojiPollScheduler(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return shared scheduler of the job with given root directory
+     */
+    public static KojiPollScheduler get(File jobDir) {
+        return SCHEDULERS.computeIfAbsent(jobDir.getAbsoluteFile(), d -> new KojiPollScheduler(new File(d, SCHEDULE_FILE)));
+    }
+
+    /**
+     * @param maxInterval max interval between polls, in milliseconds, 0 or
+     * less to poll whenever cron says
+     * @return true if the job should be polled now
+     */
+    public synchronized boolean isDue(long now, long maxInterval) {
+        load();
+        if (maxInterval <= 0 || now >= nextPoll) {
+            return true;
+        }
+        skipped++;
+        save();
+        return false;
+    }
+
+    /**
+     * Makes next poll ask the providers, whatever the interval is.
+     */
+    public synchronized void markDue() {
+        load();
+        nextPoll = 0;
+        save();
+    }
+
+    /**
+     * Called after each poll, which asked the providers.
+     *
+     * @param arrived true if the poll found new build
+     * @param cost how long the poll took, in milliseconds
+     * @param minInterval min interval between polls, in milliseconds
+     * @param maxInterval max interval between polls, in milliseconds
+     */
+    public synchronized void polled(boolean arrived, long cost, long now, long minInterval, long maxInterval) {
+        load();
+        polls++;
+        lastCost = cost;
+        if (arrived) {
+            arrivals++;
+            if (lastArrival > 0) {
+                final long gap = now - lastArrival;
+                meanGap = meanGap == 0 ? gap : (meanGap * 3 + gap) / 4;
+            }
+            lastArrival = now;
+            interval = minInterval;
+        } else {
+            interval = interval < FIRST_STEP ? FIRST_STEP : (long) (interval * BACKOFF);
+            if (meanGap > 0) {
+                // builds of busy jobs are not waited for too long
+                interval = Math.min(interval, meanGap / 4);
+            }
+        }
+        interval = Math.max(interval, cost * COST_FACTOR);
+        interval = Math.max(minInterval, Math.min(interval, maxInterval));
+        nextPoll = now + interval;
+        save();
+    }
+
+    public synchronized long getInterval() {
+        load();
+        return interval;
+    }
+
+    public synchronized Date getNextPoll() {
+        load();
+        return new Date(nextPoll);
+    }
+
+    @Override
+    public synchronized String toString() {
+        load();
+        return "interval " + (interval / 1000) + "s, next poll " + new Date(nextPoll) + ", " + arrivals + " arrivals in "
+                + polls + " polls (" + skipped + " skipped), mean gap " + (meanGap / 1000) + "s, last poll took " + lastCost + "ms";
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+            interval = Long.parseLong(properties.getProperty("interval", "0"));
+            nextPoll = Long.parseLong(properties.getProperty("nextPoll", "0"));
+            lastArrival = Long.parseLong(properties.getProperty("lastArrival", "0"));
+            meanGap = Long.parseLong(properties.getProperty("meanGap", "0"));
+            lastCost = Long.parseLong(properties.getProperty("lastCost", "0"));
+            polls = Long.parseLong(properties.getProperty("polls", "0"));
+            skipped = Long.parseLong(properties.getProperty("skipped", "0"));
+            arrivals = Long.parseLong(properties.getProperty("arrivals", "0"));
+        } catch (IOException | NumberFormatException ex) {
+            // job is polled right away and the schedule starts over
+            LOG.warn("Unable to read poll schedule " + file, ex);
+            interval = nextPoll = lastArrival = meanGap = lastCost = polls = skipped = arrivals = 0;
+        }
+    }
+
+    private void save() {
+        final Properties properties = new Properties();
+        properties.setProperty("interval", String.valueOf(interval));
+        properties.setProperty("nextPoll", String.valueOf(nextPoll));
+        properties.setProperty("lastArrival", String.valueOf(lastArrival));
+        properties.setProperty("meanGap", String.valueOf(meanGap));
+        properties.setProperty("lastCost", String.valueOf(lastCost));
+        properties.setProperty("polls", String.valueOf(polls));
+        properties.setProperty("skipped", String.valueOf(skipped));
+        properties.setProperty("arrivals", String.valueOf(arrivals));
+        try (OutputStream out = new FileOutputStream(file)) {
+            properties.store(out, "poll schedule of koji scm");
+        } catch (IOException ex) {
+            LOG.warn("Unable to write poll schedule " + file, ex);
+        }
+    }
+}
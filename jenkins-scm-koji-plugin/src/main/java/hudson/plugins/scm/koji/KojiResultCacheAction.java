@@ -0,0 +1,78 @@
+package hudson.plugins.scm.koji;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import hudson.plugins.scm.koji.client.KojiResultCache;
+import hudson.scm.SCM;
+import jenkins.model.TransientActionFactory;
+import jenkins.triggers.SCMTriggerItem;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Shows hits and misses of {@link KojiResultCache} on the page of the job.
+ */
+public class KojiResultCacheAction implements Action {
+
+    private final Job<?, ?> job;
+
+    public KojiResultCacheAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Koji result cache";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    public long getHits() {
+        return KojiResultCache.getStats(job.getRootDir()).getHits();
+    }
+
+    public long getMisses() {
+        return KojiResultCache.getStats(job.getRootDir()).getMisses();
+    }
+
+    /**
+     * @return true if polling runs in workspace, where the cache of the node is
+     * used and its hits and misses are only in the polling log
+     */
+    public boolean isPollingInWorkspace() {
+        return KojiSCM.DESCRIPTOR.getKojiSCMConfig();
+    }
+
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class Factory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @Override
+        public Collection<? extends Action> createFor(Job target) {
+            final SCMTriggerItem item = SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(target);
+            if (item != null) {
+                for (SCM scm : item.getSCMs()) {
+                    if (scm instanceof KojiSCM) {
+                        return Collections.singletonList(new KojiResultCacheAction(target));
+                    }
+                }
+            }
+            return Collections.emptyList();
+        }
+    }
+}
@@ -6,18 +6,29 @@ import hudson.scm.SCMRevisionState;
 public class KojiRevisionState extends SCMRevisionState {
 
     private final Build build;
+    // state of providers when last poll found nothing new, null if unknown
+    private final String changeToken;
 
     public KojiRevisionState(Build build) {
+        this(build, null);
+    }
+
+    public KojiRevisionState(Build build, String changeToken) {
         this.build = build;
+        this.changeToken = changeToken;
     }
 
     public Build getBuild() {
         return build;
     }
 
+    public String getChangeToken() {
+        return changeToken;
+    }
+
     @Override
     public String toString() {
-        return "KojiRevisionState[nvr=" + build + "]";
+        return "KojiRevisionState[nvr=" + build + (changeToken == null ? "" : ", changeToken=" + changeToken) + "]";
     }
 
 }
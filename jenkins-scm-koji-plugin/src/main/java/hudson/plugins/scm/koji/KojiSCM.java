@@ -4,7 +4,9 @@ import hudson.AbortException;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.model.Computer;
 import hudson.model.Job;
+import hudson.model.Node;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.plugins.scm.koji.client.KojiBuildDownloader;
@@ -25,16 +27,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Optional;
 import java.util.function.Predicate;
+import jenkins.model.Jenkins;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import static hudson.plugins.scm.koji.Constants.BUILD_XML;
 import static hudson.plugins.scm.koji.Constants.PROCESSED_BUILDS_HISTORY;
 
 import java.io.Serializable;
-import java.net.InetAddress;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -44,72 +44,33 @@ public class KojiSCM extends SCM implements LoggerHelp, Serializable {
 
     @Extension
     public static final KojiScmDescriptor DESCRIPTOR = new KojiScmDescriptor();
-    private static final Logger LOG = LoggerFactory.getLogger(KojiSCM.class);
-    private static final boolean verbose = true;
     private final Collection<KojiBuildProvider> kojiBuildProviders;
     private final KojiXmlRpcApi kojiXmlRpcApi;
     private String downloadDir;
     private boolean cleanDownloadDir;
     private boolean dirPerNvr;
     private int maxPreviousBuilds;
+    private OrderBy orderBy;
+    private Integer downloadThreads;
     private transient TaskListener currentListener;
 
-    private boolean canLog() {
-        return (verbose && currentListener != null && currentListener.getLogger() != null);
-    }
-
-    private String host() {
-        try {
-            String h = InetAddress.getLocalHost().getHostName();
-            if (h == null) {
-                return "null";
-            } else {
-                return h;
-            }
-        } catch (Exception ex) {
-            return ex.toString();
-        }
-    }
-
-    void print(String s) {
-        try {
-            currentListener.getLogger().println(s);
-        } catch (Exception ex) {
-            LOG.error("During printing of log to TaskListener", ex);
-        }
+    private LoggerHelp logger() {
+        return new TaskListenerLogger(KojiSCM.class, currentListener);
     }
 
     @Override
     public void log(String s) {
-        LOG.info(s);
-        if (canLog()) {
-            print("[KojiSCM][" + host() + "] " + s);
-        }
+        logger().log(s);
     }
 
     @Override
     public void log(String s, Object o) {
-        LOG.info(s, o);
-        if (canLog()) {
-            if (o == null) {
-                o = "null";
-            }
-            print("[KojiSCM][" + host() + "] " + s + ": " + o.toString());
-        }
+        logger().log(s, o);
     }
 
     @Override
     public void log(String s, Object... o) {
-        LOG.info(s, o);
-        if (canLog()) {
-            print("[KojiSCM][" + host() + "] " + s);
-            for (Object object : o) {
-                if (object == null) {
-                    object = "null";
-                }
-                print("[KojiSCM]   " + object.toString());
-            }
-        }
+        logger().log(s, o);
     }
 
     @DataBoundConstructor
@@ -159,6 +120,15 @@ public class KojiSCM extends SCM implements LoggerHelp, Serializable {
                 cleanDownloadDir,
                 dirPerNvr
         );
+        downloadWorker.setOrderBy(getOrderBy());
+        downloadWorker.setClientSettings(DESCRIPTOR.getClientSettings());
+        downloadWorker.setDownloadThreads(getDownloadThreads());
+        downloadWorker.setSegmentedDownload(DESCRIPTOR.getDownloadConnections(), DESCRIPTOR.getSegmentSize() * 1024L * 1024L);
+        final FilePath nodeRoot = getNodeRoot(workspace);
+        if (nodeRoot != null) {
+            downloadWorker.setArtifactCache(nodeRoot.getRemote(), DESCRIPTOR.getArtifactCacheSize() * 1024L * 1024L);
+            downloadWorker.setResultCache(nodeRoot.getRemote(), DESCRIPTOR.getResultCacheSize());
+        }
         downloadWorker.setListener(listener);
         KojiBuildDownloadResult downloadResult = workspace.act(downloadWorker);
 
@@ -215,19 +185,50 @@ public class KojiSCM extends SCM implements LoggerHelp, Serializable {
         if (!(baseline instanceof KojiRevisionState)) {
             throw new RuntimeException("Expected instance of KojiRevisionState, got: " + baseline);
         }
+        final KojiPollScheduler scheduler = KojiPollScheduler.get(project.getRootDir());
+        final long pollStart = System.currentTimeMillis();
+        if (!scheduler.isDue(pollStart, DESCRIPTOR.getMaxPollInterval() * 60 * 1000L)) {
+            log("Not polling before {}, {}", scheduler.getNextPoll(), scheduler);
+            return new PollingResult(baseline, baseline, PollingResult.Change.NONE);
+        }
+        final PollingResult result = pollRemoteRevision(project, workspace, (KojiRevisionState) baseline);
+        final long now = System.currentTimeMillis();
+        scheduler.polled(result.hasChanges(), now - pollStart, now,
+                DESCRIPTOR.getMinPollInterval() * 60 * 1000L, DESCRIPTOR.getMaxPollInterval() * 60 * 1000L);
+        log("Poll schedule: {}", scheduler);
+        return result;
+    }
 
+    private PollingResult pollRemoteRevision(Job<?, ?> project, FilePath workspace, KojiRevisionState baseline) throws IOException, InterruptedException {
         KojiListBuilds worker = new KojiListBuilds(kojiBuildProviders, kojiXmlRpcApi, createNotProcessedNvrPredicate(project), maxPreviousBuilds);
+        worker.setProviderTimeout(DESCRIPTOR.getProviderTimeout());
+        worker.setQueryCacheTtl(DESCRIPTOR.getQueryCacheTtl());
+        worker.setClientSettings(DESCRIPTOR.getClientSettings());
+        worker.setOrderBy(getOrderBy());
+        worker.setListener(currentListener);
+        final String providersToken = getProvidersChangeToken(workspace, worker);
+        final String changeToken = providersToken == null ? null : composeChangeToken(project, providersToken);
+        if (changeToken != null && changeToken.equals(baseline.getChangeToken())) {
+            log("No remote changes since last poll");
+            return new PollingResult(baseline, baseline, PollingResult.Change.NONE);
+        }
+        // builds listed before the token was read are not reused
+        worker.setChangeToken(providersToken);
         final Optional<Build> buildOptional;
         if (!DESCRIPTOR.getKojiSCMConfig()) {
-            // when requiresWorkspaceForPolling is set to false (based on descriptor), worksapce may be null.
-            // but not always.  So If it os not null, the path to it is passed on.
-            // however, its usage may be invalid. See KojiListBuilds.invole comemnt about BUILD_XML
-            File wFile = null;
-            if (workspace != null) {
-                wFile = new File(workspace.toURI().getPath());
+            // workspace is never used, it may be missing or in use by running build
+            // polling runs on master, so the build index can live next to the job
+            worker.setIndexDir(project.getRootDir());
+            if (DESCRIPTOR.getResultCacheSize() > 0) {
+                worker.setResultCache(Jenkins.getActiveInstance().getRootDir(), DESCRIPTOR.getResultCacheSize());
             }
-            buildOptional = worker.invoke(wFile, null);
+            buildOptional = worker.invoke(null, null);
         } else {
+            // cache of the node running the poll, its hits and misses are only logged
+            final FilePath nodeRoot = getNodeRoot(workspace);
+            if (nodeRoot != null && DESCRIPTOR.getResultCacheSize() > 0) {
+                worker.setResultCache(new File(nodeRoot.getRemote()), DESCRIPTOR.getResultCacheSize());
+            }
             buildOptional = workspace.act(worker);
         }
 
@@ -240,7 +241,54 @@ public class KojiSCM extends SCM implements LoggerHelp, Serializable {
         }
         // if we are still here - no remote changes:
         log("No remote changes");
-        return new PollingResult(baseline, null, PollingResult.Change.NONE);
+        // keep the token only when nothing was found, so builds left over by
+        // maxPreviousBuilds are still listed by next poll
+        return new PollingResult(baseline, new KojiRevisionState(baseline.getBuild(), changeToken), PollingResult.Change.NONE);
+    }
+
+    /**
+     * @return root directory of the node of the workspace, or null if the node
+     * is gone
+     */
+    private static FilePath getNodeRoot(FilePath workspace) {
+        final Computer computer = workspace.toComputer();
+        final Node node = computer == null ? null : computer.getNode();
+        return node == null ? null : node.getRootPath();
+    }
+
+    /**
+     * Token is read on the node, which lists the builds, so it sees the
+     * providers the same way.
+     *
+     * @return token of builds on the providers, or null if some provider can
+     * not tell its state
+     */
+    private String getProvidersChangeToken(FilePath workspace, KojiListBuilds worker) throws InterruptedException {
+        try {
+            if (DESCRIPTOR.getKojiSCMConfig()) {
+                return workspace.act(worker.getChangeTokenCallable());
+            }
+            return worker.getChangeToken();
+        } catch (IOException | RuntimeException ex) {
+            log("Failed to get change token: {}", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Token of everything the result of polling depends on: builds on the
+     * providers, configuration of the job and processed builds. If it did not
+     * change since last poll, which found nothing, the providers do not need to
+     * be listed again.
+     */
+    private String composeChangeToken(Job<?, ?> project, String providersToken) {
+        final String config = kojiXmlRpcApi + " " + maxPreviousBuilds + " " + getOrderBy();
+        final File processedNvrFile = new File(project.getRootDir(), PROCESSED_BUILDS_HISTORY);
+        final File globalProcessedNvrFile = new File(project.getRootDir().getParentFile(), PROCESSED_BUILDS_HISTORY);
+        return providersToken
+                + Integer.toHexString(config.hashCode()) + ' '
+                + processedNvrFile.lastModified() + '-' + processedNvrFile.length() + ' '
+                + globalProcessedNvrFile.lastModified() + '-' + globalProcessedNvrFile.length();
     }
 
     @Override
@@ -266,8 +314,9 @@ public class KojiSCM extends SCM implements LoggerHelp, Serializable {
 
     @Override
     public boolean requiresWorkspaceForPolling() {
-        // this is merchandize - if it is true, then the jobs can not run in parallel (se "Execute concurrent builds if necessary" in project settings)
-        // when it is false, projects can run inparalel, but pooling operation do not have workspace
+        // if it is true, then the jobs can not run in parallel (se "Execute concurrent builds if necessary" in project settings)
+        // and each poll is sent to the node of the workspace
+        // when it is false, polling runs on controller, sharing its clients, caches and indexes
         return DESCRIPTOR.getKojiSCMConfig();
     }
 
@@ -321,6 +370,26 @@ public class KojiSCM extends SCM implements LoggerHelp, Serializable {
         this.maxPreviousBuilds = maxPreviousBuilds;
     }
 
+    public OrderBy getOrderBy() {
+        // jobs configured before the option existed are ordered by date
+        return orderBy == null ? OrderBy.DATE : orderBy;
+    }
+
+    @DataBoundSetter
+    public void setOrderBy(OrderBy orderBy) {
+        this.orderBy = orderBy;
+    }
+
+    public int getDownloadThreads() {
+        // jobs configured before the option existed use the default
+        return downloadThreads == null || downloadThreads < 1 ? KojiBuildDownloader.DEFAULT_DOWNLOAD_THREADS : downloadThreads;
+    }
+
+    @DataBoundSetter
+    public void setDownloadThreads(int downloadThreads) {
+        this.downloadThreads = downloadThreads;
+    }
+
     @Override
     public String toString() {
         return
@@ -332,6 +401,8 @@ public class KojiSCM extends SCM implements LoggerHelp, Serializable {
                 "downloadDir: " + downloadDir + '\n' +
                 "cleanDownloadDir: " + cleanDownloadDir + '\n'+
                 "dirPerNvr: " + dirPerNvr + '\n' +
-                "maxPreviousBuilds: " + maxPreviousBuilds + '\n';
+                "maxPreviousBuilds: " + maxPreviousBuilds + '\n' +
+                "orderBy: " + getOrderBy() + '\n' +
+                "downloadThreads: " + getDownloadThreads() + '\n';
     }
 }
@@ -1,7 +1,13 @@
 package hudson.plugins.scm.koji;
 
 import hudson.DescriptorExtensionList;
+import hudson.plugins.scm.koji.client.KojiArtifactCache;
+import hudson.plugins.scm.koji.client.KojiBuildDownloader;
+import hudson.plugins.scm.koji.client.KojiListBuilds;
+import hudson.plugins.scm.koji.client.KojiResultCache;
+import hudson.plugins.scm.koji.client.tools.XmlRpcClientPool;
 import hudson.scm.SCMDescriptor;
+import hudson.util.Secret;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -13,6 +19,21 @@ public class KojiScmDescriptor extends SCMDescriptor<KojiSCM> {
 
     private static final Logger LOG = LoggerFactory.getLogger(SCMDescriptor.class);
     private boolean KojiSCMConfig = true;
+    private int providerTimeout = KojiListBuilds.DEFAULT_PROVIDER_TIMEOUT;
+    private int queryCacheTtl = KojiListBuilds.DEFAULT_QUERY_CACHE_TTL;
+    private int connectionTimeout = XmlRpcClientPool.Settings.DEFAULT_CONNECTION_TIMEOUT / 1000;
+    private int replyTimeout = XmlRpcClientPool.Settings.DEFAULT_REPLY_TIMEOUT / 1000;
+    private int connectionPoolSize = XmlRpcClientPool.Settings.DEFAULT_POOL_SIZE;
+    private int retries = XmlRpcClientPool.Settings.DEFAULT_RETRIES;
+    private int failureThreshold = XmlRpcClientPool.Settings.DEFAULT_FAILURE_THRESHOLD;
+    private int hubPause = XmlRpcClientPool.Settings.DEFAULT_OPEN_TIME / 1000;
+    private int resultCacheSize = KojiResultCache.DEFAULT_MAX_SIZE;
+    private int minPollInterval = KojiPollScheduler.DEFAULT_MIN_INTERVAL;
+    private int maxPollInterval = KojiPollScheduler.DEFAULT_MAX_INTERVAL;
+    private int artifactCacheSize = KojiArtifactCache.DEFAULT_MAX_SIZE;
+    private int downloadConnections = KojiBuildDownloader.DEFAULT_DOWNLOAD_CONNECTIONS;
+    private int segmentSize = KojiBuildDownloader.DEFAULT_SEGMENT_SIZE;
+    private Secret notifyToken;
 
     public KojiScmDescriptor() {
         super(KojiSCM.class, KojiRepositoryBrowser.class);
@@ -38,12 +59,46 @@ public class KojiScmDescriptor extends SCMDescriptor<KojiSCM> {
     public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
         this.KojiSCMConfig = json.getBoolean("KojiSCMConfig");
         LOG.info("KojiSCMConfig configured to " + KojiSCMConfig);
+        this.providerTimeout = json.optInt("providerTimeout", providerTimeout);
+        LOG.info("providerTimeout configured to " + providerTimeout);
+        this.queryCacheTtl = json.optInt("queryCacheTtl", queryCacheTtl);
+        LOG.info("queryCacheTtl configured to " + queryCacheTtl);
+        this.connectionTimeout = json.optInt("connectionTimeout", connectionTimeout);
+        this.replyTimeout = json.optInt("replyTimeout", replyTimeout);
+        this.connectionPoolSize = json.optInt("connectionPoolSize", connectionPoolSize);
+        this.retries = json.optInt("retries", retries);
+        this.failureThreshold = json.optInt("failureThreshold", failureThreshold);
+        this.hubPause = json.optInt("hubPause", hubPause);
+        LOG.info("XML-RPC client configured to " + getClientSettings());
+        this.resultCacheSize = json.optInt("resultCacheSize", resultCacheSize);
+        LOG.info("resultCacheSize configured to " + resultCacheSize);
+        this.minPollInterval = json.optInt("minPollInterval", minPollInterval);
+        this.maxPollInterval = json.optInt("maxPollInterval", maxPollInterval);
+        LOG.info("poll interval configured to " + minPollInterval + "-" + maxPollInterval);
+        this.artifactCacheSize = json.optInt("artifactCacheSize", artifactCacheSize);
+        LOG.info("artifactCacheSize configured to " + artifactCacheSize);
+        this.downloadConnections = optIntInRange(json, "downloadConnections", downloadConnections,
+                1, KojiBuildDownloader.MAX_DOWNLOAD_CONNECTIONS);
+        this.segmentSize = optIntInRange(json, "segmentSize", segmentSize, 1, KojiBuildDownloader.MAX_SEGMENT_SIZE);
+        LOG.info("segmented download configured to " + downloadConnections + " connections of " + segmentSize + "MB");
+        this.notifyToken = Secret.fromString(json.optString("notifyToken", ""));
         save();
         return true;
     }
 
+    private static int optIntInRange(JSONObject json, String key, int defaultValue, int min, int max) throws FormException {
+        final int value = json.optInt(key, defaultValue);
+        if (value < min || value > max) {
+            throw new FormException(key + " must be between " + min + " and " + max + ", got " + value, key);
+        }
+        return value;
+    }
+
+    /**
+     * @return true if polling runs on node of the workspace of job, false if
+     * it runs on controller
+     */
     public boolean getKojiSCMConfig() {
-        LOG.info("KojiSCMConfig returning " + KojiSCMConfig);
         return KojiSCMConfig;
     }
 
@@ -53,4 +108,209 @@ public class KojiScmDescriptor extends SCMDescriptor<KojiSCM> {
         LOG.info("KojiSCMConfig set from" + KojiSCMConfig + " to " + kojiSCMConfig);
         this.KojiSCMConfig = kojiSCMConfig;
     }
+
+    /**
+     * @return how long to wait for single build provider during polling, in
+     * seconds
+     */
+    public int getProviderTimeout() {
+        return providerTimeout;
+    }
+
+    @DataBoundSetter
+    public void setProviderTimeout(int providerTimeout) {
+        this.providerTimeout = providerTimeout;
+    }
+
+    /**
+     * @return how long are builds returned by provider shared with other jobs
+     * polling the same, in seconds
+     */
+    public int getQueryCacheTtl() {
+        return queryCacheTtl;
+    }
+
+    @DataBoundSetter
+    public void setQueryCacheTtl(int queryCacheTtl) {
+        this.queryCacheTtl = queryCacheTtl;
+    }
+
+    /**
+     * @return how long to wait for connection to hub, in seconds
+     */
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    @DataBoundSetter
+    public void setConnectionTimeout(int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    /**
+     * @return how long to wait for reply of hub, in seconds
+     */
+    public int getReplyTimeout() {
+        return replyTimeout;
+    }
+
+    @DataBoundSetter
+    public void setReplyTimeout(int replyTimeout) {
+        this.replyTimeout = replyTimeout;
+    }
+
+    /**
+     * @return max number of persistent connections to single hub
+     */
+    public int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    @DataBoundSetter
+    public void setConnectionPoolSize(int connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    /**
+     * @return max number of retries of failed call to hub
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    @DataBoundSetter
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * @return number of consecutive failures, after which the hub is
+     * considered down, 0 to never consider it down
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    @DataBoundSetter
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * @return how long calls to hub considered down fail right away, in
+     * seconds
+     */
+    public int getHubPause() {
+        return hubPause;
+    }
+
+    @DataBoundSetter
+    public void setHubPause(int hubPause) {
+        this.hubPause = hubPause;
+    }
+
+    /**
+     * @return max size of cache of rpms and archives of builds, in megabytes,
+     * 0 to disable it
+     */
+    public int getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    @DataBoundSetter
+    public void setResultCacheSize(int resultCacheSize) {
+        this.resultCacheSize = resultCacheSize;
+    }
+
+    /**
+     * @return min interval between polls of job, in minutes
+     */
+    public int getMinPollInterval() {
+        return minPollInterval;
+    }
+
+    @DataBoundSetter
+    public void setMinPollInterval(int minPollInterval) {
+        this.minPollInterval = minPollInterval;
+    }
+
+    /**
+     * @return max interval between polls of job, which finds nothing, in
+     * minutes, 0 to poll whenever cron of the job says
+     */
+    public int getMaxPollInterval() {
+        return maxPollInterval;
+    }
+
+    @DataBoundSetter
+    public void setMaxPollInterval(int maxPollInterval) {
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    /**
+     * @return max size of cache of downloaded rpms and archives on each node,
+     * in megabytes, 0 to disable it
+     */
+    public int getArtifactCacheSize() {
+        return artifactCacheSize;
+    }
+
+    @DataBoundSetter
+    public void setArtifactCacheSize(int artifactCacheSize) {
+        this.artifactCacheSize = artifactCacheSize;
+    }
+
+    /**
+     * @return max number of connections downloading single file, 1 to
+     * download files by single connection
+     */
+    public int getDownloadConnections() {
+        return downloadConnections;
+    }
+
+    @DataBoundSetter
+    public void setDownloadConnections(int downloadConnections) {
+        this.downloadConnections = downloadConnections;
+    }
+
+    /**
+     * @return size of segment of file downloaded by more connections, in
+     * megabytes
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    @DataBoundSetter
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @return token notifications about new builds must come with, empty or
+     * null if notifications are disabled
+     */
+    public Secret getNotifyToken() {
+        return notifyToken;
+    }
+
+    @DataBoundSetter
+    public void setNotifyToken(Secret notifyToken) {
+        this.notifyToken = notifyToken;
+    }
+
+    /**
+     * Invalid values (e.g. of config saved by hand) fall back to defaults.
+     */
+    public XmlRpcClientPool.Settings getClientSettings() {
+        return new XmlRpcClientPool.Settings(
+                connectionTimeout >= 0 ? connectionTimeout * 1000 : XmlRpcClientPool.Settings.DEFAULT_CONNECTION_TIMEOUT,
+                replyTimeout >= 0 ? replyTimeout * 1000 : XmlRpcClientPool.Settings.DEFAULT_REPLY_TIMEOUT,
+                connectionPoolSize > 0 ? connectionPoolSize : XmlRpcClientPool.Settings.DEFAULT_POOL_SIZE,
+                retries >= 0 ? retries : XmlRpcClientPool.Settings.DEFAULT_RETRIES,
+                XmlRpcClientPool.Settings.DEFAULT_RETRY_DELAY,
+                failureThreshold >= 0 ? failureThreshold : XmlRpcClientPool.Settings.DEFAULT_FAILURE_THRESHOLD,
+                hubPause >= 0 ? hubPause * 1000 : XmlRpcClientPool.Settings.DEFAULT_OPEN_TIME
+        );
+    }
 }
@@ -0,0 +1,16 @@
+package hudson.plugins.scm.koji;
+
+/**
+ * How builds are ordered when looking for the newest ones.
+ */
+public enum OrderBy {
+
+    /**
+     * By completion time of the build.
+     */
+    DATE,
+    /**
+     * By version and release, compared the same way as rpm does it.
+     */
+    VERSION
+}
@@ -2,6 +2,7 @@ package hudson.plugins.scm.koji;
 
 import hudson.Extension;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.export.Exported;
 
 import java.util.Objects;
@@ -15,6 +16,7 @@ public class RealKojiXmlRpcApi extends KojiXmlRpcApi {
     private final String tag;
     private final String subpackageBlacklist;
     private final String subpackageWhitelist;
+    private boolean tagFirst;
 
     @DataBoundConstructor
     public RealKojiXmlRpcApi(
@@ -65,6 +67,16 @@ public class RealKojiXmlRpcApi extends KojiXmlRpcApi {
         return subpackageWhitelist;
     }
 
+    @Exported
+    public boolean isTagFirst() {
+        return tagFirst;
+    }
+
+    @DataBoundSetter
+    public void setTagFirst(boolean tagFirst) {
+        this.tagFirst = tagFirst;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -74,12 +86,13 @@ public class RealKojiXmlRpcApi extends KojiXmlRpcApi {
                 Objects.equals(arch, that.arch) &&
                 Objects.equals(tag, that.tag) &&
                 Objects.equals(subpackageBlacklist, that.subpackageBlacklist) &&
-                Objects.equals(subpackageWhitelist, that.subpackageWhitelist);
+                Objects.equals(subpackageWhitelist, that.subpackageWhitelist) &&
+                tagFirst == that.tagFirst;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(packageName, arch, tag, subpackageBlacklist, subpackageWhitelist);
+        return Objects.hash(packageName, arch, tag, subpackageBlacklist, subpackageWhitelist, tagFirst);
     }
 
     @Override
@@ -90,6 +103,7 @@ public class RealKojiXmlRpcApi extends KojiXmlRpcApi {
                 "  arch: " + arch + '\n' +
                 "  tag: " + tag + '\n' +
                 "  subpackageBlacklist: " + subpackageBlacklist + '\n' +
-                "  subpackageWhitelist: " + subpackageWhitelist + '\n';
+                "  subpackageWhitelist: " + subpackageWhitelist + '\n' +
+                "  tagFirst: " + tagFirst + '\n';
     }
 }
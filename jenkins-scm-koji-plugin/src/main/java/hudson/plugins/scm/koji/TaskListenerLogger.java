@@ -0,0 +1,90 @@
+package hudson.plugins.scm.koji;
+
+import hudson.model.TaskListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.net.InetAddress;
+
+/**
+ * Logs to slf4j logger of the owning class and, if listener is set, also to
+ * the log of the job. Listener is remotable, so the logger can be sent to
+ * agents as part of callables.
+ */
+public class TaskListenerLogger implements LoggerHelp, Serializable {
+
+    private static final boolean verbose = true;
+
+    private final String loggerName;
+    private final TaskListener listener;
+
+    /**
+     * @param owner class to log to slf4j logger of
+     * @param listener listener of the job, may be null
+     */
+    public TaskListenerLogger(Class<?> owner, TaskListener listener) {
+        this.loggerName = owner.getName();
+        this.listener = listener;
+    }
+
+    public TaskListener getListener() {
+        return listener;
+    }
+
+    private Logger getLogger() {
+        return LoggerFactory.getLogger(loggerName);
+    }
+
+    private boolean canLog() {
+        return (verbose && listener != null && listener.getLogger() != null);
+    }
+
+    private String host() {
+        try {
+            String h = InetAddress.getLocalHost().getHostName();
+            if (h == null) {
+                return "null";
+            } else {
+                return h;
+            }
+        } catch (Exception ex) {
+            return ex.toString();
+        }
+    }
+
+    void print(String s) {
+        try {
+            listener.getLogger().println(s);
+        } catch (Exception ex) {
+            getLogger().error("During printing of log to TaskListener", ex);
+        }
+    }
+
+    @Override
+    public void log(String s) {
+        getLogger().info(s);
+        if (canLog()) {
+            print("[KojiSCM][" + host() + "] " + s);
+        }
+    }
+
+    @Override
+    public void log(String s, Object o) {
+        getLogger().info(s, o);
+        if (canLog()) {
+            print("[KojiSCM][" + host() + "] " + s + ": " + o);
+        }
+    }
+
+    @Override
+    public void log(String s, Object... o) {
+        getLogger().info(s, o);
+        if (canLog()) {
+            print("[KojiSCM][" + host() + "] " + s);
+            for (Object object : o) {
+                print("[KojiSCM]   " + object);
+            }
+        }
+    }
+}
@@ -23,34 +23,83 @@
  */
 package hudson.plugins.scm.koji.client;
 
-import hudson.plugins.scm.koji.Constants;
 import hudson.plugins.scm.koji.KojiBuildProvider;
+import hudson.plugins.scm.koji.LoggerHelp;
+import hudson.plugins.scm.koji.OrderBy;
+import hudson.plugins.scm.koji.client.tools.XmlRpcClientPool;
 import hudson.plugins.scm.koji.client.tools.XmlRpcHelper;
 import hudson.plugins.scm.koji.model.Build;
 import hudson.plugins.scm.koji.model.BuildProvider;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcHttpTransportException;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.ChangeToken;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Collection;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.StringTokenizer;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 abstract class BuildMatcher {
 
-    public enum OrderBy {
-        DATE, VERSION
-    }
+    private static final Logger LOG = LoggerFactory.getLogger(BuildMatcher.class);
+    // hubs which do not know how to return change token, with time they said so
+    private static final Map<String, Long> NO_CHANGE_TOKEN = new ConcurrentHashMap<>();
+    /**
+     * Hub, which does not know how to return change token, is asked again
+     * after this time, in milliseconds, as it may have been upgraded.
+     */
+    static final long NO_CHANGE_TOKEN_TTL = TimeUnit.HOURS.toMillis(1);
+    /**
+     * Max number of provider queries running at once, others wait for a free
+     * thread. Queries only wait for XML-RPC calls, which run in their own
+     * threads (see {@link XmlRpcHelper.XmlRpcExecutioner#executeAsync}).
+     */
+    private static final int MAX_PROVIDER_THREADS = 16;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final ThreadPoolExecutor PROVIDER_EXECUTOR = new ThreadPoolExecutor(
+            MAX_PROVIDER_THREADS,
+            MAX_PROVIDER_THREADS,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                final Thread thread = new Thread(runnable, "koji-provider-query-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
 
-    private static final OrderBy orderBy = OrderBy.DATE;
+    static {
+        PROVIDER_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
 
     private final Iterable<KojiBuildProvider> buildProviders;
     private final Predicate<String> notProcessedNvrPredicate;
     private final int maxBuilds;
+    private long providerTimeout = KojiListBuilds.DEFAULT_PROVIDER_TIMEOUT * 1000;
+    private OrderBy orderBy = OrderBy.DATE;
+    private long queryCacheTtl;
+    private String changeToken;
+    private LoggerHelp logger;
+    private final XmlRpcClientPool.TrafficCounter trafficCounter = new XmlRpcClientPool.TrafficCounter();
 
     BuildMatcher(
             Iterable<KojiBuildProvider> buildProviders,
@@ -76,26 +125,71 @@ abstract class BuildMatcher {
      * 
      * you must filter after limit, otherwise strange builds will go in. The tests are covering this
      * 
+     * Sort and cut is done in one pass, see {@link #selectNewest(List, int, Comparator)}
+     *
      * @param bm
      * @return 
      */
     public static Stream<Build> listBuilds(BuildMatcher bm) {
-        return StreamSupport.stream(bm.buildProviders.spliterator(), false)
-                .map(KojiBuildProvider::getBuildProvider)
-                .map(bm::getBuilds)
-                .flatMap(Collection::stream)
-                .sorted(BuildMatcher::compare)
-                .limit(bm.maxBuilds)
+        final List<Build> builds = new ArrayList<>();
+        bm.getBuildsOfAllProviders().forEach(builds::addAll);
+        return selectNewest(builds, bm.maxBuilds, bm.comparator())
+                .stream()
                 .filter(build -> bm.notProcessedNvrPredicate.test(build.getNvr()));
     }
 
+    /**
+     * Same as sorting by comparator and taking first limit builds, but keeps
+     * only limit builds in heap, so it is O(n log limit) instead of
+     * O(n log n). Equal builds keep their order, as with stable sort.
+     *
+     * @param builds all builds
+     * @param limit max number of returned builds
+     * @param comparator order of builds, newest first
+     * @return newest builds, newest first
+     */
+    static List<Build> selectNewest(List<Build> builds, int limit, Comparator<Build> comparator) {
+        if (limit < 0) {
+            throw new IllegalArgumentException(Integer.toString(limit));
+        }
+        if (limit == 0) {
+            return Collections.emptyList();
+        }
+        if (builds.size() <= 1) {
+            // nothing to compare
+            return new ArrayList<>(builds);
+        }
+        // positions in builds, ties are resolved by position
+        final Comparator<Integer> order = (i, j) -> {
+            final int result = comparator.compare(builds.get(i), builds.get(j));
+            return result != 0 ? result : Integer.compare(i, j);
+        };
+        // head of the queue is the worst of kept builds
+        final PriorityQueue<Integer> heap = new PriorityQueue<>(Math.min(limit, builds.size()), order.reversed());
+        for (int i = 0; i < builds.size(); i++) {
+            if (heap.size() < limit) {
+                heap.add(i);
+            } else if (order.compare(i, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        final List<Integer> positions = new ArrayList<>(heap);
+        positions.sort(order);
+        final List<Build> newest = new ArrayList<>(positions.size());
+        for (Integer position : positions) {
+            newest.add(builds.get(position));
+        }
+        return newest;
+    }
+
     /**
      * From previous javadoc, returns 3
      * @param bm
      * @return 
      */
     public static Optional<Build> getLatestOfNewestBuilds(BuildMatcher bm) {
-        final Optional<Build> buildOptional = listBuilds(bm).max(BuildMatcher::compare);
+        final Optional<Build> buildOptional = listBuilds(bm).max(bm.comparator());
         return buildOptional.map(bm::getBuild);
     }
 
@@ -103,82 +197,290 @@ abstract class BuildMatcher {
         return getLatestOfNewestBuilds(this);
     }
 
-    abstract List<Build> getBuilds(BuildProvider buildProvider);
+    /**
+     * Providers are asked concurrently.
+     *
+     * @return token, which changes whenever result of polling of any provider
+     * may change, or null if some provider can not tell
+     */
+    public String getChangeToken() {
+        final List<String> queryKeys = new ArrayList<>();
+        final List<CompletableFuture<String>> providerTokens = new ArrayList<>();
+        for (KojiBuildProvider kojiBuildProvider : buildProviders) {
+            final BuildProvider provider = kojiBuildProvider.getBuildProvider();
+            final String queryKey = getQueryKey(provider);
+            if (queryKey == null) {
+                return null;
+            }
+            queryKeys.add(queryKey);
+            providerTokens.add(getChangeToken(provider));
+        }
+        final StringBuilder token = new StringBuilder();
+        for (int i = 0; i < queryKeys.size(); i++) {
+            final String providerToken = await(providerTokens.get(i));
+            if (providerToken == null) {
+                return null;
+            }
+            // query is part of the token, so the token changes with job config
+            token.append(queryKeys.get(i)).append('=').append(providerToken).append('\n');
+        }
+        return token.toString();
+    }
 
-    abstract Build getBuild(Build build);
+    /**
+     * @param providerTimeout time to wait for single provider, in
+     * milliseconds
+     */
+    public void setProviderTimeout(long providerTimeout) {
+        this.providerTimeout = providerTimeout;
+    }
 
-    public static int compare(Build b1, Build b2) {
-        switch (orderBy) {
-            case DATE:
-                return compareBuildsByCompletionTime(b1, b2);
-            case VERSION:
-                return compareBuildVersions(b1, b2);
-        }
-        throw new RuntimeException("Unknown order");
+    /**
+     * @param queryCacheTtl how long to share builds returned by provider with
+     * other jobs asking the same, in milliseconds, 0 disables sharing
+     */
+    public void setQueryCacheTtl(long queryCacheTtl) {
+        this.queryCacheTtl = queryCacheTtl;
     }
 
-    protected Object execute(String url, XmlRpcRequestParams params) {
-        return new XmlRpcHelper.XmlRpcExecutioner(url).execute(params);
+    public void setOrderBy(OrderBy orderBy) {
+        this.orderBy = orderBy;
     }
 
-    public static int compareBuildsByCompletionTime(Build b1, Build b2) {
-        return compareKojiTime(b1.getCompletionTime(), b2.getCompletionTime(), Constants.DTF);
+    /**
+     * @param changeToken token returned by {@link #getChangeToken()} before
+     * the builds are listed, or null if it was not read
+     */
+    public void setChangeToken(String changeToken) {
+        this.changeToken = changeToken;
+    }
 
+    OrderBy getOrderBy() {
+        return orderBy;
     }
 
-    private static int compareKojiTime(String s1, String s2, DateTimeFormatter d) {
-        LocalDateTime thisCompletionTime = LocalDateTime.parse(s1, d);
-        LocalDateTime thatCompletionTime = LocalDateTime.parse(s2, d);
-        return thatCompletionTime.compareTo(thisCompletionTime);
+    int getMaxBuilds() {
+        return maxBuilds;
     }
 
-    private static int compareBuildVersions(Build b1, Build b2) {
-        // comparing versions:
-        int res = compareStrings(b1.getVersion(), b2.getVersion());
-        if (res != 0) {
-            return res;
+    Comparator<Build> comparator() {
+        return comparator(orderBy);
+    }
+
+    public void setLogger(LoggerHelp logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * @return traffic of calls made by this matcher only, builds shared by
+     * other polls are not counted
+     */
+    public XmlRpcClientPool.Traffic getTraffic() {
+        return trafficCounter.getTraffic();
+    }
+
+    private void log(String s) {
+        if (logger == null) {
+            LOG.info(s);
+        } else {
+            logger.log(s);
         }
-        // version are identical, comparing releases:
-        return compareStrings(b1.getRelease(), b2.getRelease());
-    }
-
-    private static int compareStrings(String s1, String s2) {
-        StringTokenizer tokenizer1 = new StringTokenizer(s1, "-.");
-        StringTokenizer tokenizer2 = new StringTokenizer(s2, "-.");
-        while (tokenizer1.hasMoreTokens() && tokenizer2.hasMoreTokens()) {
-            String t1 = tokenizer1.nextToken();
-            String t2 = tokenizer2.nextToken();
-            if (allDigits(t1) && allDigits(t2)) {
-                int i1 = Integer.parseInt(t1);
-                int i2 = Integer.parseInt(t2);
-                int intCompared = i1 - i2;
-                if (intCompared != 0) {
-                    return intCompared > 0 ? -1 : 1;
+    }
+
+    /**
+     * Queries all providers concurrently. Provider, which does not answer in
+     * time, is skipped, so the result is based on the remaining ones. Any other
+     * failure of the provider is propagated.
+     */
+    private List<List<Build>> getBuildsOfAllProviders() {
+        final long start = System.currentTimeMillis();
+        final List<BuildProvider> providers = new ArrayList<>();
+        final List<Future<List<Build>>> futures = new ArrayList<>();
+        for (KojiBuildProvider kojiBuildProvider : buildProviders) {
+            final BuildProvider provider = kojiBuildProvider.getBuildProvider();
+            providers.add(provider);
+            futures.add(PROVIDER_EXECUTOR.submit(() -> {
+                final long providerStart = System.currentTimeMillis();
+                final List<Build> builds = ProviderQueryCoalescer.get(
+                        getSharedQueryKey(provider),
+                        queryCacheTtl,
+                        () -> getBuilds(provider)
+                );
+                log("Provider " + provider.getTopUrl() + " returned " + builds.size() + " builds in " + (System.currentTimeMillis() - providerStart) + "ms");
+                return builds;
+            }));
+        }
+        final List<List<Build>> results = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            final Future<List<Build>> future = futures.get(i);
+            // all providers run since the start, so they share the deadline
+            final long remaining = Math.max(0, start + providerTimeout - System.currentTimeMillis());
+            try {
+                results.add(future.get(remaining, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException ex) {
+                future.cancel(true);
+                log("Provider " + providers.get(i).getTopUrl() + " did not respond in " + providerTimeout + "ms, skipping it");
+            } catch (InterruptedException ex) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while querying build providers", ex);
+            } catch (ExecutionException ex) {
+                futures.forEach(f -> f.cancel(true));
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
                 }
-                continue;
+                throw new RuntimeException(ex.getCause());
             }
-            int stringCompared = t1.compareTo(t2);
-            if (stringCompared != 0) {
-                return stringCompared > 0 ? -1 : 1;
+        }
+        log("Queried " + futures.size() + " providers in " + (System.currentTimeMillis() - start) + "ms");
+        return results;
+    }
+
+    abstract List<Build> getBuilds(BuildProvider buildProvider);
+
+    static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while querying build provider", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
             }
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * @return key identifying result of {@link #getBuilds(BuildProvider)}, so
+     * it can be shared by jobs asking the same provider the same question, or
+     * null if the result must not be shared
+     */
+    String getQueryKey(BuildProvider buildProvider) {
+        return null;
+    }
+
+    /**
+     * Builds are shared only with jobs, which read the same change token of
+     * the provider before listing. Otherwise job, which read new token, could
+     * reuse builds listed before the change and keep the new token as if it
+     * saw them.
+     *
+     * @return key to share builds of the provider by, or null if they must
+     * not be shared
+     */
+    private String getSharedQueryKey(BuildProvider buildProvider) {
+        final String queryKey = getQueryKey(buildProvider);
+        if (queryKey == null || changeToken == null) {
+            return queryKey;
         }
-        // if we are here then one of strings has ended,
-        // longer will be considered bigger version:
-        if (tokenizer1.hasMoreTokens()) {
-            return -1;
+        final String prefix = queryKey + '=';
+        for (String line : changeToken.split("\n")) {
+            if (line.startsWith(prefix)) {
+                return queryKey + " @" + line.substring(prefix.length());
+            }
         }
-        if (tokenizer2.hasMoreTokens()) {
-            return 1;
+        return null;
+    }
+
+    /**
+     * @return token, which changes whenever builds of the provider change, or
+     * null if provider can not tell
+     */
+    CompletableFuture<String> getChangeToken(BuildProvider buildProvider) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Only fake-koji knows how to return change token. Hub, which answers by
+     * fault or by something else than token, does not, and is not asked again
+     * for {@link #NO_CHANGE_TOKEN_TTL}. Hub, which does not answer at all, is
+     * asked again next time.
+     */
+    protected CompletableFuture<String> fetchChangeToken(String url, XmlRpcRequestParams params) {
+        final Long unsupportedSince = NO_CHANGE_TOKEN.get(url);
+        if (unsupportedSince != null && System.currentTimeMillis() - unsupportedSince < NO_CHANGE_TOKEN_TTL) {
+            return CompletableFuture.completedFuture(null);
         }
-        return 0;
+        return executeAsync(url, params).handle((result, ex) -> {
+            if (ex == null) {
+                try {
+                    return ChangeToken.create(result).getValue();
+                } catch (RuntimeException parseEx) {
+                    ex = parseEx;
+                }
+            } else if (!isFault(ex)) {
+                log("Failed to get change token of provider " + url + ": " + ex);
+                return null;
+            }
+            log("Provider " + url + " does not support " + params.getMethodName() + ": " + ex);
+            NO_CHANGE_TOKEN.put(url, System.currentTimeMillis());
+            return null;
+        });
     }
 
-    private static boolean allDigits(String str) {
-        for (int i = 0; i < str.length(); i++) {
-            if (!Character.isDigit(str.charAt(i))) {
+    /**
+     * @return true if the hub answered the call by fault
+     */
+    static boolean isFault(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof XmlRpcHttpTransportException) {
                 return false;
             }
+            if (cause instanceof XmlRpcException) {
+                return true;
+            }
         }
-        return true;
+        return false;
+    }
+
+    abstract Build getBuild(Build build);
+
+    /**
+     * @return comparator ordering builds newest first
+     */
+    public static Comparator<Build> comparator(OrderBy orderBy) {
+        switch (orderBy) {
+            case DATE:
+                return BuildMatcher::compareBuildsByCompletionTime;
+            case VERSION:
+                return BuildMatcher::compareBuildVersions;
+        }
+        throw new RuntimeException("Unknown order");
+    }
+
+    /**
+     * Calls run in background, so independent calls overlap, see
+     * {@link XmlRpcHelper.XmlRpcExecutioner#executeAsync(XmlRpcRequestParams)}.
+     * Use {@link #await(Future)} to get the result.
+     */
+    protected CompletableFuture<Object> executeAsync(String url, XmlRpcRequestParams params) {
+        return createExecutioner(url).executeAsync(params);
+    }
+
+    protected CompletableFuture<List<Object>> multicallAsync(String url, List<? extends XmlRpcRequestParams> params) {
+        return createExecutioner(url).multicallAsync(params);
+    }
+
+    private XmlRpcHelper.XmlRpcExecutioner createExecutioner(String url) {
+        final XmlRpcHelper.XmlRpcExecutioner executioner = new XmlRpcHelper.XmlRpcExecutioner(url);
+        executioner.setTrafficCounter(trafficCounter);
+        return executioner;
+    }
+
+    public static int compareBuildsByCompletionTime(Build b1, Build b2) {
+        // newest first, completion time of each build is parsed only once
+        return Long.compare(b2.getCompletionTimeKey(), b1.getCompletionTimeKey());
+    }
+
+    public static int compareBuildVersions(Build b1, Build b2) {
+        // newest first, as rpmvercmp does, versions are parsed only once
+        final int res = b2.getVersionKey().compareTo(b1.getVersionKey());
+        if (res != 0) {
+            return res;
+        }
+        // version are identical, comparing releases:
+        return b2.getReleaseKey().compareTo(b1.getReleaseKey());
     }
 }
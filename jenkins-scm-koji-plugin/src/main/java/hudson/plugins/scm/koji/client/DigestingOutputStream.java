@@ -0,0 +1,126 @@
+package hudson.plugins.scm.koji.client;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * Computes digests of downloaded file while it is written, so the file does
+ * not need to be read again.
+ * <p>
+ * Besides MD5 and SHA-256 of the whole file, MD5 of header and payload of
+ * rpm is computed (all what follows the lead and the signature header), which
+ * is what koji advertises as payloadhash of the rpm.
+ */
+class DigestingOutputStream extends FilterOutputStream {
+
+    private static final int LEAD_SIZE = 96;
+    private static final int HEADER_INTRO_SIZE = 16;
+    private static final int HEADER_INDEX_ENTRY_SIZE = 16;
+    private static final byte[] HEADER_MAGIC = {(byte) 0x8e, (byte) 0xad, (byte) 0xe8};
+
+    private final MessageDigest md5 = getInstance("MD5");
+    private final MessageDigest sha256 = getInstance("SHA-256");
+    private final MessageDigest payloadMd5 = getInstance("MD5");
+    private final byte[] start = new byte[LEAD_SIZE + HEADER_INTRO_SIZE];
+    private long written;
+    // offset of header, -1 until known, 0 if it is not rpm
+    private long payloadOffset = -1;
+
+    DigestingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Opens the file for writing by its channel. Writes are not buffered, as
+     * they come in large chunks, which the channel writes by single call.
+     */
+    static DigestingOutputStream toFile(File file) throws IOException {
+        return new DigestingOutputStream(Channels.newOutputStream(FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)));
+    }
+
+    private static MessageDigest getInstance(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        md5.update(b, off, len);
+        sha256.update(b, off, len);
+        if (written < start.length) {
+            final int copied = (int) Math.min(len, start.length - written);
+            System.arraycopy(b, off, start, (int) written, copied);
+            if (written + copied == start.length) {
+                payloadOffset = findPayloadOffset(start);
+            }
+        }
+        if (payloadOffset > 0 && written + len > payloadOffset) {
+            final int skipped = (int) Math.max(0, payloadOffset - written);
+            payloadMd5.update(b, off + skipped, len - skipped);
+        }
+        written += len;
+    }
+
+    /**
+     * @return offset of header in rpm, 0 if it is not rpm
+     */
+    private static long findPayloadOffset(byte[] start) {
+        for (int i = 0; i < HEADER_MAGIC.length; i++) {
+            if (start[LEAD_SIZE + i] != HEADER_MAGIC[i]) {
+                return 0;
+            }
+        }
+        final long indexCount = readInt(start, LEAD_SIZE + 8);
+        final long storeSize = readInt(start, LEAD_SIZE + 12);
+        final long signatureSize = HEADER_INTRO_SIZE + indexCount * HEADER_INDEX_ENTRY_SIZE + storeSize;
+        // signature header is padded to multiple of 8
+        return LEAD_SIZE + (signatureSize + 7) / 8 * 8;
+    }
+
+    private static long readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xffL) << 24) | ((bytes[offset + 1] & 0xffL) << 16)
+                | ((bytes[offset + 2] & 0xffL) << 8) | (bytes[offset + 3] & 0xffL);
+    }
+
+    String getMd5() {
+        return toHex(md5);
+    }
+
+    String getSha256() {
+        return toHex(sha256);
+    }
+
+    /**
+     * @return md5 of header and payload, or null if the file is not rpm
+     */
+    String getPayloadMd5() {
+        return payloadOffset > 0 && written > payloadOffset ? toHex(payloadMd5) : null;
+    }
+
+    private static String toHex(MessageDigest digest) {
+        try {
+            // clone, so the getters may be called repeatedly
+            return DatatypeConverter.printHexBinary(((MessageDigest) digest.clone()).digest()).toLowerCase();
+        } catch (CloneNotSupportedException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.model.Build;
+import hudson.plugins.scm.koji.model.RPM;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds out, which of the possible download urls of rpms (and archives) of a
+ * build exists, so the download does not need to probe them.
+ * <p>
+ * Each arch directory is listed once, instead of asking for every file with
+ * every suffix. Only when the listing can not tell (it failed or it is not an
+ * index page), the urls are probed by HEAD requests.
+ */
+class DownloadUrlResolver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DownloadUrlResolver.class);
+
+    static final int MAX_REDIRECTIONS = 10;
+    private static final int MAX_LISTING_SIZE = 16 * 1024 * 1024;
+    private static final Pattern HREF = Pattern.compile("href=\"([^\"?#]+)\"", Pattern.CASE_INSENSITIVE);
+
+    private final String downloadUrl;
+    // directory url to names of files in it, null if the directory could not be listed
+    private final Map<String, Set<String>> listings = new HashMap<>();
+
+    /**
+     * @param downloadUrl download url of the provider of the builds
+     */
+    DownloadUrlResolver(String downloadUrl) {
+        this.downloadUrl = downloadUrl;
+    }
+
+    /**
+     * Sets url of each rpm accepted by the predicate, which does not have it
+     * yet, and url of the sources. Rpms, which are not found, are left
+     * without url.
+     */
+    void resolve(Build build, Predicate<RPM> rpmPredicate) {
+        if (downloadUrl == null) {
+            return;
+        }
+        int resolved = 0;
+        int total = 0;
+        for (RPM rpm : build.getRpms()) {
+            if (!rpmPredicate.test(rpm)) {
+                continue;
+            }
+            total++;
+            if (!rpm.hasUrl()) {
+                rpm.setUrl(resolveRpmUrl(build, rpm));
+            }
+            if (rpm.hasUrl()) {
+                resolved++;
+            }
+        }
+        if (build.getSrcUrl() == null) {
+            build.setSrcUrl(resolveSrcUrl(build));
+        }
+        LOG.info("Resolved download urls of " + resolved + " out of " + total + " rpms of " + build.getNvr()
+                + " using " + listings.size() + " directory listings, sources at " + build.getSrcUrl());
+    }
+
+    /**
+     * @return url of the rpm with first suffix, under which it exists, or null
+     * if there is none
+     */
+    String resolveRpmUrl(Build build, RPM rpm) {
+        for (String suffix : RPM.Suffix.INSTANCE.getSuffixes()) {
+            final String url = composeUrl(downloadUrl, build, rpm, suffix);
+            if (exists(url)) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return url of the source file, or of the closest parent directory
+     * which exists, if there is no source file
+     */
+    URL resolveSrcUrl(Build build) {
+        String srcUrl = null;
+        try {
+            for (String suffix : RPM.Suffix.INSTANCE.getSuffixes()) {
+                srcUrl = composeSrcUrl(downloadUrl, build, suffix);
+                if (exists(srcUrl)) {
+                    return new URL(srcUrl);
+                }
+            }
+            // if source file is not found, we try find the directory it might be found in
+            URL url = new URL(srcUrl);
+            // this loop iterates until valid url is found or there is no parent directory anymore
+            // ".." at the end of url indicates there is no parent directory
+            do {
+                URI uri = url.toURI();
+                // https://stackoverflow.com/questions/10159186/how-to-get-parent-url-in-java
+                uri = uri.getPath().endsWith("/") ? uri.resolve("..") : uri.resolve(".");
+                url = uri.toURL();
+            } while (!isUrlReachable(url.toString()) && !url.toString().endsWith(".."));
+            return url;
+        } catch (IOException | URISyntaxException ex) {
+            LOG.info("Unable to resolve sources of " + build.getNvr() + ": " + ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the file is in listing of its directory, or, when the
+     * directory can not be listed, if HEAD request of the url succeeds
+     */
+    boolean exists(String url) {
+        final int slash = url.lastIndexOf('/');
+        final String dir = url.substring(0, slash + 1);
+        final String name = url.substring(slash + 1);
+        // computeIfAbsent would not remember the null, so failed listing would be repeated
+        if (!listings.containsKey(dir)) {
+            listings.put(dir, list(dir));
+        }
+        final Set<String> listing = listings.get(dir);
+        if (listing != null) {
+            return listing.contains(name);
+        }
+        return isUrlReachable(url);
+    }
+
+    /**
+     * @return names of files in the directory, empty set if there is no such
+     * directory, or null if it can not be told
+     */
+    static Set<String> list(String dirUrl) {
+        HttpURLConnection connection = null;
+        try {
+            String location = dirUrl;
+            for (int i = 0; i < MAX_REDIRECTIONS; i++) {
+                connection = (HttpURLConnection) new URL(location).openConnection();
+                connection.setInstanceFollowRedirects(false);
+                final int code = connection.getResponseCode();
+                if (code == 301 || code == 302) {
+                    location = new URL(new URL(location), connection.getHeaderField("Location")).toString();
+                    connection.disconnect();
+                    continue;
+                }
+                if (code == 404) {
+                    return Collections.emptySet();
+                }
+                if (code != 200) {
+                    return null;
+                }
+                final Set<String> names = parseListing(readListing(connection));
+                return names.isEmpty() ? null : names;
+            }
+            return null;
+        } catch (IOException ex) {
+            LOG.info("Unable to list " + dirUrl + ": " + ex);
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @return names of files linked from index page
+     */
+    static Set<String> parseListing(String page) {
+        final Set<String> names = new HashSet<>();
+        final Matcher matcher = HREF.matcher(page);
+        while (matcher.find()) {
+            String href = matcher.group(1);
+            if (href.endsWith("/")) {
+                continue;
+            }
+            href = href.substring(href.lastIndexOf('/') + 1);
+            try {
+                names.add(URLDecoder.decode(href, "UTF-8"));
+            } catch (UnsupportedEncodingException | IllegalArgumentException ex) {
+                names.add(href);
+            }
+        }
+        return names;
+    }
+
+    private static String readListing(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (out.size() > MAX_LISTING_SIZE) {
+                    throw new IOException("Listing is bigger than " + MAX_LISTING_SIZE + " bytes");
+                }
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static boolean isUrlReachable(String urlString) {
+        try {
+            return isUrlReachableImpl(urlString, "HEAD", MAX_REDIRECTIONS);
+        } catch (Exception e) {
+            LOG.info(e.toString());
+            return false;
+        }
+    }
+
+    private static boolean isUrlReachableImpl(String urlString, String method, int redirectionsRemaining) throws IOException {
+        URL u = new URL(urlString);
+        HttpURLConnection huc = (HttpURLConnection) u.openConnection();
+        try {
+            huc.setRequestMethod(method);
+            huc.connect();
+            int code = huc.getResponseCode();
+            // http 301=Moved Permanently; 302=Found
+            // koji.fedoraproject.org might return both
+            if ((code == 301 || code == 302) && redirectionsRemaining > 0) {
+                return isUrlReachableImpl(huc.getHeaderField("Location"), method, redirectionsRemaining - 1);
+            }
+            // some servers do not know HEAD
+            if ((code == 405 || code == 501) && method.equals("HEAD")) {
+                return isUrlReachableImpl(urlString, "GET", redirectionsRemaining);
+            }
+            return code == 200;
+        } finally {
+            huc.disconnect();
+        }
+    }
+
+    static String composeUrl(String kojiDownloadUrl, Build build, RPM rpm, String suffix) {
+        StringBuilder sb = new StringBuilder(255);
+        sb.append(kojiDownloadUrl);
+        if (kojiDownloadUrl.charAt(kojiDownloadUrl.length() - 1) != '/') {
+            sb.append('/');
+        }
+        sb.append(build.getName()).append('/')
+        .append(build.getVersion()).append('/')
+        .append(build.getRelease()).append('/')
+        .append(rpm.getArch()).append('/')
+        .append(rpm.getFilename(suffix));
+        return sb.toString();
+    }
+
+    static String composeSrcUrl(String kojiDownloadUrl, Build build, String suffix) {
+        if (kojiDownloadUrl==null || build == null || suffix == null) {
+            return "http://unknonw.or/not/found.sorry";
+        }
+        StringBuilder sb = new StringBuilder(255);
+        sb.append(kojiDownloadUrl);
+        if (kojiDownloadUrl.charAt(kojiDownloadUrl.length() - 1) != '/') {
+            sb.append('/');
+        }
+        sb.append(build.getName()).append('/');
+        sb.append(build.getVersion()).append('/');
+        sb.append(build.getRelease()).append('/');
+        sb.append("src/");
+        sb.append(build.getName()).append('-')
+                .append(build.getVersion()).append('-')
+                .append(build.getRelease()).append(".src.").append(suffix);
+        return sb.toString();
+    }
+}
@@ -5,9 +5,11 @@ import hudson.plugins.scm.koji.KojiBuildProvider;
 import hudson.plugins.scm.koji.model.Build;
 import hudson.plugins.scm.koji.model.BuildProvider;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetBuildList;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetChangeToken;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.FakeBuildList;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
 class FakeKojiBuildMatcher extends BuildMatcher {
@@ -32,10 +34,24 @@ class FakeKojiBuildMatcher extends BuildMatcher {
                 xmlRpcApi.getBuildPlatform(),
                 xmlRpcApi.isBuilt()
         );
-        final FakeBuildList buildList = FakeBuildList.create(execute(buildProvider.getTopUrl(), getBuildListParams));
+        final FakeBuildList buildList = FakeBuildList.create(await(executeAsync(buildProvider.getTopUrl(), getBuildListParams)));
         return buildList.getValue();
     }
 
+    @Override
+    String getQueryKey(BuildProvider buildProvider) {
+        return "fakeKoji " + buildProvider.getTopUrl()
+                + " " + xmlRpcApi.getProjectName()
+                + " " + xmlRpcApi.getBuildVariants()
+                + " " + xmlRpcApi.getBuildPlatform()
+                + " " + xmlRpcApi.isBuilt();
+    }
+
+    @Override
+    CompletableFuture<String> getChangeToken(BuildProvider buildProvider) {
+        return fetchChangeToken(buildProvider.getTopUrl(), GetChangeToken.ofProject(xmlRpcApi.getProjectName()));
+    }
+
     @Override
     Build getBuild(Build build) {
         return build;
@@ -0,0 +1,336 @@
+package hudson.plugins.scm.koji.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads files over http. Transfer, which breaks (or stalls for
+ * {@link #READ_TIMEOUT}), is resumed by Range request from where it stopped,
+ * instead of starting over. Resumes and segments send If-Range with validator
+ * of the first response (strong ETag, or Last-Modified), so parts of file,
+ * which changed meanwhile, are never mixed, the download fails instead.
+ * <p>
+ * Large files can be downloaded by more connections at once, each getting
+ * one segment of the file. Segments are written to the output in order, so
+ * it can still compute digests as the bytes come, and at most as many
+ * segments as there are connections are held in memory.
+ */
+class HttpDownloader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpDownloader.class);
+
+    /**
+     * Default number of connections downloading single file.
+     */
+    static final int DEFAULT_CONNECTIONS = 1;
+    /**
+     * Default size of segment of file downloaded by more connections, in
+     * megabytes.
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 8;
+    /**
+     * Max number of connections downloading single file.
+     */
+    static final int MAX_CONNECTIONS = 16;
+    /**
+     * Max size of segment, in megabytes. Segment is held in memory as byte
+     * array, so it must stay far below 2 GB, and there are up to
+     * {@link #MAX_CONNECTIONS} of them per file.
+     */
+    static final int MAX_SEGMENT_SIZE = 256;
+    static final int MAX_RESUMES = 3;
+    /**
+     * Time to wait for connection to the server, in milliseconds.
+     */
+    static final int CONNECT_TIMEOUT = 30 * 1000;
+    /**
+     * Time to wait for next bytes of response, in milliseconds.
+     */
+    static final int READ_TIMEOUT = 60 * 1000;
+    private static final int MAX_REDIRECTIONS = 10;
+    /**
+     * Size of chunks read from the connection and written to the output,
+     * large ones take less system calls.
+     */
+    static final int BUFFER_SIZE = 256 * 1024;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final int connections;
+    private final long segmentSize;
+
+    HttpDownloader() {
+        this(DEFAULT_CONNECTIONS, DEFAULT_SEGMENT_SIZE * 1024L * 1024L);
+    }
+
+    /**
+     * @param connections max number of connections downloading single file,
+     * at most {@link #MAX_CONNECTIONS} are used
+     * @param segmentSize size of segment of file downloaded by more
+     * connections, in bytes, at most {@link #MAX_SEGMENT_SIZE} megabytes are
+     * used
+     */
+    HttpDownloader(int connections, long segmentSize) {
+        this.connections = Math.min(Math.max(1, connections), MAX_CONNECTIONS);
+        this.segmentSize = Math.min(Math.max(1, segmentSize), MAX_SEGMENT_SIZE * 1024L * 1024L);
+    }
+
+    /**
+     * Opens stream of whole file. Transfer is not resumed, so it is meant for
+     * small files.
+     */
+    static InputStream openStream(String url) throws IOException {
+        final HttpURLConnection connection = open(url, 0, -1, null);
+        if (connection.getResponseCode() != 200) {
+            connection.disconnect();
+            throw new IOException("Unsupported HTTP response " + connection.getResponseCode() + " for URL: " + url);
+        }
+        return connection.getInputStream();
+    }
+
+    /**
+     * Writes the file to the output, stops when the thread is interrupted.
+     */
+    void download(String url, OutputStream out) throws IOException {
+        if (connections <= 1) {
+            transfer(url, 0, -1, out);
+            return;
+        }
+        // first segment tells, whether the server supports ranges and how long the file is
+        final Validator validator = new Validator();
+        final long size = transfer(url, 0, segmentSize - 1, out, validator);
+        if (size < 0 || size <= segmentSize) {
+            return;
+        }
+        final int segments = (int) ((size + segmentSize - 1) / segmentSize);
+        final ExecutorService executor = Executors.newFixedThreadPool(connections, runnable -> {
+            final Thread thread = new Thread(runnable, "koji-segment-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<byte[]>> futures = new ArrayList<>(segments);
+            for (int i = 1; i < segments; i++) {
+                futures.add(null);
+            }
+            for (int i = 1; i < Math.min(segments, connections + 1); i++) {
+                futures.set(i - 1, submitSegment(executor, url, i, size, validator));
+            }
+            for (int i = 1; i < segments; i++) {
+                out.write(futures.get(i - 1).get());
+                futures.set(i - 1, null);
+                if (i + connections < segments) {
+                    futures.set(i + connections - 1, submitSegment(executor, url, i + connections, size, validator));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download cancelled");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Download of " + url + " failed", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Future<byte[]> submitSegment(ExecutorService executor, String url, int segment, long size, Validator validator) {
+        final long from = segment * segmentSize;
+        final long to = Math.min(from + segmentSize, size) - 1;
+        return executor.submit(() -> {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) (to - from + 1));
+            transfer(url, from, to, bytes, validator);
+            if (bytes.size() != to - from + 1) {
+                throw new IOException("Server does not support ranges of " + url);
+            }
+            return bytes.toByteArray();
+        });
+    }
+
+    /**
+     * Writes the range of the file to the output. Broken transfer is resumed
+     * from where it stopped, at most {@link #MAX_RESUMES} times.
+     *
+     * @param to last byte of the range, -1 for the end of the file
+     * @return size of the whole file, -1 if the server does not support
+     * ranges (so the whole file was written, if the range starts at 0)
+     */
+    static long transfer(String url, long from, long to, OutputStream out) throws IOException {
+        return transfer(url, from, to, out, new Validator());
+    }
+
+    /**
+     * @param validator validator of the file, taken from the first response,
+     * if it is not known yet
+     */
+    private static long transfer(String url, long from, long to, OutputStream out, Validator validator) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long position = from;
+        int resumes = 0;
+        while (true) {
+            final HttpURLConnection connection = open(url, position, to, validator.get());
+            try {
+                final int response = connection.getResponseCode();
+                long size = -1;
+                long end;
+                if (response == 206) {
+                    final Matcher matcher = CONTENT_RANGE.matcher(String.valueOf(connection.getHeaderField("Content-Range")));
+                    if (!matcher.matches() || Long.parseLong(matcher.group(1)) != position) {
+                        throw new IOException("Invalid Content-Range " + connection.getHeaderField("Content-Range") + " for URL: " + url);
+                    }
+                    size = Long.parseLong(matcher.group(3));
+                    end = Long.parseLong(matcher.group(2)) + 1;
+                } else if (response == 200) {
+                    // range not supported, whole file is sent, so range from start gets it all
+                    end = from > 0 && to >= 0 ? to + 1 : connection.getContentLengthLong();
+                } else {
+                    throw new IOException("Unsupported HTTP response " + response + " for URL: " + url);
+                }
+                if (!validator.matches(connection)) {
+                    // server, which honors If-Range, sends whole changed file
+                    throw new IOException("File changed during download of URL: " + url);
+                }
+                IOException failure = null;
+                try (InputStream in = connection.getInputStream()) {
+                    if (response == 200) {
+                        skip(in, position);
+                    }
+                    while (end < 0 || position < end) {
+                        final int read;
+                        try {
+                            read = in.read(buffer, 0, end < 0 ? buffer.length : (int) Math.min(buffer.length, end - position));
+                        } catch (IOException ex) {
+                            failure = ex;
+                            break;
+                        }
+                        if (read == -1) {
+                            if (end >= 0) {
+                                failure = new IOException("Transfer of " + url + " ended at " + position + " of " + end);
+                            }
+                            break;
+                        }
+                        if (Thread.interrupted()) {
+                            throw new InterruptedIOException("Download cancelled");
+                        }
+                        out.write(buffer, 0, read);
+                        position += read;
+                    }
+                } catch (InterruptedIOException ex) {
+                    throw ex;
+                } catch (IOException ex) {
+                    // failed skip or close, the written bytes are fine
+                    failure = failure != null ? failure : ex;
+                }
+                if (failure == null) {
+                    return size;
+                }
+                if (++resumes > MAX_RESUMES) {
+                    throw failure;
+                }
+                LOG.info("Transfer of " + url + " broken at " + position + ", resuming: " + failure);
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static void skip(InputStream in, long count) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        while (count > 0) {
+            final int read = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+            if (read == -1) {
+                throw new IOException("Transfer ended before " + count + " more bytes");
+            }
+            count -= read;
+        }
+    }
+
+    /**
+     * @param to last byte of requested range, -1 for the end of the file
+     * @param validator sent in If-Range of range request, null if not known
+     * @return connection with response other than redirect
+     */
+    private static HttpURLConnection open(String url, long from, long to, String validator) throws IOException {
+        String location = url;
+        for (int i = 0; i < MAX_REDIRECTIONS; i++) {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(location).openConnection();
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            if (from > 0 || to >= 0) {
+                connection.setRequestProperty("Range", "bytes=" + from + "-" + (to >= 0 ? String.valueOf(to) : ""));
+                if (validator != null) {
+                    connection.setRequestProperty("If-Range", validator);
+                }
+            }
+            final int response = connection.getResponseCode();
+            if (response != 301 && response != 302) {
+                return connection;
+            }
+            final String redirect = connection.getHeaderField("Location");
+            connection.disconnect();
+            if (redirect == null || redirect.isEmpty()) {
+                throw new IOException("Invalid Location header for response " + response);
+            }
+            if (location.equals(redirect)) {
+                throw new IOException("Infinite redirection loop detected for URL: " + location);
+            }
+            location = redirect;
+        }
+        throw new IOException("Too many redirects for URL: " + url);
+    }
+
+    /**
+     * Validator of the downloaded file, shared by all its requests.
+     */
+    private static class Validator {
+
+        private String value;
+
+        synchronized String get() {
+            return value;
+        }
+
+        /**
+         * Remembers validator of the first response.
+         *
+         * @return false if the response has other validator than the first one
+         */
+        synchronized boolean matches(HttpURLConnection connection) {
+            final String current = of(connection);
+            if (value == null) {
+                value = current;
+                return true;
+            }
+            return current == null || current.equals(value);
+        }
+
+        private static String of(HttpURLConnection connection) {
+            final String etag = connection.getHeaderField("ETag");
+            // weak etag can not be used in If-Range
+            if (etag != null && !etag.startsWith("W/")) {
+                return etag;
+            }
+            return connection.getHeaderField("Last-Modified");
+        }
+    }
+}
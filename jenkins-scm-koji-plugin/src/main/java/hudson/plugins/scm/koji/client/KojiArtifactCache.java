@@ -0,0 +1,300 @@
+package hudson.plugins.scm.koji.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Rpms and archives downloaded on the node, shared by all jobs running there,
+ * so the same file is not downloaded again by every job testing the build.
+ * <p>
+ * Each entry is a file named by SHA-256 of its key (nvr, file name and the
+ * checksum advertised by the hub), with its digests, length and modification
+ * time kept next to it. Files are hardlinked to workspaces (copied, if the
+ * workspace is on other file system), and are read only, as they are shared.
+ * Entry, whose length or modification time changed since it was cached (e.g.
+ * through its link in a workspace), is dropped and downloaded again. Download
+ * of the same entry by more threads at once is done just once, the others wait
+ * for it.
+ * <p>
+ * Total size of entries is bounded, least recently used entries are evicted
+ * first. Use is tracked by modification time of the digest files, so it
+ * survives restarts.
+ */
+public class KojiArtifactCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KojiArtifactCache.class);
+
+    static final String CACHE_DIR = "kojiArtifactCache";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String SUMS_SUFFIX = ".sums";
+
+    /**
+     * Default max size of all entries, in megabytes, 0 as the cache is off by
+     * default.
+     */
+    public static final int DEFAULT_MAX_SIZE = 0;
+
+    private static final Map<File, KojiArtifactCache> CACHES = new ConcurrentHashMap<>();
+
+    private final File dir;
+    private long maxSize;
+    // entry name to its size, least recently used first, null until first use
+    private LinkedHashMap<String, Long> entries;
+    private long size;
+    private final Map<String, CompletableFuture<Sums>> downloads = new ConcurrentHashMap<>();
+
+    KojiArtifactCache(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param rootDir directory to create the cache in
+     * @param maxSize max size of all entries, in bytes
+     * @return shared cache instance for given directory
+     */
+    public static KojiArtifactCache get(File rootDir, long maxSize) {
+        final File dir = new File(rootDir, CACHE_DIR).getAbsoluteFile();
+        final KojiArtifactCache cache = CACHES.computeIfAbsent(dir, d -> new KojiArtifactCache(d, maxSize));
+        cache.setMaxSize(maxSize);
+        return cache;
+    }
+
+    synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        if (entries != null) {
+            evict();
+        }
+    }
+
+    /**
+     * Puts the file of given key to target, from the cache if it is there,
+     * otherwise it is downloaded to the cache first.
+     *
+     * @param key identifies content of the file, must contain its checksum
+     * @return digests of the file, or null if the download did not match its
+     * checksum
+     */
+    Sums fetch(String key, File target, Download download) throws IOException {
+        final String name = toName(key);
+        Sums sums = linkEntry(name, target);
+        if (sums != null) {
+            return sums;
+        }
+        final CompletableFuture<Sums> own = new CompletableFuture<>();
+        final CompletableFuture<Sums> running = downloads.putIfAbsent(name, own);
+        if (running != null) {
+            try {
+                if (running.get() == null) {
+                    return null;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for download of " + key);
+            } catch (ExecutionException ex) {
+                // failed download is tried again, without the cache
+                return download.to(target);
+            }
+            sums = linkEntry(name, target);
+            // already evicted, if the cache is too small
+            return sums != null ? sums : download.to(target);
+        }
+        final File tmp = new File(dir, name + TMP_SUFFIX);
+        try {
+            dir.mkdirs();
+            sums = download.to(tmp);
+            if (sums != null) {
+                putEntry(name, tmp, sums, target);
+            }
+            own.complete(sums);
+            return sums;
+        } catch (IOException | RuntimeException ex) {
+            own.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            downloads.remove(name);
+            tmp.delete();
+        }
+    }
+
+    synchronized long size() {
+        load();
+        return size;
+    }
+
+    /**
+     * @return digests of the entry, or null if there is no such entry (or it
+     * changed since it was cached)
+     */
+    private synchronized Sums linkEntry(String name, File target) throws IOException {
+        load();
+        if (entries.get(name) == null) {
+            return null;
+        }
+        final File file = new File(dir, name);
+        final File sumsFile = new File(dir, name + SUMS_SUFFIX);
+        final Sums sums;
+        try {
+            final List<String> lines = Files.readAllLines(sumsFile.toPath(), StandardCharsets.US_ASCII);
+            final String[] split = lines.isEmpty() ? new String[0] : lines.get(0).split(" ");
+            if (split.length != 4) {
+                throw new IOException("Invalid digests of " + file);
+            }
+            sums = new Sums(split[0], split[1]);
+            if (file.length() != Long.parseLong(split[2]) || file.lastModified() != Long.parseLong(split[3])) {
+                LOG.warn("Dropping entry " + file + " of artifact cache, it changed since it was cached");
+                remove(name);
+                return null;
+            }
+        } catch (IOException | NumberFormatException ex) {
+            LOG.warn("Unable to read entry " + file + " of artifact cache", ex);
+            remove(name);
+            return null;
+        }
+        // entry file keeps its modification time, so changes of it are seen
+        sumsFile.setLastModified(System.currentTimeMillis());
+        link(file, target);
+        return sums;
+    }
+
+    private synchronized void putEntry(String name, File tmp, Sums sums, File target) throws IOException {
+        load();
+        final File file = new File(dir, name);
+        // shared by workspaces, which must not change it
+        tmp.setWritable(false, false);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.write(
+                new File(dir, name + SUMS_SUFFIX).toPath(),
+                (sums.getMd5() + " " + sums.getSha256() + " " + file.length() + " " + file.lastModified()).getBytes(StandardCharsets.US_ASCII)
+        );
+        final Long previous = entries.remove(name);
+        size -= previous == null ? 0 : previous;
+        entries.put(name, file.length());
+        size += file.length();
+        link(file, target);
+        evict();
+    }
+
+    private static void link(File file, File target) throws IOException {
+        Files.deleteIfExists(target.toPath());
+        try {
+            Files.createLink(target.toPath(), file.toPath());
+        } catch (IOException | UnsupportedOperationException ex) {
+            // workspace on other file system
+            Files.copy(file.toPath(), target.toPath());
+            target.setWritable(true);
+        }
+    }
+
+    private void load() {
+        if (entries != null) {
+            return;
+        }
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        size = 0;
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        // last use of entry is the modification time of its digests
+        Arrays.sort(files, Comparator.comparingLong(file -> new File(dir, file.getName() + SUMS_SUFFIX).lastModified()));
+        for (File file : files) {
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                // left over by crash
+                file.delete();
+                continue;
+            }
+            if (file.getName().endsWith(SUMS_SUFFIX)) {
+                continue;
+            }
+            entries.put(file.getName(), file.length());
+            size += file.length();
+        }
+        evict();
+        LOG.info("Loaded artifact cache " + dir + " with " + entries.size() + " entries of " + size + " bytes");
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue();
+            // workspaces, which link the file, keep it
+            new File(dir, eldest.getKey()).delete();
+            new File(dir, eldest.getKey() + SUMS_SUFFIX).delete();
+        }
+    }
+
+    private void remove(String name) {
+        final Long removed = entries.remove(name);
+        size -= removed == null ? 0 : removed;
+        new File(dir, name).delete();
+        new File(dir, name + SUMS_SUFFIX).delete();
+    }
+
+    private static String toName(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Downloads the file of the entry.
+     */
+    interface Download {
+
+        /**
+         * @return digests of the file, or null if it did not match its
+         * checksum
+         */
+        Sums to(File file) throws IOException;
+    }
+
+    /**
+     * Digests of the file of the entry.
+     */
+    static class Sums {
+
+        private final String md5;
+        private final String sha256;
+
+        Sums(String md5, String sha256) {
+            this.md5 = md5;
+            this.sha256 = sha256;
+        }
+
+        String getMd5() {
+            return md5;
+        }
+
+        String getSha256() {
+            return sha256;
+        }
+    }
+}
@@ -6,57 +6,96 @@ import hudson.plugins.scm.koji.FakeKojiXmlRpcApi;
 import hudson.plugins.scm.koji.KojiBuildProvider;
 import hudson.plugins.scm.koji.KojiXmlRpcApi;
 import hudson.plugins.scm.koji.RealKojiXmlRpcApi;
+import hudson.plugins.scm.koji.client.tools.XmlRpcClientPool;
 import hudson.plugins.scm.koji.model.Build;
 import hudson.plugins.scm.koji.model.KojiBuildDownloadResult;
 import hudson.plugins.scm.koji.model.RPM;
 import hudson.remoting.VirtualChannel;
-import hudson.plugins.scm.koji.KojiSCM;
 import hudson.plugins.scm.koji.LoggerHelp;
+import hudson.plugins.scm.koji.TaskListenerLogger;
+import hudson.plugins.scm.koji.OrderBy;
 
-import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
+import java.io.InputStreamReader;
 import java.net.InetAddress;
-import java.net.MalformedURLException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.Date;
 
 import org.jenkinsci.remoting.RoleChecker;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import javax.xml.bind.DatatypeConverter;
 
 public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownloadResult>, LoggerHelp {
 
-    private static final Logger LOG = LoggerFactory.getLogger(KojiSCM.class);
-    private static final int MAX_REDIRECTIONS = 10;
     private static final int BUFFER_SIZE = 8192;
+    private static final int DOWNLOAD_ATTEMPTS = 2;
+    private static final String SHA256_SUFFIX = ".sha256";
+
+    /**
+     * Default number of files downloaded at once.
+     */
+    public static final int DEFAULT_DOWNLOAD_THREADS = 4;
+    /**
+     * Default number of connections downloading single file.
+     */
+    public static final int DEFAULT_DOWNLOAD_CONNECTIONS = HttpDownloader.DEFAULT_CONNECTIONS;
+    /**
+     * Default size of segment of file downloaded by more connections, in
+     * megabytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = HttpDownloader.DEFAULT_SEGMENT_SIZE;
+    /**
+     * Max number of connections downloading single file.
+     */
+    public static final int MAX_DOWNLOAD_CONNECTIONS = HttpDownloader.MAX_CONNECTIONS;
+    /**
+     * Max size of segment of file downloaded by more connections, in
+     * megabytes.
+     */
+    public static final int MAX_SEGMENT_SIZE = HttpDownloader.MAX_SEGMENT_SIZE;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
 
     private final Iterable<KojiBuildProvider> kojiBuildProviders;
     private final KojiXmlRpcApi kojiXmlRpcApi;
     private final Predicate<String> notProcessedNvrPredicate;
-    private TaskListener currentListener;
-    private final boolean verbose = true;
+    private TaskListenerLogger logger = new TaskListenerLogger(KojiBuildDownloader.class, null);
     private Build build;
     private final String downloadDir;
     private final int maxPreviousBuilds;
     private final boolean cleanDownloadDir;
     private final boolean dirPerNvr;
+    private OrderBy orderBy = OrderBy.DATE;
+    private XmlRpcClientPool.Settings clientSettings;
+    private int downloadThreads = DEFAULT_DOWNLOAD_THREADS;
+    private String artifactCacheDir;
+    private long artifactCacheSize;
+    private transient KojiArtifactCache artifactCache;
+    private String resultCacheDir;
+    private int resultCacheSize;
+    private int downloadConnections = DEFAULT_DOWNLOAD_CONNECTIONS;
+    private long segmentSize = DEFAULT_SEGMENT_SIZE * 1024L * 1024L;
 
     public KojiBuildDownloader(
             Iterable<KojiBuildProvider> kojiBuildProviders,
@@ -81,18 +120,28 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
     @Override
     public KojiBuildDownloadResult invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
         if (build == null) {
-            final Optional<Build> buildOptional = new KojiListBuilds(
+            final KojiListBuilds worker = new KojiListBuilds(
                     kojiBuildProviders,
                     kojiXmlRpcApi,
                     notProcessedNvrPredicate,
                     maxPreviousBuilds
-            ).invoke(workspace, channel);
+            );
+            worker.setOrderBy(orderBy);
+            worker.setClientSettings(clientSettings);
+            worker.setListener(logger.getListener());
+            if (resultCacheDir != null && resultCacheSize > 0) {
+                worker.setResultCache(new File(resultCacheDir), resultCacheSize);
+            }
+            final Optional<Build> buildOptional = worker.invoke(workspace, channel);
             if (!buildOptional.isPresent()) {
                 // if we are here - no remote changes on first build, exiting:
                 return null;
             }
             build = buildOptional.get();
         }
+        if (artifactCacheDir != null && artifactCacheSize > 0) {
+            artifactCache = KojiArtifactCache.get(new File(artifactCacheDir), artifactCacheSize);
+        }
         // we got the build info in workspace, downloading:
         File targetDir = workspace;
         if (downloadDir != null && downloadDir.length() > 0) {
@@ -130,38 +179,16 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         if (kojiXmlRpcApi instanceof RealKojiXmlRpcApi) {
             final RealKojiXmlRpcApi realKojiXmlRpcApi = (RealKojiXmlRpcApi) kojiXmlRpcApi;
             List<String> rpmFiles = downloadRPMs(targetDir, build, realKojiXmlRpcApi);
-            String srcUrl = "";
-            for (String suffix : RPM.Suffix.INSTANCE.getSuffixes()) {
-                srcUrl = composeSrcUrl(build.getProvider().getDownloadUrl(), build, suffix);
-                if (isUrlReachable(srcUrl)) {
-                    build.setSrcUrl(new URL(srcUrl));
-                    break;
-                }
-            }
-            // if source file is not found, we try find the directory it might be found in
             if (build.getSrcUrl() == null) {
-                URL url = new URL(srcUrl);
-                try {
-                    // this loop iterates until valid url is found or there is no parent directory anymore
-                    // ".." at the end of url indicates there is no parent directory
-                    do {
-                        URI uri = url.toURI();
-                        // https://stackoverflow.com/questions/10159186/how-to-get-parent-url-in-java
-                        uri = uri.getPath().endsWith("/") ? uri.resolve("..") : uri.resolve(".");
-                        url = uri.toURL();
-                    } while (!isUrlReachable(url.toString()) && !url.toString().endsWith(".."));
-                    build.setSrcUrl(url);
-                } catch (URISyntaxException e) {
-                    e.printStackTrace();
-                }
+                // build.xml written before urls were resolved by polling
+                build.setSrcUrl(new DownloadUrlResolver(build.getProvider().getDownloadUrl()).resolveSrcUrl(build));
             }
             return new KojiBuildDownloadResult(build, targetDir.getAbsolutePath(), rpmFiles);
         }
         if (kojiXmlRpcApi instanceof FakeKojiXmlRpcApi) {
             final File target = targetDir;
-            List<String> rpmPaths = build.getRpms()
+            List<String> rpmPaths = downloadAll(build.getRpms(), rpm -> downloadArchive(target, rpm))
                     .stream()
-                    .map(rpm -> downloadArchive(target, rpm))
                     .filter(Optional::isPresent)
                     .map(optionalFile -> optionalFile.get().getAbsolutePath())
                     .collect(Collectors.toList());
@@ -172,26 +199,23 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
     }
 
     private Optional<File> downloadArchive(File targetDir, RPM rpm) {
-        if (!isUrlReachable(rpm.getUrl())) {
-            log("URL " + rpm.getUrl() + " not accessible");
-            return Optional.empty();
-        }
         File targetFile = new File(targetDir, rpm.getFilename(""));
         log("Starting downloading " + rpm.getUrl());
-        try (
-                final OutputStream out = new BufferedOutputStream(new FileOutputStream(targetFile));
-                final InputStream in = httpDownloadStream(rpm.getUrl())
-        ) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int read;
-            while ((read = in.read(buffer)) != -1) {
-                out.write(buffer, 0, read);
-            }
-        } catch (IOException e) {
-            log("Exception while downloading " + rpm.getFilename("") + ": ", e);
+        final KojiArtifactCache.Sums digests;
+        // no probing, failed download tells the url is not accessible
+        try {
+            digests = fetch(rpm, rpm.getUrl(), targetFile, fetchSha256(rpm.getUrl()));
+        } catch (IOException | RuntimeException e) {
+            log("URL " + rpm.getUrl() + " not accessible: ", e);
+            return Optional.empty();
+        }
+        if (digests == null) {
+            // corrupted archive fails the checkout, missing one does not
+            throw new RuntimeException("Checksum of " + rpm.getUrl() + " does not match");
         }
         log("Download successful");
-        rpm.setHashSum(hashSum(targetFile));
+        rpm.setHashSum(digests.getMd5());
+        rpm.setSha256Sum(digests.getSha256());
         return Optional.of(targetFile);
     }
 
@@ -209,26 +233,13 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         }
     }
 
-    public List<String> downloadRPMs(File targetDir, Build build, RealKojiXmlRpcApi realKojiXmlRpcApi) {
-        Predicate<RPM> nvrPredicate = i -> true;
-        final String subpackageBlacklist = realKojiXmlRpcApi.getSubpackageBlacklist();
-        if (subpackageBlacklist != null && !subpackageBlacklist.isEmpty()) {
-            GlobPredicate glob = new GlobPredicate(subpackageBlacklist);
-            nvrPredicate = rpm -> !glob.test(rpm.getNvr());
-        }
-
-        Predicate<RPM> whitelistPredicate = i -> true;
-        final String subpackageWhitelist = realKojiXmlRpcApi.getSubpackageWhitelist();
-        if (subpackageWhitelist != null && !subpackageWhitelist.isEmpty()) {
-            GlobPredicate glob = new GlobPredicate(subpackageWhitelist);
-            whitelistPredicate = rpm -> glob.test(rpm.getNvr());
-        }
-
-        List<String> l = build.getRpms()
+    public List<String> downloadRPMs(File targetDir, Build build, RealKojiXmlRpcApi realKojiXmlRpcApi) throws InterruptedException {
+        List<RPM> rpms = build.getRpms()
+                .stream()
+                .filter(composeRpmPredicate(realKojiXmlRpcApi))
+                .collect(Collectors.toList());
+        List<String> l = downloadAll(rpms, r -> downloadRPM(targetDir, build, r))
                 .stream()
-                .filter(nvrPredicate)
-                .filter(whitelistPredicate)
-                .map(r -> downloadRPM(targetDir, build, r))
                 .map(File::getAbsolutePath)
                 .collect(Collectors.toList());
         int rpmsInBuildXml = build.getRpms().size();
@@ -243,45 +254,187 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         return l;
     }
 
+    /**
+     * @return predicate accepting rpms, which are not excluded by subpackage
+     * blacklist and whitelist
+     */
+    static Predicate<RPM> composeRpmPredicate(RealKojiXmlRpcApi realKojiXmlRpcApi) {
+        Predicate<RPM> nvrPredicate = i -> true;
+        final String subpackageBlacklist = realKojiXmlRpcApi.getSubpackageBlacklist();
+        if (subpackageBlacklist != null && !subpackageBlacklist.isEmpty()) {
+            GlobPredicate glob = new GlobPredicate(subpackageBlacklist);
+            nvrPredicate = rpm -> !glob.test(rpm.getNvr());
+        }
+
+        Predicate<RPM> whitelistPredicate = i -> true;
+        final String subpackageWhitelist = realKojiXmlRpcApi.getSubpackageWhitelist();
+        if (subpackageWhitelist != null && !subpackageWhitelist.isEmpty()) {
+            GlobPredicate glob = new GlobPredicate(subpackageWhitelist);
+            whitelistPredicate = rpm -> glob.test(rpm.getNvr());
+        }
+        return nvrPredicate.and(whitelistPredicate);
+    }
+
     private File downloadRPM(File targetDir, Build build, RPM rpm) {
         try {
-            for (String suffix : RPM.Suffix.INSTANCE.getSuffixes()) {
-                String urlString = composeUrl(build.getProvider().getDownloadUrl(), build, rpm, suffix);
-                log(InetAddress.getLocalHost().getHostName());
-                log(new Date().toString());
-                if (build.isManual()) {
-                    log("Manual tag provided - skipping download of ", urlString);
-                } else {
-                    log("Downloading: ", urlString);
-                }
-                if (!isUrlReachable(urlString)) {
-                    log("Not accessible, trying another suffix in: ", rpm.getFilename(suffix));
-                    continue;
-                }
-                rpm.setUrl(urlString);
-                File targetFile = new File(targetDir, rpm.getFilename(suffix));
-                log("To: ", targetFile);
-                if (!build.isManual()) {
-                    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(targetFile));
-                         InputStream in = httpDownloadStream(urlString)) {
-                        byte[] buffer = new byte[BUFFER_SIZE];
-                        int read;
-                        while ((read = in.read(buffer)) != -1) {
-                            out.write(buffer, 0, read);
-                        }
-                    }
+            log(InetAddress.getLocalHost().getHostName());
+            log(new Date().toString());
+            if (!rpm.hasUrl()) {
+                // build.xml written before urls were resolved by polling
+                rpm.setUrl(new DownloadUrlResolver(build.getProvider().getDownloadUrl()).resolveRpmUrl(build, rpm));
+                if (!rpm.hasUrl()) {
+                    throw new RuntimeException("Not accessible with any suffix: " + rpm.getFilename(""));
                 }
+            }
+            String urlString = rpm.getUrl();
+            String suffix = RPM.Suffix.INSTANCE.getSuffix(urlString);
+            if (build.isManual()) {
+                log("Manual tag provided - skipping download of ", urlString);
+            } else {
+                log("Downloading: ", urlString);
+            }
+            File targetFile = new File(targetDir, rpm.getFilename(suffix));
+            log("To: ", targetFile);
+            if (build.isManual()) {
                 rpm.setHashSum(hashSum(targetFile));
                 return targetFile;
             }
+            // koji advertises payloadhash of every rpm, so the sidecar is asked for only when it is missing
+            final String sha256 = rpm.getPayloadHash() == null ? fetchSha256(urlString) : null;
+            final KojiArtifactCache.Sums digests = fetch(rpm, urlString, targetFile, sha256);
+            if (digests == null) {
+                throw new RuntimeException("Checksum of " + urlString + " does not match");
+            }
+            rpm.setHashSum(digests.getMd5());
+            rpm.setSha256Sum(digests.getSha256());
+            return targetFile;
         } catch (RuntimeException ex) {
             throw ex;
         } catch (Exception ex) {
             throw new RuntimeException("Exception while downloading RPM", ex);
         }
+    }
+
+    /**
+     * Downloads the files concurrently, at most {@link #downloadThreads} at
+     * once. First failure cancels downloads, which did not finish yet, and
+     * is thrown once they are stopped.
+     *
+     * @return results of the downloads, in order of the rpms
+     */
+    private <T> List<T> downloadAll(List<RPM> rpms, Function<RPM, T> download) throws InterruptedException {
+        final int threads = Math.min(downloadThreads, rpms.size());
+        if (threads <= 1) {
+            return rpms.stream().map(download).collect(Collectors.toList());
+        }
+        log("Downloading " + rpms.size() + " files by " + threads + " threads");
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "koji-download-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        final List<Future<T>> futures = new ArrayList<>(rpms.size());
+        try {
+            for (RPM rpm : rpms) {
+                futures.add(completion.submit(() -> download.apply(rpm)));
+            }
+            for (int i = 0; i < rpms.size(); i++) {
+                // in order of completion, so failure is noticed right away
+                completion.take().get();
+            }
+            final List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Exception while downloading", cause);
+        } finally {
+            executor.shutdownNow();
+            // cancelled downloads delete their partial files before they end
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log("Some downloads did not stop in time");
+            }
+        }
+    }
+
+    /**
+     * Takes the file from the artifact cache of the node, if there is one and
+     * the checksum of the file is known, otherwise downloads it.
+     *
+     * @param sha256 expected sha256 of the file, or null
+     * @return digests of the file, or null if it did not match its checksum
+     */
+    private KojiArtifactCache.Sums fetch(RPM rpm, String url, File targetFile, String sha256) throws IOException {
+        final String checksum = rpm.getPayloadHash() != null ? rpm.getPayloadHash() : sha256;
+        if (artifactCache == null || checksum == null) {
+            // file, whose checksum is not known, could not be told from other file of the same name
+            return downloadVerified(url, targetFile, rpm.getPayloadHash(), sha256);
+        }
+        return artifactCache.fetch(rpm.getNvr() + '/' + targetFile.getName() + '/' + checksum, targetFile,
+                file -> downloadVerified(url, file, rpm.getPayloadHash(), sha256));
+    }
+
+    /**
+     * Downloads the file, computing its digests as it is written, and checks
+     * them against the expected ones. File, which does not match, is deleted
+     * and downloaded again, at most {@link #DOWNLOAD_ATTEMPTS} times.
+     *
+     * @param payloadMd5 expected md5 of header and payload of rpm, or null
+     * @param sha256 expected sha256 of the file, or null
+     * @return digests of the file, or null if it did not match in any attempt
+     */
+    private KojiArtifactCache.Sums downloadVerified(String url, File targetFile, String payloadMd5, String sha256) throws IOException {
+        // file linked from the artifact cache by previous checkout is read only
+        Files.deleteIfExists(targetFile.toPath());
+        for (int attempt = 1; attempt <= DOWNLOAD_ATTEMPTS; attempt++) {
+            final DigestingOutputStream digests;
+            try (DigestingOutputStream out = DigestingOutputStream.toFile(targetFile)) {
+                new HttpDownloader(downloadConnections, segmentSize).download(url, out);
+                digests = out;
+            } catch (IOException | RuntimeException ex) {
+                // no partial files are left behind
+                targetFile.delete();
+                throw ex;
+            }
+            String mismatch = null;
+            if (payloadMd5 != null && !payloadMd5.equalsIgnoreCase(String.valueOf(digests.getPayloadMd5()))) {
+                mismatch = "payloadhash " + payloadMd5 + " expected, " + digests.getPayloadMd5() + " found";
+            } else if (sha256 != null && !sha256.equalsIgnoreCase(digests.getSha256())) {
+                mismatch = "sha256 " + sha256 + " expected, " + digests.getSha256() + " found";
+            }
+            if (mismatch == null) {
+                return new KojiArtifactCache.Sums(digests.getMd5(), digests.getSha256());
+            }
+            targetFile.delete();
+            log("Checksum of " + url + " does not match (attempt " + attempt + " of " + DOWNLOAD_ATTEMPTS + "): " + mismatch);
+        }
         return null;
     }
 
+    /**
+     * @return sha256 published next to the file (in sha256sum format), or
+     * null if there is none
+     */
+    private String fetchSha256(String url) {
+        final String sumUrl = url + SHA256_SUFFIX;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(HttpDownloader.openStream(sumUrl), StandardCharsets.UTF_8))) {
+            final String line = reader.readLine();
+            if (line == null || line.trim().isEmpty()) {
+                return null;
+            }
+            return line.trim().split("\\s+")[0];
+        } catch (IOException | RuntimeException ex) {
+            log("No checksum at " + sumUrl + ", not verified");
+            return null;
+        }
+    }
+
     private String hashSum(File file) {
         byte[] buffer = new byte[BUFFER_SIZE];
         MessageDigest hashAlgorithm;
@@ -299,166 +452,76 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         return DatatypeConverter.printHexBinary(hashAlgorithm.digest()).toLowerCase();
     }
 
-    private InputStream httpDownloadStream(String urlString) {
-        HttpURLConnection httpConn = null;
-        boolean keepConnection = false;
-        for (int i = 0; i < MAX_REDIRECTIONS; i++) {
-            try {
-                URL url = new URL(urlString);
-                httpConn = (HttpURLConnection) url.openConnection();
-                httpConn.setRequestMethod("GET");
-                int response = httpConn.getResponseCode();
-                switch (response) {
-                    case 200: {
-                        keepConnection = true;
-                        return httpConn.getInputStream();
-                    }
-                    case 301:
-                    case 302: {
-                        String location = httpConn.getHeaderField("Location");
-                        if (location == null || location.isEmpty()) {
-                            throw new Exception("Invalid Location header for response " + response);
-                        }
-                        if (urlString.equals(location)) {
-                            throw new Exception("Infinite redirection loop detected for URL: " + urlString);
-                        }
-                        urlString = location;
-                        break;
-                    }
-                    default:
-                        throw new Exception("Unsupported HTTP response " + response + " for URL: " + urlString);
-                }
-            } catch (RuntimeException ex) {
-                throw ex;
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
-            } finally {
-                if (!keepConnection && httpConn != null) {
-                    httpConn.disconnect();
-                }
-            }
-        }
-        throw new RuntimeException("Too many redirects for URL: " + urlString);
+    @Override
+    public void checkRoles(RoleChecker checker) throws SecurityException {
+        // TODO maybe implement?
     }
 
-    private String composeUrl(String kojiDownloadUrl, Build build, RPM rpm, String suffix) {
-        StringBuilder sb = new StringBuilder(255);
-        sb.append(kojiDownloadUrl);
-        if (kojiDownloadUrl.charAt(kojiDownloadUrl.length() - 1) != '/') {
-            sb.append('/');
-        }
-        sb.append(build.getName()).append('/')
-        .append(build.getVersion()).append('/')
-        .append(build.getRelease()).append('/')
-        .append(rpm.getArch()).append('/')
-        .append(rpm.getFilename(suffix));
-        return sb.toString();
+    public void setOrderBy(OrderBy orderBy) {
+        this.orderBy = orderBy;
     }
 
-    private String composeSrcUrl(String kojiDownloadUrl, Build build, String suffix) {
-        if (kojiDownloadUrl==null || build == null || suffix == null) {
-            return "http://unknonw.or/not/found.sorry";
-        }
-        StringBuilder sb = new StringBuilder(255);
-        sb.append(kojiDownloadUrl);
-        if (kojiDownloadUrl.charAt(kojiDownloadUrl.length() - 1) != '/') {
-            sb.append('/');
-        }
-        sb.append(build.getName()).append('/');
-        sb.append(build.getVersion()).append('/');
-        sb.append(build.getRelease()).append('/');
-        sb.append("src/");
-        sb.append(build.getName()).append('-')
-                .append(build.getVersion()).append('-')
-                .append(build.getRelease()).append(".src.").append(suffix);
-        return sb.toString();
+    public void setClientSettings(XmlRpcClientPool.Settings clientSettings) {
+        this.clientSettings = clientSettings;
     }
 
-    @Override
-    public void checkRoles(RoleChecker checker) throws SecurityException {
-        // TODO maybe implement?
+    /**
+     * @param rootDir directory of the node to keep the cache in, null to
+     * download without the cache
+     * @param maxSize max size of the cache, in bytes, 0 to download without
+     * the cache
+     */
+    public void setArtifactCache(String rootDir, long maxSize) {
+        this.artifactCacheDir = rootDir;
+        this.artifactCacheSize = maxSize;
     }
 
-    public void setListener(TaskListener listener) {
-        this.currentListener = listener;
+    /**
+     * Used only if there is no build from polling, so it is listed here.
+     *
+     * @param rootDir directory of the node to keep the result cache in, null
+     * to list the builds without the cache
+     * @param maxSize max size of the cache, in megabytes, 0 to list the builds
+     * without the cache
+     */
+    public void setResultCache(String rootDir, int maxSize) {
+        this.resultCacheDir = rootDir;
+        this.resultCacheSize = maxSize;
     }
 
-    private boolean canLog() {
-        return (verbose && currentListener != null && currentListener.getLogger() != null);
+    /**
+     * @param connections max number of connections downloading single file
+     * @param segmentSize size of segment of file downloaded by more
+     * connections, in bytes
+     */
+    public void setSegmentedDownload(int connections, long segmentSize) {
+        this.downloadConnections = connections;
+        this.segmentSize = segmentSize;
     }
 
-    private String host() {
-        try {
-            String h = InetAddress.getLocalHost().getHostName();
-            if (h == null) {
-                return "null";
-            } else {
-                return h;
-            }
-        } catch (Exception ex) {
-            return ex.toString();
-        }
+    /**
+     * @param downloadThreads max number of files downloaded at once
+     */
+    public void setDownloadThreads(int downloadThreads) {
+        this.downloadThreads = downloadThreads;
     }
 
-    void print(String s) {
-        try {
-            currentListener.getLogger().println(s);
-        } catch (Exception ex) {
-            LOG.error("During printing of log to TaskListener", ex);
-        }
+    public void setListener(TaskListener listener) {
+        this.logger = new TaskListenerLogger(KojiBuildDownloader.class, listener);
     }
 
     @Override
     public void log(String s) {
-        LOG.info(s);
-        if (canLog()) {
-            print("[KojiSCM][" + host() + "] " + s);
-        }
+        logger.log(s);
     }
 
     @Override
     public void log(String s, Object o) {
-        LOG.info(s, o);
-        if (canLog()) {
-            print("[KojiSCM][" + host() + "] " + s + ": " + o.toString());
-        }
+        logger.log(s, o);
     }
 
     @Override
     public void log(String s, Object... o) {
-        LOG.info(s, o);
-        if (canLog()) {
-            print("[KojiSCM][" + host() + "] " + s);
-            for (Object object : o) {
-                print("[KojiSCM]   " + object.toString());
-            }
-        }
-    }
-
-    private boolean isUrlReachable(String urlString) {
-        try {
-            return isUrlReachableImpl(urlString, MAX_REDIRECTIONS);
-        } catch (Exception e) {
-            LOG.info(e.toString());
-            return false;
-        }
-    }
-
-    private boolean isUrlReachableImpl(String urlString, int redirectionsRemaining) throws MalformedURLException, IOException {
-        URL u = new URL(urlString);
-        HttpURLConnection huc = (HttpURLConnection) u.openConnection();
-        try {
-            huc.setRequestMethod("GET");  //OR  huc.setRequestMethod ("HEAD");
-            huc.connect();
-            int code = huc.getResponseCode();
-            // http 301=Moved Permanently; 302=Found
-            // koji.fedoraproject.org might return both
-            if ((code == 301 || code == 302) && redirectionsRemaining > 0) {
-                return isUrlReachableImpl(huc.getHeaderField("Location"), redirectionsRemaining - 1);
-            }
-            return code == 200;
-        } finally {
-            huc.disconnect();
-        }
+        logger.log(s, o);
     }
 }
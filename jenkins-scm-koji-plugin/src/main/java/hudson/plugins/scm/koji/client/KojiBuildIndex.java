@@ -0,0 +1,261 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.model.Build;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index of already seen koji builds of one package on one hub.
+ * <p>
+ * Package id and nvr of completed builds do not change, so once they are
+ * known, there is no need to ask koji for them again. Tags of a build can be
+ * added or removed at any time though, so they are trusted only for
+ * {@link #TAG_TTL} after they were fetched, then they are fetched again.
+ * Index is kept in memory and, if directory is provided, also appended to
+ * file (one file per hub and package), so it survives restarts. At most
+ * {@link #MAX_INDEXES} least recently used indexes are kept in memory, others
+ * are read from their files again when needed.
+ * <p>
+ * File format is line based, tab separated, later build line wins:
+ * <pre>
+ * package  id
+ * build    id  nvr  name  version  release  completion_time  fetched_millis  tag1,tag2,...
+ * </pre>
+ * Build lines without fetched_millis, written by older versions, are read as
+ * fetched long ago, so their tags are fetched again.
+ */
+public class KojiBuildIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KojiBuildIndex.class);
+
+    static final String INDEX_DIR = "kojiIndex";
+    static final long TAG_TTL = TimeUnit.MINUTES.toMillis(10);
+    static final int MAX_INDEXES = 256;
+
+    private static final String PACKAGE = "package";
+    private static final String BUILD = "build";
+    private static final String SEPARATOR = "\t";
+    private static final String TAG_SEPARATOR = ",";
+
+    // least recently used first
+    private static final Map<String, KojiBuildIndex> INDEXES = new LinkedHashMap<String, KojiBuildIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, KojiBuildIndex> eldest) {
+            return size() > MAX_INDEXES;
+        }
+    };
+
+    private final File file;
+    private final Map<Integer, Build> builds = new HashMap<>();
+    private final Map<Integer, Long> tagsFetched = new HashMap<>();
+    private Integer packageId;
+    private int buildLines;
+    private long tagTtl = TAG_TTL;
+
+    private KojiBuildIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param dir directory to persist the index in, if null, index is kept in
+     * memory only
+     * @param topUrl xml-rpc url of the hub
+     * @param packageName name of the package
+     * @return shared index instance for given hub and package
+     */
+    public static KojiBuildIndex get(File dir, String topUrl, String packageName) {
+        final String name = toFileName(topUrl, packageName);
+        final File file = dir == null ? null : new File(new File(dir, INDEX_DIR), name);
+        final String key = file == null ? name : file.getAbsolutePath();
+        synchronized (INDEXES) {
+            return INDEXES.computeIfAbsent(key, k -> read(file));
+        }
+    }
+
+    static KojiBuildIndex read(File file) {
+        final KojiBuildIndex index = new KojiBuildIndex(file);
+        index.load();
+        return index;
+    }
+
+    static String toFileName(String topUrl, String packageName) {
+        return (topUrl + "_" + packageName).replaceAll("[^a-zA-Z0-9._-]", "_");
+    }
+
+    public synchronized Integer getPackageId() {
+        return packageId;
+    }
+
+    public synchronized void setPackageId(Integer packageId) {
+        if (packageId == null || packageId.equals(this.packageId)) {
+            return;
+        }
+        this.packageId = packageId;
+        append(PACKAGE + SEPARATOR + packageId);
+    }
+
+    /**
+     * @param buildId id of koji build
+     * @return tags of build, or null if build was not indexed yet or its tags
+     * are older than {@link #TAG_TTL}
+     */
+    public synchronized Set<String> getTags(Integer buildId) {
+        final Build build = builds.get(buildId);
+        if (build == null || System.currentTimeMillis() - tagsFetched.get(buildId) >= tagTtl) {
+            return null;
+        }
+        return build.getTags();
+    }
+
+    /**
+     * Adds the build, or refreshes tags of already indexed one.
+     */
+    public synchronized void add(Build build, Set<String> tags) {
+        if (build.getId() == null) {
+            return;
+        }
+        final Build indexed = toIndexed(build, tags);
+        final long fetched = System.currentTimeMillis();
+        builds.put(indexed.getId(), indexed);
+        tagsFetched.put(indexed.getId(), fetched);
+        append(toLine(indexed, fetched));
+        buildLines++;
+    }
+
+    public synchronized int size() {
+        return builds.size();
+    }
+
+    synchronized void setTagTtl(long tagTtl) {
+        this.tagTtl = tagTtl;
+    }
+
+    private static Build toIndexed(Build build, Set<String> tags) {
+        return new Build(
+                build.getId(),
+                build.getName(),
+                build.getVersion(),
+                build.getRelease(),
+                build.getNvr(),
+                build.getCompletionTime(),
+                null,
+                tags,
+                null,
+                null
+        );
+    }
+
+    private static String toLine(Build build, long fetched) {
+        return BUILD + SEPARATOR
+                + build.getId() + SEPARATOR
+                + build.getNvr() + SEPARATOR
+                + build.getName() + SEPARATOR
+                + build.getVersion() + SEPARATOR
+                + build.getRelease() + SEPARATOR
+                + build.getCompletionTime() + SEPARATOR
+                + fetched + SEPARATOR
+                + String.join(TAG_SEPARATOR, build.getTags());
+    }
+
+    private void load() {
+        if (file == null || !file.exists()) {
+            return;
+        }
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            LOG.warn("Unable to read build index " + file + ", starting with empty one", ex);
+            return;
+        }
+        for (String line : lines) {
+            // -1 to keep trailing empty tag list
+            final String[] fields = line.split(SEPARATOR, -1);
+            try {
+                if (fields.length == 2 && fields[0].equals(PACKAGE)) {
+                    packageId = Integer.valueOf(fields[1]);
+                } else if ((fields.length == 9 || fields.length == 8) && fields[0].equals(BUILD)) {
+                    final String tagField = fields[fields.length - 1];
+                    final Set<String> tags = tagField.isEmpty()
+                            ? Collections.emptySet()
+                            : new HashSet<>(Arrays.asList(tagField.split(TAG_SEPARATOR)));
+                    final Build build = new Build(
+                            Integer.valueOf(fields[1]),
+                            fields[3],
+                            fields[4],
+                            fields[5],
+                            fields[2],
+                            fields[6],
+                            null,
+                            tags,
+                            null,
+                            null
+                    );
+                    builds.put(build.getId(), build);
+                    tagsFetched.put(build.getId(), fields.length == 9 ? Long.valueOf(fields[7]) : 0L);
+                    buildLines++;
+                } else {
+                    LOG.warn("Skipping malformed line in build index " + file + ": " + line);
+                }
+            } catch (NumberFormatException ex) {
+                LOG.warn("Skipping malformed line in build index " + file + ": " + line);
+            }
+        }
+        LOG.info("Loaded build index " + file + " with " + builds.size() + " builds");
+        // refreshed tags are appended, so the file is rewritten once it is mostly outdated lines
+        if (buildLines > 2 * builds.size()) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        final List<String> lines = new ArrayList<>(builds.size() + 1);
+        if (packageId != null) {
+            lines.add(PACKAGE + SEPARATOR + packageId);
+        }
+        for (Build build : builds.values()) {
+            lines.add(toLine(build, tagsFetched.get(build.getId())));
+        }
+        final File tmp = new File(file.getPath() + ".tmp");
+        try {
+            Files.write(tmp.toPath(), lines, StandardCharsets.UTF_8);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            buildLines = builds.size();
+        } catch (IOException ex) {
+            LOG.warn("Unable to compact build index " + file, ex);
+        }
+    }
+
+    private void append(String line) {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.getParentFile().mkdirs();
+            Files.write(
+                    file.toPath(),
+                    Collections.singletonList(line),
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+        } catch (IOException ex) {
+            LOG.warn("Unable to write build index " + file, ex);
+        }
+    }
+}
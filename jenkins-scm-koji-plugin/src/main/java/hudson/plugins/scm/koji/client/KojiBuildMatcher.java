@@ -6,10 +6,13 @@ import hudson.plugins.scm.koji.RealKojiXmlRpcApi;
 import hudson.plugins.scm.koji.model.Build;
 import hudson.plugins.scm.koji.model.BuildProvider;
 import hudson.plugins.scm.koji.model.RPM;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetChangeToken;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetPackageId;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListArchives;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListArtefacts;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListBuilds;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListRPMs;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListTagged;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListTags;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.ArchiveList;
@@ -20,64 +23,219 @@ import org.fakekoji.xmlrpc.server.xmlrpcresponse.TagSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 class KojiBuildMatcher extends BuildMatcher {
 
     private static final Logger LOG = LoggerFactory.getLogger(KojiBuildMatcher.class);
 
+    /**
+     * Tags are fetched in pages of at least this many builds.
+     */
+    private static final int MIN_TAG_PAGE_SIZE = 10;
+
+    /**
+     * Tag pattern which matches only itself. Bare dot is regex wildcard, so it
+     * matches only when escaped, as in tag predicate. Other regex characters,
+     * plus included, leave the tag to the tag predicate.
+     */
+    private static final Pattern LITERAL_TAG = Pattern.compile("([\\w-]|\\\\\\.)+");
+
+    private final String tag;
     private final GlobPredicate tagPredicate;
+    private final List<String> literalTags;
     private final String pkgName;
     private final List<String> archs;
+    private final File indexDir;
+    private final Predicate<RPM> rpmPredicate;
+    private KojiResultCache resultCache;
+    private KojiResultCache.Stats resultCacheStats;
 
     KojiBuildMatcher(
             Iterable<KojiBuildProvider> kojiBuildProviders,
             Predicate<String> notProcessedNvrPredicate,
             int maxBuilds,
-            RealKojiXmlRpcApi kojiXmlRpcApi
+            RealKojiXmlRpcApi kojiXmlRpcApi,
+            File indexDir
     ) {
         super(kojiBuildProviders, notProcessedNvrPredicate, maxBuilds);
+        this.tag = kojiXmlRpcApi.getTag();
         this.tagPredicate = new GlobPredicate(kojiXmlRpcApi.getTag());
+        this.literalTags = kojiXmlRpcApi.isTagFirst() ? composeLiteralTags(kojiXmlRpcApi.getTag()) : null;
         this.pkgName = kojiXmlRpcApi.getPackageName();
         this.archs = composeArchList(kojiXmlRpcApi.getArch());
+        this.indexDir = indexDir;
+        this.rpmPredicate = KojiBuildDownloader.composeRpmPredicate(kojiXmlRpcApi);
     }
 
     @Override
     List<Build> getBuilds(BuildProvider buildProvider) {
+        if (literalTags != null) {
+            return getTaggedBuilds(buildProvider);
+        }
+        final String url = buildProvider.getTopUrl();
+        final KojiBuildIndex index = KojiBuildIndex.get(indexDir, url, pkgName);
+        final List<Build> packageBuilds = new ArrayList<>(listPackageBuilds(url, pkgName, index));
+        // newest first, so older builds are not needed once there is enough matching ones
+        packageBuilds.sort(comparator());
+        final int maxBuilds = getMaxBuilds();
+        final int pageSize = Math.max(maxBuilds, MIN_TAG_PAGE_SIZE);
         final List<Build> builds = new ArrayList<>();
-        for (final Build build : listPackageBuilds(buildProvider.getTopUrl(), pkgName)) {
-            final Set<String> tags = retrieveTags(buildProvider.getTopUrl(), build);
-            if (matchesTagPredicate(tags)) {
-                builds.add(
-                        new Build(
-                                build.getId(),
-                                build.getName(),
-                                build.getVersion(),
-                                build.getRelease(),
-                                build.getNvr(),
-                                build.getCompletionTime(),
-                                null,
-                                tags,
-                                buildProvider,
-                                null
-                        )
-                );
+        int fetched = 0;
+        int pageStart = 0;
+        TagPage page = null;
+        while (pageStart < packageBuilds.size() && builds.size() < maxBuilds) {
+            final int pageEnd = Math.min(pageStart + pageSize, packageBuilds.size());
+            if (page == null) {
+                page = new TagPage(url, packageBuilds.subList(pageStart, pageEnd), index);
+            }
+            // long history is being walked, so next page is fetched while waiting for this one
+            final TagPage nextPage = pageStart > 0 && pageEnd < packageBuilds.size()
+                    ? new TagPage(url, packageBuilds.subList(pageEnd, Math.min(pageEnd + pageSize, packageBuilds.size())), index)
+                    : null;
+            fetched += page.addTo(index);
+            for (final Build build : packageBuilds.subList(pageStart, pageEnd)) {
+                final Set<String> tags = page.getTags(build.getId());
+                if (matchesTagPredicate(tags)) {
+                    builds.add(
+                            new Build(
+                                    build.getId(),
+                                    build.getName(),
+                                    build.getVersion(),
+                                    build.getRelease(),
+                                    build.getNvr(),
+                                    build.getCompletionTime(),
+                                    null,
+                                    tags,
+                                    buildProvider,
+                                    null
+                            )
+                    );
+                    if (builds.size() == maxBuilds) {
+                        break;
+                    }
+                }
+            }
+            page = nextPage;
+            pageStart = pageEnd;
+        }
+        if (page != null) {
+            page.cancel();
+        }
+        LOG.info("Tags of " + fetched + " builds of " + pkgName + " fetched from " + url + ", "
+                + Math.min(pageStart, packageBuilds.size()) + " of " + packageBuilds.size() + " builds walked, " + index.size() + " builds indexed");
+        return builds;
+    }
+
+    @Override
+    String getQueryKey(BuildProvider buildProvider) {
+        // tag first query returns only the matching tags of builds
+        // only newest builds are returned, so the result depends on their count and order
+        return "koji " + buildProvider.getTopUrl() + " " + pkgName + " " + tag
+                + (literalTags != null ? " tagFirst" : " " + getMaxBuilds() + " " + getOrderBy());
+    }
+
+    @Override
+    CompletableFuture<String> getChangeToken(BuildProvider buildProvider) {
+        return fetchChangeToken(buildProvider.getTopUrl(), GetChangeToken.ofPackage(pkgName));
+    }
+
+    /**
+     * Asks for builds of the package in each tag, instead of asking for tags
+     * of each build of the package. Builds have only the matching tags set.
+     */
+    private List<Build> getTaggedBuilds(BuildProvider buildProvider) {
+        final List<XmlRpcRequestParams> params = new ArrayList<>(literalTags.size());
+        for (String tag : literalTags) {
+            params.add(new ListTagged(tag, pkgName));
+        }
+        final List<Object> results = await(multicallAsync(buildProvider.getTopUrl(), params));
+        final Map<Integer, Build> buildsById = new LinkedHashMap<>();
+        final Map<Integer, Set<String>> tagsById = new HashMap<>();
+        for (int i = 0; i < literalTags.size(); i++) {
+            for (Build build : BuildList.create(results.get(i)).getValue()) {
+                buildsById.putIfAbsent(build.getId(), build);
+                tagsById.computeIfAbsent(build.getId(), id -> new HashSet<>()).add(literalTags.get(i));
             }
         }
+        LOG.info("Tagged builds of " + pkgName + " fetched from " + buildProvider.getTopUrl() + " using " + literalTags.size() + " tags: " + buildsById.size());
+        final List<Build> builds = new ArrayList<>(buildsById.size());
+        for (Build build : buildsById.values()) {
+            builds.add(
+                    new Build(
+                            build.getId(),
+                            build.getName(),
+                            build.getVersion(),
+                            build.getRelease(),
+                            build.getNvr(),
+                            build.getCompletionTime(),
+                            null,
+                            tagsById.get(build.getId()),
+                            buildProvider,
+                            null
+                    )
+            );
+        }
         return builds;
     }
 
+    /**
+     * @param resultCache cache of rpms and archives of builds, null to always
+     * fetch them
+     * @param resultCacheStats where to count hits and misses of the cache
+     */
+    void setResultCache(KojiResultCache resultCache, KojiResultCache.Stats resultCacheStats) {
+        this.resultCache = resultCache;
+        this.resultCacheStats = resultCacheStats;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
     Build getBuild(Build build) {
         LOG.info("Oldest not processed build: " + build.getNvr());
+        final String url = build.getProvider().getTopUrl();
+        final ListRPMs listRPMs = new ListRPMs(build.getId(), archs);
+        final ListArchives listArchives = new ListArchives(build.getId(), null);
+        // build is complete, so its rpms and archives never change
+        List<RPM> rpmList = (List<RPM>) getCached(url, listRPMs);
+        List<String> archiveList = (List<String>) getCached(url, listArchives);
+        final List<XmlRpcRequestParams> missing = new ArrayList<>(2);
+        if (rpmList == null) {
+            missing.add(listRPMs);
+        }
+        if (archiveList == null) {
+            missing.add(listArchives);
+        }
+        if (!missing.isEmpty()) {
+            // rpms and archives are fetched in one request
+            final List<Object> results = await(multicallAsync(url, missing));
+            int result = 0;
+            if (rpmList == null) {
+                rpmList = new ArrayList<>(retrieveRPMs(RPMList.create(results.get(result++))));
+                putCached(url, listRPMs, rpmList);
+            }
+            if (archiveList == null) {
+                final List<String> archives = ArchiveList.create(results.get(result)).getValue();
+                archiveList = archives == null ? new ArrayList<>() : new ArrayList<>(archives);
+                putCached(url, listArchives, archiveList);
+            }
+        }
         final List<RPM> rpms = new ArrayList<>();
-        rpms.addAll(retrieveRPMs(build));
-        rpms.addAll(retrieveArchives(build));
-        return new Build(
+        rpms.addAll(rpmList);
+        rpms.addAll(retrieveArchives(build, archiveList));
+        final Build result = new Build(
                 build.getId(),
                 build.getName(),
                 build.getVersion(),
@@ -89,21 +247,51 @@ class KojiBuildMatcher extends BuildMatcher {
                 build.getProvider(),
                 null
         );
+        // persisted in build.xml, so checkout downloads without probing
+        new DownloadUrlResolver(build.getProvider().getDownloadUrl()).resolve(result, rpmPredicate);
+        return result;
+    }
+
+    private Object getCached(String url, ListArtefacts params) {
+        if (resultCache == null) {
+            return null;
+        }
+        final Object result = resultCache.get(toCacheKey(url, params));
+        if (result == null) {
+            resultCacheStats.miss();
+        } else {
+            resultCacheStats.hit();
+        }
+        return result;
+    }
+
+    private void putCached(String url, ListArtefacts params, List<?> result) {
+        if (resultCache != null) {
+            resultCache.put(toCacheKey(url, params), result);
+        }
+    }
+
+    private static String toCacheKey(String url, ListArtefacts params) {
+        return url + " " + params.getMethodName() + " " + params.getBuildId() + " " + params.getArchs();
     }
 
     private Integer getPackageId(String url, String packageName) {
         final XmlRpcRequestParams params = new GetPackageId(packageName);
-        final PackageId response = PackageId.create(execute(url, params));
+        final PackageId response = PackageId.create(await(executeAsync(url, params)));
         return response.getValue();
     }
 
-    private List<Build> listPackageBuilds(String url, String packageName) {
-        Integer packageId = getPackageId(url, packageName);
+    private List<Build> listPackageBuilds(String url, String packageName, KojiBuildIndex index) {
+        Integer packageId = index.getPackageId();
         if (packageId == null) {
-            return Collections.emptyList();
+            packageId = getPackageId(url, packageName);
+            if (packageId == null) {
+                return Collections.emptyList();
+            }
+            index.setPackageId(packageId);
         }
         final XmlRpcRequestParams params = new ListBuilds(packageId);
-        final BuildList response = BuildList.create(execute(url, params));
+        final BuildList response = BuildList.create(await(executeAsync(url, params)));
         List<Build> builds = response.getValue();
         if (builds == null || builds.isEmpty()) {
             return Collections.emptyList();
@@ -111,10 +299,65 @@ class KojiBuildMatcher extends BuildMatcher {
         return builds;
     }
 
-    private Set<String> retrieveTags(String url, Build build) {
-        final XmlRpcRequestParams params = new ListTags(build.getId());
-        final TagSet response = TagSet.create(execute(url, params));
-        return response.getValue();
+    /**
+     * Tags of builds of one page. Those which are not in index yet, or are
+     * outdated there, are fetched in background, so next page can be fetched
+     * while this one is processed.
+     */
+    private class TagPage {
+
+        private final Map<Integer, Set<String>> tagsById = new HashMap<>();
+        private final List<Build> notIndexed = new ArrayList<>();
+        private final CompletableFuture<List<Set<String>>> tags;
+
+        TagPage(String url, List<Build> builds, KojiBuildIndex index) {
+            for (final Build build : builds) {
+                final Set<String> indexed = index.getTags(build.getId());
+                if (indexed == null) {
+                    notIndexed.add(build);
+                } else {
+                    tagsById.put(build.getId(), indexed);
+                }
+            }
+            tags = retrieveTags(url, notIndexed);
+        }
+
+        /**
+         * @return number of builds added to index
+         */
+        int addTo(KojiBuildIndex index) {
+            final List<Set<String>> fetchedTags = await(tags);
+            for (int i = 0; i < notIndexed.size(); i++) {
+                index.add(notIndexed.get(i), fetchedTags.get(i));
+                tagsById.put(notIndexed.get(i).getId(), fetchedTags.get(i));
+            }
+            return notIndexed.size();
+        }
+
+        Set<String> getTags(Integer buildId) {
+            return tagsById.get(buildId);
+        }
+
+        void cancel() {
+            tags.cancel(true);
+        }
+    }
+
+    private CompletableFuture<List<Set<String>>> retrieveTags(String url, List<Build> builds) {
+        if (builds.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        final List<XmlRpcRequestParams> params = new ArrayList<>(builds.size());
+        for (Build build : builds) {
+            params.add(new ListTags(build.getId()));
+        }
+        return multicallAsync(url, params).thenApply(results -> {
+            final List<Set<String>> tags = new ArrayList<>(builds.size());
+            for (Object result : results) {
+                tags.add(TagSet.create(result).getValue());
+            }
+            return tags;
+        });
     }
 
     private boolean matchesTagPredicate(Set<String> tags) {
@@ -123,9 +366,7 @@ class KojiBuildMatcher extends BuildMatcher {
                 .anyMatch(tagPredicate);
     }
 
-    private List<RPM> retrieveRPMs(Build build) {
-        final XmlRpcRequestParams params = new ListRPMs(build.getId(), archs);
-        final RPMList response = RPMList.create(execute(build.getProvider().getTopUrl(), params));
+    private List<RPM> retrieveRPMs(RPMList response) {
         final List<RPM> rpms = response.getValue();
         return rpms == null ? Collections.emptyList() : rpms;
     }
@@ -138,13 +379,10 @@ class KojiBuildMatcher extends BuildMatcher {
      * later used to compose filepath. Unlike with RPMs, filename is received
      * here so we can store it.
      */
-    private List<RPM> retrieveArchives(Build build) {
+    private List<RPM> retrieveArchives(Build build, List<String> archivefilenames) {
         final List<String> supportedArches = new ArrayList<>(1);
         supportedArches.add("win");
-        final XmlRpcRequestParams params = new ListArchives(build.getId(), null);
-        final ArchiveList response = ArchiveList.create(execute(build.getProvider().getTopUrl(), params));
-        final List<String> archivefilenames = response.getValue();
-        if (archivefilenames == null || archivefilenames.isEmpty()) {
+        if (archivefilenames.isEmpty()) {
             return Collections.emptyList();
         }
         final List<RPM> archives = new ArrayList<>(archivefilenames.size());
@@ -165,6 +403,24 @@ class KojiBuildMatcher extends BuildMatcher {
         return archives;
     }
 
+    /**
+     * @return tags from the expression, or null if any of them is not literal
+     * or there is none, in which case the tags must be matched one by one
+     */
+    static List<String> composeLiteralTags(String tagExpression) {
+        if (tagExpression == null || tagExpression.trim().isEmpty()) {
+            return null;
+        }
+        final List<String> tags = new ArrayList<>();
+        for (String tag : tagExpression.trim().split("\\s+")) {
+            if (!LITERAL_TAG.matcher(tag).matches()) {
+                return null;
+            }
+            tags.add(tag.replace("\\.", "."));
+        }
+        return tags;
+    }
+
     private static List<String> composeArchList(String arch) {
         if (arch == null || arch.trim().isEmpty()) {
             return Collections.emptyList();
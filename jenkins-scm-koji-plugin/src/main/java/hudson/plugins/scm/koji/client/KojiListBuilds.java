@@ -1,12 +1,17 @@
 package hudson.plugins.scm.koji.client;
 
 import hudson.FilePath;
+import hudson.model.TaskListener;
 import hudson.plugins.scm.koji.FakeKojiXmlRpcApi;
 import hudson.plugins.scm.koji.KojiBuildProvider;
 import hudson.plugins.scm.koji.KojiXmlRpcApi;
+import hudson.plugins.scm.koji.OrderBy;
 import hudson.plugins.scm.koji.RealKojiXmlRpcApi;
+import hudson.plugins.scm.koji.TaskListenerLogger;
+import hudson.plugins.scm.koji.client.tools.XmlRpcClientPool;
 import hudson.plugins.scm.koji.model.Build;
 import hudson.remoting.VirtualChannel;
+import jenkins.security.Roles;
 import org.jenkinsci.remoting.RoleChecker;
 
 import java.io.File;
@@ -15,10 +20,30 @@ import java.util.function.Predicate;
 
 public class KojiListBuilds implements FilePath.FileCallable<Optional<Build>> {
 
+    /**
+     * Default time to wait for single build provider, in seconds.
+     */
+    public static final int DEFAULT_PROVIDER_TIMEOUT = 5 * 60;
+
+    /**
+     * Default time to share builds returned by provider with other jobs, in
+     * seconds.
+     */
+    public static final int DEFAULT_QUERY_CACHE_TTL = 60;
+
     private final Iterable<KojiBuildProvider> kojiBuildProviders;
     private final KojiXmlRpcApi kojiXmlRpcApi;
     private final Predicate<String> notProcessedNvrPredicate;
     private final int maxPreviousBuilds;
+    private File indexDir;
+    private File resultCacheDir;
+    private int resultCacheSize = KojiResultCache.DEFAULT_MAX_SIZE;
+    private int providerTimeout = DEFAULT_PROVIDER_TIMEOUT;
+    private int queryCacheTtl;
+    private OrderBy orderBy = OrderBy.DATE;
+    private String changeToken;
+    private XmlRpcClientPool.Settings clientSettings;
+    private TaskListenerLogger logger = new TaskListenerLogger(KojiListBuilds.class, null);
 
     public KojiListBuilds(
             Iterable<KojiBuildProvider> kojiBuildProviders,
@@ -32,17 +57,92 @@ public class KojiListBuilds implements FilePath.FileCallable<Optional<Build>> {
         this.maxPreviousBuilds = maxPreviousBuilds;
     }
 
+    /**
+     * Directory to keep the persistent build index in. Must be reachable from
+     * the node this callable is invoked on. If not set, the index is kept only
+     * in memory.
+     */
+    public void setIndexDir(File indexDir) {
+        this.indexDir = indexDir;
+    }
+
+    /**
+     * Directory to keep results of calls, which never change, in. Must be
+     * reachable from the node this callable is invoked on. Hits and misses
+     * are logged, and if index dir is set, they are also counted for its job.
+     * If not set, the results are always fetched.
+     *
+     * @param resultCacheDir directory to create the cache in
+     * @param resultCacheSize max size of the cache, in megabytes
+     */
+    public void setResultCache(File resultCacheDir, int resultCacheSize) {
+        this.resultCacheDir = resultCacheDir;
+        this.resultCacheSize = resultCacheSize;
+    }
+
     @Override
     public Optional<Build> invoke(File workspace, VirtualChannel channel) {
+        final KojiResultCache.Stats resultCacheStats = new KojiResultCache.Stats();
+        final BuildMatcher buildMatcher = createBuildMatcher(resultCacheStats);
+        try {
+            return buildMatcher.getBuild();
+        } finally {
+            logger.log("XML-RPC traffic", buildMatcher.getTraffic());
+            if (resultCacheDir != null) {
+                logger.log("Result cache", resultCacheStats);
+                if (indexDir != null) {
+                    KojiResultCache.getStats(indexDir).add(resultCacheStats);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return token of current state of all providers, or null if some of them
+     * can not tell
+     * @see BuildMatcher#getChangeToken()
+     */
+    public String getChangeToken() {
+        return createBuildMatcher(new KojiResultCache.Stats()).getChangeToken();
+    }
+
+    /**
+     * @return callable returning {@link #getChangeToken()} of the node it is
+     * invoked on, which must be the node the builds are listed on
+     */
+    public FilePath.FileCallable<String> getChangeTokenCallable() {
+        return new ChangeTokenCallable(this);
+    }
+
+    /**
+     * @param changeToken token returned by {@link #getChangeToken()} before
+     * the builds are listed, or null if it was not read
+     * @see BuildMatcher#setChangeToken(String)
+     */
+    public void setChangeToken(String changeToken) {
+        this.changeToken = changeToken;
+    }
+
+    private BuildMatcher createBuildMatcher(KojiResultCache.Stats resultCacheStats) {
+        // this may run on agent, which has its own clients
+        XmlRpcClientPool.configure(clientSettings);
         final BuildMatcher buildMatcher;
 
         if (kojiXmlRpcApi instanceof RealKojiXmlRpcApi) {
-            buildMatcher = new KojiBuildMatcher(
+            final KojiBuildMatcher kojiBuildMatcher = new KojiBuildMatcher(
                     kojiBuildProviders,
                     notProcessedNvrPredicate,
                     maxPreviousBuilds,
-                    (RealKojiXmlRpcApi) kojiXmlRpcApi
+                    (RealKojiXmlRpcApi) kojiXmlRpcApi,
+                    indexDir
             );
+            if (resultCacheDir != null) {
+                kojiBuildMatcher.setResultCache(
+                        KojiResultCache.get(resultCacheDir, resultCacheSize * 1024L * 1024L),
+                        resultCacheStats
+                );
+            }
+            buildMatcher = kojiBuildMatcher;
         } else if (kojiXmlRpcApi instanceof FakeKojiXmlRpcApi) {
 
             buildMatcher = new FakeKojiBuildMatcher(
@@ -55,7 +155,44 @@ public class KojiListBuilds implements FilePath.FileCallable<Optional<Build>> {
             throw new RuntimeException("Unknown XML-RPC API: " + kojiXmlRpcApi.getDescriptor().getDisplayName());
         }
 
-        return buildMatcher.getBuild();
+        buildMatcher.setProviderTimeout(providerTimeout * 1000L);
+        buildMatcher.setQueryCacheTtl(queryCacheTtl * 1000L);
+        buildMatcher.setOrderBy(orderBy);
+        buildMatcher.setChangeToken(changeToken);
+        buildMatcher.setLogger(logger);
+        return buildMatcher;
+    }
+
+    /**
+     * @param providerTimeout time to wait for single build provider, in
+     * seconds
+     */
+    public void setProviderTimeout(int providerTimeout) {
+        this.providerTimeout = providerTimeout;
+    }
+
+    /**
+     * @param queryCacheTtl time to share builds returned by provider with
+     * other jobs polling the same provider, in seconds, 0 to not share them
+     */
+    public void setQueryCacheTtl(int queryCacheTtl) {
+        this.queryCacheTtl = queryCacheTtl;
+    }
+
+    /**
+     * @param clientSettings timeouts and pool size of XML-RPC clients, if
+     * null, current ones are kept
+     */
+    public void setClientSettings(XmlRpcClientPool.Settings clientSettings) {
+        this.clientSettings = clientSettings;
+    }
+
+    public void setOrderBy(OrderBy orderBy) {
+        this.orderBy = orderBy;
+    }
+
+    public void setListener(TaskListener listener) {
+        this.logger = new TaskListenerLogger(KojiListBuilds.class, listener);
     }
 
     @Override
@@ -63,4 +200,23 @@ public class KojiListBuilds implements FilePath.FileCallable<Optional<Build>> {
         // TODO maybe implement?
     }
 
+    private static class ChangeTokenCallable implements FilePath.FileCallable<String> {
+
+        private final KojiListBuilds worker;
+
+        ChangeTokenCallable(KojiListBuilds worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public String invoke(File workspace, VirtualChannel channel) {
+            return worker.getChangeToken();
+        }
+
+        @Override
+        public void checkRoles(RoleChecker checker) throws SecurityException {
+            // sent from master to the node of the workspace only
+            checker.check(this, Roles.SLAVE);
+        }
+    }
 }
@@ -0,0 +1,314 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.model.RPM;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElements;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of XML-RPC calls, which do not change once the build is complete
+ * (its rpms and archives), kept on disk, so they are not fetched again.
+ * <p>
+ * Each entry is a file named by SHA-256 of its key (hub, method and its
+ * parameters). First line of the file is SHA-256 of the rest, which is the
+ * result as XML, written by JAXB as {@link hudson.plugins.scm.koji.BuildsSerializer} does, so reading
+ * an entry never instantiates other classes than rpms and strings. Entry,
+ * which does not match its checksum or can not be read, is dropped and counts
+ * as a miss.
+ * <p>
+ * Total size of entries is bounded, least recently used entries are evicted
+ * first. Use is tracked by modification time of entry files, so it survives
+ * restarts.
+ */
+public class KojiResultCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KojiResultCache.class);
+
+    static final String CACHE_DIR = "kojiResultCache";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Default max size of all entries, in megabytes.
+     */
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private static final Map<File, KojiResultCache> CACHES = new ConcurrentHashMap<>();
+    private static final Map<File, Stats> STATS = new ConcurrentHashMap<>();
+    private static SoftReference<JAXBContext> JAXB_CONTEXT_REFERENCE = new SoftReference<>(null);
+
+    private final File dir;
+    private long maxSize;
+    // entry name to its size, least recently used first, null until first use
+    private LinkedHashMap<String, Long> entries;
+    private long size;
+
+    KojiResultCache(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param rootDir directory to create the cache in
+     * @param maxSize max size of all entries, in bytes
+     * @return shared cache instance for given directory
+     */
+    public static KojiResultCache get(File rootDir, long maxSize) {
+        final File dir = new File(rootDir, CACHE_DIR).getAbsoluteFile();
+        final KojiResultCache cache = CACHES.computeIfAbsent(dir, d -> new KojiResultCache(d, maxSize));
+        cache.setMaxSize(maxSize);
+        return cache;
+    }
+
+    /**
+     * @param jobDir root directory of the job
+     * @return hits and misses of lookups made by polling of the job on master
+     * since start of the jvm, polls in workspace only log theirs
+     */
+    public static Stats getStats(File jobDir) {
+        return STATS.computeIfAbsent(jobDir.getAbsoluteFile(), d -> new Stats());
+    }
+
+    synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        if (entries != null) {
+            evict();
+        }
+    }
+
+    private static JAXBContext jaxbContext() throws JAXBException {
+        JAXBContext context = JAXB_CONTEXT_REFERENCE.get();
+        if (context == null) {
+            context = JAXBContext.newInstance(Entry.class);
+            JAXB_CONTEXT_REFERENCE = new SoftReference<>(context);
+        }
+        return context;
+    }
+
+    /**
+     * @return cached result, or null if there is none (or it is corrupted)
+     */
+    public synchronized List<?> get(String key) {
+        load();
+        final String name = toName(key);
+        if (entries.get(name) == null) {
+            return null;
+        }
+        final File file = new File(dir, name);
+        try {
+            final byte[] content = Files.readAllBytes(file.toPath());
+            final int newline = indexOf(content, (byte) '\n');
+            final byte[] payload = newline < 0 ? new byte[0] : Arrays.copyOfRange(content, newline + 1, content.length);
+            final String checksum = newline < 0 ? "" : new String(content, 0, newline, StandardCharsets.US_ASCII);
+            if (!checksum.equals(sha256(payload))) {
+                LOG.warn("Dropping corrupted entry " + file + " of result cache");
+                remove(name);
+                return null;
+            }
+            final Object entry = jaxbContext().createUnmarshaller().unmarshal(new ByteArrayInputStream(payload));
+            if (!(entry instanceof Entry)) {
+                throw new IOException("Expected result, got " + entry);
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return ((Entry) entry).getItems();
+        } catch (IOException | JAXBException ex) {
+            LOG.warn("Unable to read entry " + file + " of result cache", ex);
+            remove(name);
+            return null;
+        }
+    }
+
+    /**
+     * @param result list of rpms or strings
+     */
+    public synchronized void put(String key, List<?> result) {
+        load();
+        final String name = toName(key);
+        final byte[] payload;
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            jaxbContext().createMarshaller().marshal(new Entry(result), bytes);
+            payload = bytes.toByteArray();
+        } catch (JAXBException ex) {
+            throw new RuntimeException("Unable to serialize result of " + key, ex);
+        }
+        final byte[] checksum = (sha256(payload) + '\n').getBytes(StandardCharsets.US_ASCII);
+        final File file = new File(dir, name);
+        final File tmp = new File(dir, name + TMP_SUFFIX);
+        try {
+            dir.mkdirs();
+            final byte[] content = Arrays.copyOf(checksum, checksum.length + payload.length);
+            System.arraycopy(payload, 0, content, checksum.length, payload.length);
+            Files.write(tmp.toPath(), content);
+            // readers never see half written entry
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            final Long previous = entries.remove(name);
+            size -= previous == null ? 0 : previous;
+            entries.put(name, (long) content.length);
+            size += content.length;
+            evict();
+        } catch (IOException ex) {
+            LOG.warn("Unable to write entry " + file + " of result cache", ex);
+            tmp.delete();
+        }
+    }
+
+    synchronized long size() {
+        load();
+        return size;
+    }
+
+    private void load() {
+        if (entries != null) {
+            return;
+        }
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        size = 0;
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                // left over by crash
+                file.delete();
+                continue;
+            }
+            entries.put(file.getName(), file.length());
+            size += file.length();
+        }
+        evict();
+        LOG.info("Loaded result cache " + dir + " with " + entries.size() + " entries of " + size + " bytes");
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue();
+            new File(dir, eldest.getKey()).delete();
+        }
+    }
+
+    private void remove(String name) {
+        final Long removed = entries.remove(name);
+        size -= removed == null ? 0 : removed;
+        new File(dir, name).delete();
+    }
+
+    private static String toName(String key) {
+        return sha256(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte b) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Content of one entry, only rpms and strings can be stored.
+     */
+    @XmlRootElement(name = "result")
+    @XmlAccessorType(XmlAccessType.FIELD)
+    static class Entry {
+
+        @XmlElements({
+                @XmlElement(name = "rpm", type = RPM.class),
+                @XmlElement(name = "string", type = String.class)
+        })
+        private List<Object> items;
+
+        Entry() {
+        }
+
+        Entry(List<?> items) {
+            this.items = new ArrayList<>(items);
+        }
+
+        List<Object> getItems() {
+            return items == null ? new ArrayList<>() : items;
+        }
+    }
+
+    /**
+     * Hits and misses of lookups of one job.
+     */
+    public static class Stats {
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        void hit() {
+            hits.incrementAndGet();
+        }
+
+        void miss() {
+            misses.incrementAndGet();
+        }
+
+        /**
+         * Adds hits and misses counted elsewhere, e.g. by single poll.
+         */
+        public void add(Stats other) {
+            hits.addAndGet(other.getHits());
+            misses.addAndGet(other.getMisses());
+        }
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        @Override
+        public String toString() {
+            return getHits() + " hits, " + getMisses() + " misses";
+        }
+    }
+}
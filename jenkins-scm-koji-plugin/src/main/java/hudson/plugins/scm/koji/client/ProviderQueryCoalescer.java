@@ -0,0 +1,138 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.model.Build;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Shares results of identical provider queries between jobs.
+ * <p>
+ * Many jobs usually differ only in what they do with the builds, but ask the
+ * same hub for the same package and tags. Query, which is already running, is
+ * not sent again, the caller waits for the running one instead. Once finished,
+ * its builds are reused until ttl expires. Failed queries are not kept, so the
+ * next caller tries again.
+ * <p>
+ * Shared query runs in its own thread, which no caller can interrupt, and
+ * every caller (including the one, which started it) waits for it, so
+ * timeout or cancellation of one job does not fail the others.
+ * <p>
+ * Only the list of builds is shared. Each job still filters it by its own
+ * processed builds.
+ */
+class ProviderQueryCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProviderQueryCoalescer.class);
+
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+    /**
+     * Max number of shared queries running at once, others wait for a free
+     * thread.
+     */
+    private static final int MAX_QUERY_THREADS = 16;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final ThreadPoolExecutor QUERY_EXECUTOR = new ThreadPoolExecutor(
+            MAX_QUERY_THREADS,
+            MAX_QUERY_THREADS,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                final Thread thread = new Thread(runnable, "koji-shared-query-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    static {
+        QUERY_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private ProviderQueryCoalescer() {
+    }
+
+    /**
+     * @param key identity of the query, queries with same key must return same
+     * builds, if null, the query is always run
+     * @param ttl how long to reuse finished query, in milliseconds, if not
+     * positive, the query is always run
+     * @param query the query itself
+     * @return builds, either fresh, from running query or reused
+     */
+    static List<Build> get(String key, long ttl, Supplier<List<Build>> query) {
+        if (key == null || ttl <= 0) {
+            return query.get();
+        }
+        final long now = System.currentTimeMillis();
+        purgeExpired(now);
+        final Entry created = new Entry();
+        final Entry entry = ENTRIES.compute(key, (k, current) -> {
+            if (current == null || current.isExpired(now)) {
+                return created;
+            }
+            return current;
+        });
+        if (entry != created) {
+            LOG.info("Reusing builds of " + key + (entry.future.isDone() ? "" : ", waiting for running query"));
+        } else {
+            QUERY_EXECUTOR.execute(() -> run(key, ttl, entry, query));
+        }
+        return await(entry);
+    }
+
+    private static void run(String key, long ttl, Entry entry, Supplier<List<Build>> query) {
+        try {
+            final List<Build> builds = Collections.unmodifiableList(query.get());
+            entry.expires = System.currentTimeMillis() + ttl;
+            entry.future.complete(builds);
+        } catch (RuntimeException | Error ex) {
+            ENTRIES.remove(key, entry);
+            entry.future.completeExceptionally(ex);
+        }
+    }
+
+    static void clear() {
+        ENTRIES.clear();
+    }
+
+    private static List<Build> await(Entry entry) {
+        try {
+            return entry.future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for shared provider query", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private static void purgeExpired(long now) {
+        ENTRIES.values().removeIf(entry -> entry.isExpired(now));
+    }
+
+    private static class Entry {
+
+        private final CompletableFuture<List<Build>> future = new CompletableFuture<>();
+        // set once the query finishes, running query never expires
+        private volatile long expires = Long.MAX_VALUE;
+
+        private boolean isExpired(long now) {
+            return now >= expires;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package hudson.plugins.scm.koji;
+
+import hudson.util.Secret;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KojiNotifyActionTest {
+
+    @Test
+    public void nameOfNvr() {
+        Assert.assertEquals("java-1.8.0-openjdk", KojiNotifyAction.nameOf("java-1.8.0-openjdk-1.8.0.151-1.b12.el7"));
+        Assert.assertEquals("b", KojiNotifyAction.nameOf("b-1-1"));
+    }
+
+    @Test
+    public void realKojiIsMatchedByPackage() {
+        KojiXmlRpcApi api = new RealKojiXmlRpcApi("java-1.8.0-openjdk", "x86_64", "f26.*", "", "");
+        Assert.assertTrue(KojiNotifyAction.isAffected(api, "java-1.8.0-openjdk", null));
+        Assert.assertTrue(KojiNotifyAction.isAffected(api, "java-1.8.0-openjdk", "jdk8u"));
+        Assert.assertFalse(KojiNotifyAction.isAffected(api, "java-11-openjdk", null));
+    }
+
+    @Test
+    public void fakeKojiIsMatchedByProject() {
+        KojiXmlRpcApi api = new FakeKojiXmlRpcApi("jdk8u", "", "", true);
+        Assert.assertTrue(KojiNotifyAction.isAffected(api, "java-1.8.0-openjdk", "jdk8u"));
+        Assert.assertFalse(KojiNotifyAction.isAffected(api, "java-1.8.0-openjdk", "jdk11u"));
+    }
+
+    @Test
+    public void onlyConfiguredTokenIsAuthorized() {
+        Assert.assertTrue(KojiNotifyAction.isAuthorized(Secret.fromString("s3cr3t"), "s3cr3t"));
+        Assert.assertFalse(KojiNotifyAction.isAuthorized(Secret.fromString("s3cr3t"), "s3cr3"));
+        Assert.assertFalse(KojiNotifyAction.isAuthorized(Secret.fromString("s3cr3t"), null));
+        // no token configured, notifications are disabled
+        Assert.assertFalse(KojiNotifyAction.isAuthorized(Secret.fromString(""), ""));
+        Assert.assertFalse(KojiNotifyAction.isAuthorized(null, ""));
+    }
+
+    @Test
+    public void buildIsNotifiedOncePerInterval() {
+        KojiNotifyAction.RateLimit rateLimit = new KojiNotifyAction.RateLimit(1000);
+        Assert.assertTrue(rateLimit.tryAcquire("java-1.8.0-openjdk-1-1", 0));
+        Assert.assertFalse(rateLimit.tryAcquire("java-1.8.0-openjdk-1-1", 999));
+        // next build of the same package is not held back
+        Assert.assertTrue(rateLimit.tryAcquire("java-1.8.0-openjdk-1-2", 999));
+        Assert.assertTrue(rateLimit.tryAcquire("java-1.8.0-openjdk-1-1", 1000));
+    }
+}
@@ -0,0 +1,89 @@
+package hudson.plugins.scm.koji;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KojiPollSchedulerTest {
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long MIN = 0;
+    private static final long MAX = 60 * MINUTE;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private KojiPollScheduler newScheduler() throws IOException {
+        return new KojiPollScheduler(new File(temporaryFolder.newFolder(), KojiPollScheduler.SCHEDULE_FILE));
+    }
+
+    @Test
+    public void intervalGrowsWhileNothingArrivesUpToMax() throws IOException {
+        KojiPollScheduler scheduler = newScheduler();
+        long now = 1_000_000;
+        Assert.assertTrue(scheduler.isDue(now, MAX));
+        long previous = 0;
+        for (int i = 0; i < 20; i++) {
+            scheduler.polled(false, 10, now, MIN, MAX);
+            Assert.assertTrue(scheduler.getInterval() >= previous);
+            Assert.assertTrue(scheduler.getInterval() <= MAX);
+            previous = scheduler.getInterval();
+            Assert.assertFalse(scheduler.isDue(now + previous - 1, MAX));
+            now += previous;
+            Assert.assertTrue(scheduler.isDue(now, MAX));
+        }
+        Assert.assertEquals(MAX, scheduler.getInterval());
+    }
+
+    @Test
+    public void arrivalResetsIntervalAndBusyJobIsNotWaitedForLong() throws IOException {
+        KojiPollScheduler scheduler = newScheduler();
+        long now = 1_000_000;
+        for (int i = 0; i < 20; i++) {
+            scheduler.polled(false, 0, now, MIN, MAX);
+        }
+        scheduler.polled(true, 0, now, MIN, MAX);
+        Assert.assertEquals(MIN, scheduler.getInterval());
+        Assert.assertTrue(scheduler.isDue(now, MAX));
+        // builds arrive every 20 minutes
+        for (int i = 0; i < 5; i++) {
+            now += 20 * MINUTE;
+            scheduler.polled(true, 0, now, MIN, MAX);
+        }
+        for (int i = 0; i < 20; i++) {
+            scheduler.polled(false, 0, now, MIN, MAX);
+        }
+        Assert.assertEquals(5 * MINUTE, scheduler.getInterval());
+    }
+
+    @Test
+    public void expensivePollIsNotRepeatedSoon() throws IOException {
+        KojiPollScheduler scheduler = newScheduler();
+        scheduler.polled(true, MINUTE, 0, MIN, MAX);
+        Assert.assertEquals(KojiPollScheduler.COST_FACTOR * MINUTE, scheduler.getInterval());
+        scheduler.polled(true, 10 * MINUTE, 0, MIN, MAX);
+        Assert.assertEquals(MAX, scheduler.getInterval());
+    }
+
+    @Test
+    public void markedJobIsDueAndScheduleIsPersisted() throws IOException {
+        File file = new File(temporaryFolder.newFolder(), KojiPollScheduler.SCHEDULE_FILE);
+        KojiPollScheduler scheduler = new KojiPollScheduler(file);
+        for (int i = 0; i < 5; i++) {
+            scheduler.polled(false, 10, 0, MIN, MAX);
+        }
+        Assert.assertFalse(scheduler.isDue(1, MAX));
+        // schedule can be disabled
+        Assert.assertTrue(scheduler.isDue(1, 0));
+
+        KojiPollScheduler reloaded = new KojiPollScheduler(file);
+        Assert.assertEquals(scheduler.getInterval(), reloaded.getInterval());
+        Assert.assertFalse(reloaded.isDue(1, MAX));
+        Assert.assertTrue(reloaded.toString(), reloaded.toString().contains("(2 skipped)"));
+        reloaded.markDue();
+        Assert.assertTrue(new KojiPollScheduler(file).isDue(1, MAX));
+    }
+}
@@ -2,17 +2,24 @@ package hudson.plugins.scm.koji.client;
 
 import hudson.plugins.scm.koji.KojiBuildProvider;
 import hudson.plugins.scm.koji.NotProcessedNvrPredicate;
+import hudson.plugins.scm.koji.OrderBy;
 import hudson.plugins.scm.koji.model.Build;
 import hudson.plugins.scm.koji.model.BuildProvider;
 import hudson.plugins.scm.koji.model.RPM;
 import java.io.IOException;
+import java.net.ConnectException;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import org.apache.xmlrpc.XmlRpcException;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.GetChangeToken;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -136,6 +143,30 @@ public class BuildMatcherTest {
         Assert.assertEquals("b-1-2", b.get().getNvr());
     }
 
+    @Test
+    public void twoBuildsOrderedByVersion() throws IOException {
+        BuildMatcher bm = new BuildMatcher(createKojiBuildProviders(), NotProcessedNvrPredicate.createNotProcessedNvrPredicate(new ArrayList<>()), 3) {
+            @Override
+            List<Build> getBuilds(BuildProvider buildProvider) {
+                // release 10 is newer than 9, even if it finished earlier
+                return Arrays.asList(createBuild(9, getDtfDate(10, 10)),
+                        createBuild(10, getDtfDate(9, 9)));
+            }
+
+            @Override
+            Build getBuild(Build build) {
+                return build;
+            }
+        };
+        bm.setOrderBy(OrderBy.VERSION);
+        List<Build> l = BuildMatcher.listBuilds(bm).collect(Collectors.toList());
+        Assert.assertEquals(2, l.size());
+        Assert.assertEquals("b-1-10", l.get(0).getNvr());
+        Assert.assertEquals("b-1-9", l.get(1).getNvr());
+        Optional<Build> b = BuildMatcher.getLatestOfNewestBuilds(bm);
+        Assert.assertEquals("b-1-9", b.get().getNvr());
+    }
+
     @Test
     public void threeBuilds() throws IOException {
         BuildMatcher bm = new BuildMatcher(createKojiBuildProviders(), NotProcessedNvrPredicate.createNotProcessedNvrPredicate(new ArrayList<>()), 3) {
@@ -234,4 +265,177 @@ public class BuildMatcherTest {
         Optional<Build> b = BuildMatcher.getLatestOfNewestBuilds(bm);
         Assert.assertEquals("b-1-2", b.get().getNvr());
     }
+
+    @Test
+    public void slowProviderIsSkipped() throws IOException {
+        KojiBuildProvider slow = new KojiBuildProvider("proc://slow", "proc://slow");
+        KojiBuildProvider fast = new KojiBuildProvider("proc://fast", "proc://fast");
+        BuildMatcher bm = new BuildMatcher(Arrays.asList(slow, fast), NotProcessedNvrPredicate.createNotProcessedNvrPredicate(new ArrayList<>()), 3) {
+            @Override
+            List<Build> getBuilds(BuildProvider buildProvider) {
+                if (buildProvider.getTopUrl().equals("proc://slow")) {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                    return Arrays.asList(createBuild(1, getDtfDate(10, 10)));
+                }
+                return Arrays.asList(createBuild(2, getDtfDate(9, 9)));
+            }
+
+            @Override
+            Build getBuild(Build build) {
+                return build;
+            }
+        };
+        bm.setProviderTimeout(500);
+        long start = System.currentTimeMillis();
+        List<Build> l = BuildMatcher.listBuilds(bm).collect(Collectors.toList());
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(1, l.size());
+        Assert.assertEquals("b-1-2", l.get(0).getNvr());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failingProviderFailsPoll() throws IOException {
+        BuildMatcher bm = new BuildMatcher(createKojiBuildProviders(), NotProcessedNvrPredicate.createNotProcessedNvrPredicate(new ArrayList<>()), 3) {
+            @Override
+            List<Build> getBuilds(BuildProvider buildProvider) {
+                throw new IllegalStateException("hub is broken");
+            }
+
+            @Override
+            Build getBuild(Build build) {
+                return build;
+            }
+        };
+        BuildMatcher.listBuilds(bm).collect(Collectors.toList());
+    }
+
+    @Test
+    public void selectNewestIsSameAsSortAndLimit() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            List<Build> builds = new ArrayList<>();
+            int count = random.nextInt(40);
+            for (int i = 0; i < count; i++) {
+                // few distinct times, so there are ties
+                builds.add(createBuild(i, getDtfDate(random.nextInt(10), random.nextInt(3))));
+            }
+            for (int limit = 0; limit < 45; limit += 4) {
+                List<Build> expected = builds.stream()
+                        .sorted(BuildMatcher.comparator(OrderBy.DATE))
+                        .limit(limit)
+                        .collect(Collectors.toList());
+                Assert.assertEquals(expected, BuildMatcher.selectNewest(builds, limit, BuildMatcher.comparator(OrderBy.DATE)));
+            }
+        }
+    }
+
+    @Test
+    public void changeTokenNeedsAllProviders() {
+        String[] providerToken = {"1"};
+        BuildMatcher bm = new BuildMatcher(Arrays.asList(createKojiBuildProvider(), new KojiBuildProvider("proc://other", "proc://other")), NotProcessedNvrPredicate.createNotProcessedNvrPredicate(new ArrayList<>()), 3) {
+            @Override
+            List<Build> getBuilds(BuildProvider buildProvider) {
+                throw new AssertionError("no listing expected");
+            }
+
+            @Override
+            Build getBuild(Build build) {
+                return build;
+            }
+
+            @Override
+            String getQueryKey(BuildProvider buildProvider) {
+                return buildProvider.getTopUrl();
+            }
+
+            @Override
+            CompletableFuture<String> getChangeToken(BuildProvider buildProvider) {
+                return CompletableFuture.completedFuture(buildProvider.getTopUrl().equals("proc://other") ? providerToken[0] : "0");
+            }
+        };
+        String token = bm.getChangeToken();
+        Assert.assertEquals(token, bm.getChangeToken());
+        providerToken[0] = "2";
+        Assert.assertNotEquals(token, bm.getChangeToken());
+        providerToken[0] = null;
+        Assert.assertNull(bm.getChangeToken());
+    }
+
+    @Test
+    public void sharedBuildsAreReusedOnlyWithSameChangeToken() {
+        ProviderQueryCoalescer.clear();
+        int[] listed = {0};
+        class CountingMatcher extends BuildMatcher {
+
+            CountingMatcher(String changeToken) {
+                super(createKojiBuildProviders(), NotProcessedNvrPredicate.createNotProcessedNvrPredicate(new ArrayList<>()), 3);
+                setQueryCacheTtl(60 * 1000);
+                setChangeToken(changeToken);
+            }
+
+            @Override
+            List<Build> getBuilds(BuildProvider buildProvider) {
+                listed[0]++;
+                return Arrays.asList(createBuild(1, getDtfDate(1, 1)));
+            }
+
+            @Override
+            Build getBuild(Build build) {
+                return build;
+            }
+
+            @Override
+            String getQueryKey(BuildProvider buildProvider) {
+                return "sharedBuilds " + buildProvider.getTopUrl();
+            }
+        }
+        try {
+            String oldToken = "sharedBuilds proc://unused=1\n";
+            BuildMatcher.listBuilds(new CountingMatcher(oldToken)).count();
+            BuildMatcher.listBuilds(new CountingMatcher(oldToken)).count();
+            Assert.assertEquals(1, listed[0]);
+            // builds listed before the change must not be reused with new token
+            BuildMatcher.listBuilds(new CountingMatcher("sharedBuilds proc://unused=2\n")).count();
+            Assert.assertEquals(2, listed[0]);
+        } finally {
+            ProviderQueryCoalescer.clear();
+        }
+    }
+
+    @Test
+    public void onlyHubAnsweringByFaultIsNotAskedForChangeTokenAgain() {
+        int[] asked = {0};
+        Throwable[] failure = {new RuntimeException(new ConnectException("hub is down"))};
+        BuildMatcher bm = new BuildMatcher(createKojiBuildProviders(), NotProcessedNvrPredicate.createNotProcessedNvrPredicate(new ArrayList<>()), 3) {
+            @Override
+            List<Build> getBuilds(BuildProvider buildProvider) {
+                throw new AssertionError("no listing expected");
+            }
+
+            @Override
+            Build getBuild(Build build) {
+                return build;
+            }
+
+            @Override
+            protected CompletableFuture<Object> executeAsync(String url, XmlRpcRequestParams params) {
+                asked[0]++;
+                CompletableFuture<Object> result = new CompletableFuture<>();
+                result.completeExceptionally(failure[0]);
+                return result;
+            }
+        };
+        String url = "proc://noChangeToken" + System.nanoTime();
+        Assert.assertNull(bm.fetchChangeToken(url, GetChangeToken.ofPackage("b")).join());
+        Assert.assertNull(bm.fetchChangeToken(url, GetChangeToken.ofPackage("b")).join());
+        Assert.assertEquals(2, asked[0]);
+        failure[0] = new RuntimeException(new XmlRpcException(0, "No such handler: getChangeToken"));
+        Assert.assertNull(bm.fetchChangeToken(url, GetChangeToken.ofPackage("b")).join());
+        Assert.assertNull(bm.fetchChangeToken(url, GetChangeToken.ofPackage("b")).join());
+        Assert.assertEquals(3, asked[0]);
+    }
 }
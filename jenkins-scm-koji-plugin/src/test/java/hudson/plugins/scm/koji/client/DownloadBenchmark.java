@@ -0,0 +1,180 @@
+package hudson.plugins.scm.koji.client;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.fakekoji.api.http.filehandling.FileReturningHandler;
+
+/**
+ * Throughput of download of single large file from local fake-koji file
+ * server, by the former write path (8 KB chunks through buffered stream), by
+ * FileChannel.transferFrom and by the current one (HttpDownloader writing
+ * large chunks to the channel of the file). All of them compute the digests,
+ * unless asked not to.
+ * <p>
+ * Not run with the tests, run it by main, with optional size of the file in
+ * megabytes, number of rounds and "nodigest" (to measure just the transfer) as
+ * arguments. CPU time is of the downloading thread only, the server runs in
+ * the same jvm.
+ */
+public class DownloadBenchmark {
+
+    private interface Download {
+
+        void to(String url, File target) throws IOException;
+    }
+
+    private static boolean digest = true;
+
+    public static void main(String[] args) throws Exception {
+        final int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        digest = args.length <= 2 || !"nodigest".equals(args[2]);
+        final File root = Files.createTempDirectory("download-benchmark").toFile();
+        final File source = new File(root, "file.tarxz");
+        final File target = new File(root, "target");
+        writeRandom(source, sizeMb);
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        server.createContext("/", new FileReturningHandler(root));
+        server.setExecutor(executor);
+        server.start();
+        final String url = "http://localhost:" + server.getAddress().getPort() + "/" + source.getName();
+        try {
+            System.out.println("Downloading " + sizeMb + " MB, best of " + rounds + " rounds" + (digest ? "" : ", without digests"));
+            measure("stream, 8 KB chunks (former)", url, target, sizeMb, rounds, DownloadBenchmark::streamed);
+            measure("FileChannel.transferFrom", url, target, sizeMb, rounds, DownloadBenchmark::transferred);
+            measure("HttpDownloader to channel", url, target, sizeMb, rounds, (u, file) -> {
+                try (OutputStream out = digest ? DigestingOutputStream.toFile(file) : Channels.newOutputStream(
+                        FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+                    new HttpDownloader().download(u, out);
+                }
+            });
+        } finally {
+            server.stop(0);
+            executor.shutdownNow();
+            source.delete();
+            target.delete();
+            root.delete();
+        }
+    }
+
+    private static void writeRandom(File file, int sizeMb) throws IOException {
+        final byte[] chunk = new byte[1024 * 1024];
+        final Random random = new Random(7);
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < sizeMb; i++) {
+                random.nextBytes(chunk);
+                out.write(chunk);
+            }
+        }
+    }
+
+    private static void measure(String name, String url, File target, int sizeMb, int rounds, Download download) throws IOException {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        // warm up
+        download.to(url, target);
+        long bestTime = Long.MAX_VALUE;
+        long bestCpu = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            final long cpu = threads.getCurrentThreadCpuTime();
+            final long time = System.nanoTime();
+            download.to(url, target);
+            bestTime = Math.min(bestTime, System.nanoTime() - time);
+            bestCpu = Math.min(bestCpu, threads.getCurrentThreadCpuTime() - cpu);
+            if (target.length() != sizeMb * 1024L * 1024L) {
+                throw new IllegalStateException(name + " downloaded " + target.length() + " bytes");
+            }
+        }
+        System.out.println(String.format("%-32s %8.1f MB/s %8.2f s CPU per GB", name,
+                sizeMb / (bestTime / 1e9), bestCpu / 1e9 * 1024 / sizeMb));
+    }
+
+    private static void streamed(String url, File target) throws IOException {
+        final byte[] buffer = new byte[8192];
+        final OutputStream file = new BufferedOutputStream(new FileOutputStream(target));
+        try (OutputStream out = digest ? new DigestingOutputStream(file) : file;
+             InputStream in = HttpDownloader.openStream(url)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static void transferred(String url, File target) throws IOException {
+        try (InputStream in = HttpDownloader.openStream(url);
+             RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            file.setLength(0);
+            final ReadableByteChannel channel = digest ? new DigestingChannel(Channels.newChannel(in)) : Channels.newChannel(in);
+            final FileChannel out = file.getChannel();
+            long position = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(channel, position, Long.MAX_VALUE)) > 0) {
+                position += transferred;
+            }
+        }
+    }
+
+    /**
+     * Digests what is read, as DigestingOutputStream does with what is
+     * written.
+     */
+    private static class DigestingChannel implements ReadableByteChannel {
+
+        private final ReadableByteChannel channel;
+        private final MessageDigest md5;
+        private final MessageDigest sha256;
+
+        DigestingChannel(ReadableByteChannel channel) {
+            this.channel = channel;
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            final int start = dst.position();
+            final int read = channel.read(dst);
+            if (read > 0) {
+                final ByteBuffer bytes = dst.duplicate();
+                bytes.position(start).limit(start + read);
+                md5.update(bytes.duplicate());
+                sha256.update(bytes);
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
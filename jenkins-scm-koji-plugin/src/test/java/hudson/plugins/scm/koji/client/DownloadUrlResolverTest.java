@@ -0,0 +1,157 @@
+package hudson.plugins.scm.koji.client;
+
+import com.sun.net.httpserver.HttpServer;
+import hudson.plugins.scm.koji.BuildsSerializer;
+import hudson.plugins.scm.koji.model.Build;
+import hudson.plugins.scm.koji.model.BuildProvider;
+import hudson.plugins.scm.koji.model.RPM;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.fakekoji.api.http.filehandling.FileReturningHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DownloadUrlResolverTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private File root;
+    private HttpServer server;
+    private String downloadUrl;
+
+    @Before
+    public void startServer() throws IOException {
+        root = temporaryFolder.newFolder();
+        final FileReturningHandler handler = new FileReturningHandler(root);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.computeIfAbsent(exchange.getRequestMethod(), m -> new AtomicInteger()).incrementAndGet();
+            handler.handle(exchange);
+        });
+        server.start();
+        downloadUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void createFile(String path) throws IOException {
+        final File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), Collections.singletonList(path));
+    }
+
+    private int requests(String method) {
+        final AtomicInteger count = requests.get(method);
+        return count == null ? 0 : count.get();
+    }
+
+    private static Build build(RPM... rpms) {
+        return new Build(1, "pkg", "1", "2", "pkg-1-2", null, Arrays.asList(rpms), null, null, null);
+    }
+
+    private static RPM rpm(String name, String arch) {
+        return new RPM(name, "1", "2", name + "-1-2", arch, null);
+    }
+
+    @Test
+    public void urlsAreResolvedByOneListingPerDirectory() throws IOException {
+        createFile("pkg/1/2/x86_64/pkg-1-2.x86_64.tarxz");
+        createFile("pkg/1/2/x86_64/pkg-devel-1-2.x86_64.rpm");
+        createFile("pkg/1/2/x86_64/pkg-debuginfo-1-2.x86_64.rpm");
+        createFile("pkg/1/2/src/pkg-1-2.src.tarxz");
+        final Build build = build(rpm("pkg", "x86_64"), rpm("pkg-devel", "x86_64"), rpm("pkg-debuginfo", "x86_64"));
+
+        new DownloadUrlResolver(downloadUrl).resolve(build, rpm -> !rpm.getName().endsWith("debuginfo"));
+
+        final List<RPM> rpms = build.getRpms();
+        Assert.assertEquals(downloadUrl + "pkg/1/2/x86_64/pkg-1-2.x86_64.tarxz", rpms.get(0).getUrl());
+        Assert.assertEquals(downloadUrl + "pkg/1/2/x86_64/pkg-devel-1-2.x86_64.rpm", rpms.get(1).getUrl());
+        // excluded rpms are not downloaded, so they get no url
+        Assert.assertNull(rpms.get(2).getUrl());
+        Assert.assertEquals(downloadUrl + "pkg/1/2/src/pkg-1-2.src.tarxz", build.getSrcUrl().toString());
+        Assert.assertEquals(2, requests("GET"));
+        Assert.assertEquals(0, requests("HEAD"));
+    }
+
+    @Test
+    public void missingDirectoryIsNotProbed() throws IOException {
+        createFile("pkg/1/2/x86_64/pkg-1-2.x86_64.rpm");
+        final Build build = build(rpm("pkg", "x86_64"), rpm("pkg", "ppc64le"));
+
+        final DownloadUrlResolver resolver = new DownloadUrlResolver(downloadUrl);
+        Assert.assertNotNull(resolver.resolveRpmUrl(build, build.getRpms().get(0)));
+        Assert.assertNull(resolver.resolveRpmUrl(build, build.getRpms().get(1)));
+        Assert.assertEquals(2, requests("GET"));
+        Assert.assertEquals(0, requests("HEAD"));
+    }
+
+    @Test
+    public void headIsUsedWhenDirectoryCanNotBeListed() throws IOException {
+        createFile("pkg/1/2/x86_64/pkg-1-2.x86_64.zip");
+        final Build build = build(rpm("pkg", "x86_64"));
+        // other handler, which lists nothing
+        server.removeContext("/");
+        final FileReturningHandler handler = new FileReturningHandler(root);
+        server.createContext("/", exchange -> {
+            requests.computeIfAbsent(exchange.getRequestMethod(), m -> new AtomicInteger()).incrementAndGet();
+            if (exchange.getRequestURI().getPath().endsWith("/")) {
+                exchange.sendResponseHeaders(403, -1);
+                exchange.close();
+                return;
+            }
+            handler.handle(exchange);
+        });
+
+        Assert.assertEquals(downloadUrl + "pkg/1/2/x86_64/pkg-1-2.x86_64.zip",
+                new DownloadUrlResolver(downloadUrl).resolveRpmUrl(build, build.getRpms().get(0)));
+        Assert.assertEquals(1, requests("GET"));
+        // rpm, tarxz, zip
+        Assert.assertEquals(3, requests("HEAD"));
+    }
+
+    @Test
+    public void listingIsParsed() {
+        final Set<String> names = DownloadUrlResolver.parseListing("<html><body>\n"
+                + "<a href=\"?C=N;O=D\">Name</a>\n"
+                + "<a href=\"/packages/pkg/1/\">Parent Directory</a>\n"
+                + "<a href=\"pkg-1-2.x86_64.rpm\">pkg-1-2.x86_64.rpm</a>\n"
+                + "<A HREF=\"/packages/pkg/1/2/x86_64/pkg%2Bextra-1-2.x86_64.rpm\">pkg+extra</A>\n"
+                + "</body></html>");
+        Assert.assertEquals(2, names.size());
+        Assert.assertTrue(names.contains("pkg-1-2.x86_64.rpm"));
+        Assert.assertTrue(names.contains("pkg+extra-1-2.x86_64.rpm"));
+    }
+
+    @Test
+    public void resolvedUrlsArePersisted() throws IOException {
+        final RPM rpm = rpm("pkg", "x86_64");
+        rpm.setUrl(downloadUrl + "pkg/1/2/x86_64/pkg-1-2.x86_64.rpm");
+        final Build build = new Build(1, "pkg", "1", "2", "pkg-1-2", null, Collections.singletonList(rpm), null,
+                new BuildProvider(downloadUrl, downloadUrl), null);
+        build.setSrcUrl(new java.net.URL(downloadUrl + "pkg/1/2/src/pkg-1-2.src.rpm"));
+        final File file = temporaryFolder.newFile();
+        new BuildsSerializer().write(build, file);
+
+        final Build read = new BuildsSerializer().read(file);
+        Assert.assertEquals(rpm.getUrl(), read.getRpms().get(0).getUrl());
+        Assert.assertEquals(build.getSrcUrl(), read.getSrcUrl());
+    }
+}
@@ -0,0 +1,173 @@
+package hudson.plugins.scm.koji.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.fakekoji.api.http.filehandling.FileReturningHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HttpDownloaderTest {
+
+    private static final int SIZE = 100_000;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private final List<String> ifRanges = new CopyOnWriteArrayList<>();
+    private final AtomicInteger brokenTransfers = new AtomicInteger();
+    private byte[] content;
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void startServer() throws IOException {
+        content = new byte[SIZE];
+        new Random(7).nextBytes(content);
+        final File root = temporaryFolder.newFolder();
+        Files.write(new File(root, "file.tarxz").toPath(), content);
+        new File(root, "broken").mkdir();
+        Files.write(new File(root, "broken/file.tarxz").toPath(), content);
+        final FileReturningHandler handler = new FileReturningHandler(root);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            ranges.add(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+            handler.handle(exchange);
+        });
+        // sends half of the file and drops the connection, the first few times
+        server.createContext("/broken/", exchange -> {
+            ranges.add(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+            if (brokenTransfers.getAndDecrement() > 0) {
+                breakTransfer(exchange);
+            } else {
+                handler.handle(exchange);
+            }
+        });
+        // breaks the first transfer, then the file changes
+        server.createContext("/changing/", exchange -> {
+            ranges.add(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+            ifRanges.add(String.valueOf(exchange.getRequestHeaders().getFirst("If-Range")));
+            if (brokenTransfers.getAndDecrement() > 0) {
+                exchange.getResponseHeaders().set("ETag", "\"1\"");
+                breakTransfer(exchange);
+            } else {
+                exchange.getResponseHeaders().set("ETag", "\"2\"");
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            }
+        });
+        // ignores ranges
+        server.createContext("/plain/", exchange -> {
+            ranges.add(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void breakTransfer(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, content.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(content, 0, content.length / 2);
+        out.flush();
+        exchange.close();
+    }
+
+    private byte[] download(HttpDownloader downloader, String fileUrl) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        downloader.download(fileUrl, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void brokenTransferIsResumed() throws IOException {
+        brokenTransfers.set(2);
+
+        Assert.assertArrayEquals(content, download(new HttpDownloader(), url + "broken/file.tarxz"));
+        Assert.assertEquals(3, ranges.size());
+        Assert.assertEquals("null", ranges.get(0));
+        Assert.assertEquals("bytes=" + (SIZE / 2) + "-", ranges.get(1));
+    }
+
+    @Test
+    public void transferBrokenTooManyTimesFails() {
+        brokenTransfers.set(HttpDownloader.MAX_RESUMES + 1);
+        try {
+            download(new HttpDownloader(), url + "broken/file.tarxz");
+            Assert.fail("broken transfer was accepted");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void fileChangedDuringResumeIsNotMixed() {
+        brokenTransfers.set(1);
+        try {
+            download(new HttpDownloader(), url + "changing/file.tarxz");
+            Assert.fail("parts of changed file were accepted");
+        } catch (IOException ex) {
+            // expected
+        }
+        Assert.assertEquals(2, ifRanges.size());
+        Assert.assertEquals("null", ifRanges.get(0));
+        Assert.assertEquals("\"1\"", ifRanges.get(1));
+    }
+
+    @Test
+    public void largeFileIsDownloadedBySegments() throws IOException {
+        Assert.assertArrayEquals(content, download(new HttpDownloader(3, 30_000), url + "file.tarxz"));
+        Assert.assertEquals(4, ranges.size());
+        Assert.assertEquals("bytes=0-29999", ranges.get(0));
+        Assert.assertTrue(ranges.contains("bytes=90000-99999"));
+    }
+
+    @Test
+    public void hugeSegmentSizeIsCapped() throws IOException {
+        // sizes out of range are capped, so offsets of segments do not overflow
+        Assert.assertArrayEquals(content, download(new HttpDownloader(Integer.MAX_VALUE, Long.MAX_VALUE), url + "file.tarxz"));
+        Assert.assertEquals(1, ranges.size());
+    }
+
+    @Test
+    public void smallFileIsDownloadedByOneRequest() throws IOException {
+        Assert.assertArrayEquals(content, download(new HttpDownloader(3, SIZE), url + "file.tarxz"));
+        Assert.assertEquals(1, ranges.size());
+    }
+
+    @Test
+    public void serverWithoutRangesSendsWholeFile() throws IOException {
+        Assert.assertArrayEquals(content, download(new HttpDownloader(3, 30_000), url + "plain/file.tarxz"));
+        Assert.assertEquals(1, ranges.size());
+    }
+}
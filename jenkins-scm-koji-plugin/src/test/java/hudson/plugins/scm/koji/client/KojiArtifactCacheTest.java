@@ -0,0 +1,142 @@
+package hudson.plugins.scm.koji.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KojiArtifactCacheTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final AtomicInteger downloads = new AtomicInteger();
+
+    private KojiArtifactCache.Download writing(String content) {
+        return file -> {
+            downloads.incrementAndGet();
+            Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            return new KojiArtifactCache.Sums("md5-" + content, "sha256-" + content);
+        };
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void fileIsDownloadedOnceAndLinkedToWorkspaces() throws IOException {
+        File dir = new File(temporaryFolder.newFolder(), KojiArtifactCache.CACHE_DIR);
+        File first = new File(temporaryFolder.newFolder(), "a.rpm");
+        File second = new File(temporaryFolder.newFolder(), "a.rpm");
+        KojiArtifactCache cache = new KojiArtifactCache(dir, 1024 * 1024);
+
+        Assert.assertEquals("md5-x", cache.fetch("a", first, writing("x")).getMd5());
+        KojiArtifactCache.Sums sums = new KojiArtifactCache(dir, 1024 * 1024).fetch("a", second, writing("y"));
+
+        Assert.assertEquals(1, downloads.get());
+        Assert.assertEquals("sha256-x", sums.getSha256());
+        Assert.assertEquals("x", read(first));
+        Assert.assertEquals("x", read(second));
+        Assert.assertFalse(Files.getPosixFilePermissions(second.toPath()).contains(PosixFilePermission.OWNER_WRITE));
+        Assert.assertTrue(Files.isSameFile(first.toPath(), second.toPath()));
+    }
+
+    @Test
+    public void concurrentDownloadsOfSameFileAreDoneOnce() throws Exception {
+        File dir = new File(temporaryFolder.newFolder(), KojiArtifactCache.CACHE_DIR);
+        KojiArtifactCache cache = new KojiArtifactCache(dir, 1024 * 1024);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        KojiArtifactCache.Download slow = file -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+            return writing("x").to(file);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<KojiArtifactCache.Sums>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                File target = new File(temporaryFolder.newFolder(), "a.rpm");
+                results.add(executor.submit(() -> cache.fetch("a", target, slow)));
+                started.await();
+            }
+            release.countDown();
+            for (Future<KojiArtifactCache.Sums> result : results) {
+                Assert.assertEquals("md5-x", result.get().getMd5());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, downloads.get());
+    }
+
+    @Test
+    public void mismatchingDownloadIsNotCached() throws IOException {
+        File dir = new File(temporaryFolder.newFolder(), KojiArtifactCache.CACHE_DIR);
+        KojiArtifactCache cache = new KojiArtifactCache(dir, 1024 * 1024);
+        File target = new File(temporaryFolder.newFolder(), "a.rpm");
+
+        Assert.assertNull(cache.fetch("a", target, file -> null));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals("md5-x", cache.fetch("a", target, writing("x")).getMd5());
+        Assert.assertEquals(1, downloads.get());
+    }
+
+    @Test
+    public void entryChangedThroughWorkspaceIsDownloadedAgain() throws IOException {
+        File dir = new File(temporaryFolder.newFolder(), KojiArtifactCache.CACHE_DIR);
+        File first = new File(temporaryFolder.newFolder(), "a.rpm");
+        File second = new File(temporaryFolder.newFolder(), "a.rpm");
+        KojiArtifactCache cache = new KojiArtifactCache(dir, 1024 * 1024);
+
+        cache.fetch("a", first, writing("x"));
+        // same file as the entry, root is not stopped by its permissions
+        first.setWritable(true);
+        Files.write(first.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+        KojiArtifactCache reloaded = new KojiArtifactCache(dir, 1024 * 1024);
+        Assert.assertEquals("md5-x", reloaded.fetch("a", second, writing("x")).getMd5());
+
+        Assert.assertEquals(2, downloads.get());
+        Assert.assertEquals("x", read(second));
+        Assert.assertEquals(1, reloaded.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+        File dir = new File(temporaryFolder.newFolder(), KojiArtifactCache.CACHE_DIR);
+        File workspace = temporaryFolder.newFolder();
+        KojiArtifactCache cache = new KojiArtifactCache(dir, 20);
+
+        cache.fetch("a", new File(workspace, "a"), writing("0123456789"));
+        cache.fetch("b", new File(workspace, "b"), writing("0123456789"));
+        // a is used, so b is evicted
+        cache.fetch("a", new File(workspace, "a"), writing("0123456789"));
+        cache.fetch("c", new File(workspace, "c"), writing("0123456789"));
+        Assert.assertEquals(3, downloads.get());
+        Assert.assertEquals(20, cache.size());
+
+        cache.fetch("a", new File(workspace, "a"), writing("0123456789"));
+        Assert.assertEquals(3, downloads.get());
+        cache.fetch("b", new File(workspace, "b"), writing("0123456789"));
+        Assert.assertEquals(4, downloads.get());
+        // evicted file stays in workspace
+        Assert.assertEquals("0123456789", read(new File(workspace, "c")));
+    }
+}
@@ -0,0 +1,238 @@
+package hudson.plugins.scm.koji.client;
+
+import com.sun.net.httpserver.HttpServer;
+import hudson.plugins.scm.koji.RealKojiXmlRpcApi;
+import hudson.plugins.scm.koji.model.Build;
+import hudson.plugins.scm.koji.model.BuildProvider;
+import hudson.plugins.scm.koji.model.KojiBuildDownloadResult;
+import hudson.plugins.scm.koji.model.RPM;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.bind.DatatypeConverter;
+import org.fakekoji.api.http.filehandling.FileReturningHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KojiBuildDownloaderTest {
+
+    private static final long DELAY = 200;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private File root;
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private String downloadUrl;
+
+    @Before
+    public void startServer() throws IOException {
+        root = temporaryFolder.newFolder();
+        final FileReturningHandler handler = new FileReturningHandler(root);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // every file is served slowly, so the downloads overlap
+        server.createContext("/", exchange -> {
+            requests.computeIfAbsent(exchange.getRequestURI().getPath(), p -> new AtomicInteger()).incrementAndGet();
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(DELAY);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            handler.handle(exchange);
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        downloadUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private Build createBuild(int count, String missing) throws IOException {
+        final List<RPM> rpms = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final String name = "pkg" + i;
+            final RPM rpm = new RPM(name, "1", "2", name + "-1-2", "x86_64", null);
+            final String path = getPath(name);
+            if (!name.equals(missing)) {
+                final File file = new File(root, path);
+                file.getParentFile().mkdirs();
+                Files.write(file.toPath(), Collections.singletonList(path));
+            }
+            rpm.setUrl(downloadUrl + path);
+            rpms.add(rpm);
+        }
+        return new Build(1, "pkg", "1", "2", "pkg-1-2", null, rpms, null, new BuildProvider(downloadUrl, downloadUrl), null);
+    }
+
+    private static String getPath(String name) {
+        return "pkg/1/2/x86_64/" + name + "-1-2.x86_64.rpm";
+    }
+
+    private static String hex(byte[] digest) {
+        return DatatypeConverter.printHexBinary(digest).toLowerCase();
+    }
+
+    /**
+     * @return lead, signature header with one entry, and given header and
+     * payload
+     */
+    private static byte[] createRpm(byte[] headerAndPayload) {
+        final ByteBuffer rpm = ByteBuffer.allocate(96 + 40 + headerAndPayload.length);
+        rpm.put(new byte[]{(byte) 0xed, (byte) 0xab, (byte) 0xee, (byte) 0xdb});
+        rpm.position(96);
+        rpm.put(new byte[]{(byte) 0x8e, (byte) 0xad, (byte) 0xe8, 1, 0, 0, 0, 0});
+        // one index entry and 5 bytes of store, padded to 40 bytes
+        rpm.putInt(1);
+        rpm.putInt(5);
+        rpm.position(96 + 40);
+        rpm.put(headerAndPayload);
+        return rpm.array();
+    }
+
+    private static KojiBuildDownloader createDownloader(Build build, int downloadThreads) {
+        final KojiBuildDownloader downloader = new KojiBuildDownloader(
+                Collections.emptyList(),
+                new RealKojiXmlRpcApi("pkg", "x86_64", "tag", null, null),
+                nvr -> true,
+                build,
+                "rpms",
+                1,
+                false,
+                false
+        );
+        downloader.setDownloadThreads(downloadThreads);
+        return downloader;
+    }
+
+    @Test
+    public void filesAreDownloadedConcurrentlyInOrder() throws Exception {
+        final Build build = createBuild(8, null);
+        final File workspace = temporaryFolder.newFolder();
+
+        final KojiBuildDownloadResult result = createDownloader(build, 3).invoke(workspace, null);
+
+        final List<String> expected = new ArrayList<>();
+        for (RPM rpm : build.getRpms()) {
+            expected.add(new File(new File(workspace, "rpms"), rpm.getFilename("rpm")).getAbsolutePath());
+            Assert.assertNotNull(rpm.getHashSum());
+        }
+        Assert.assertEquals(expected, result.getRpmFiles());
+        for (String file : result.getRpmFiles()) {
+            Assert.assertTrue(new File(file).length() > 0);
+        }
+        Assert.assertTrue("downloads did not overlap", maxRunning.get() > 1);
+        Assert.assertTrue("too many downloads at once: " + maxRunning.get(), maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void failureCancelsOtherDownloadsAndLeavesNoPartialFiles() throws Exception {
+        final Build build = createBuild(8, "pkg0");
+        final File workspace = temporaryFolder.newFolder();
+
+        try {
+            createDownloader(build, 2).invoke(workspace, null);
+            Assert.fail("missing file was downloaded");
+        } catch (RuntimeException ex) {
+            // expected
+        }
+        // at most the download running together with the failed one got through
+        final String[] left = new File(workspace, "rpms").list();
+        Assert.assertTrue("files left: " + left.length, left.length <= 1);
+    }
+
+    @Test
+    public void checksumPublishedNextToFileIsVerified() throws Exception {
+        final Build build = createBuild(2, null);
+        final File workspace = temporaryFolder.newFolder();
+
+        createDownloader(build, 1).invoke(workspace, null);
+
+        for (RPM rpm : build.getRpms()) {
+            final byte[] content = Files.readAllBytes(new File(root, getPath(rpm.getName())).toPath());
+            Assert.assertEquals(hex(MessageDigest.getInstance("SHA-256").digest(content)), rpm.getSha256Sum());
+            Assert.assertEquals(hex(MessageDigest.getInstance("MD5").digest(content)), rpm.getHashSum());
+            Assert.assertEquals(1, requests.get("/" + getPath(rpm.getName()) + ".sha256").get());
+        }
+    }
+
+    @Test
+    public void corruptedFileIsDownloadedAgainAndFailsCheckout() throws Exception {
+        final Build build = createBuild(1, null);
+        final String path = getPath("pkg0");
+        Files.write(new File(root, path + ".sha256").toPath(), Collections.singletonList("0123456789abcdef  pkg0-1-2.x86_64.rpm"));
+        final File workspace = temporaryFolder.newFolder();
+
+        try {
+            createDownloader(build, 1).invoke(workspace, null);
+            Assert.fail("corrupted file was accepted");
+        } catch (RuntimeException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("does not match"));
+        }
+        Assert.assertEquals(2, requests.get("/" + path).get());
+        Assert.assertEquals(0, new File(workspace, "rpms").list().length);
+    }
+
+    @Test
+    public void payloadHashOfRpmIsVerified() throws Exception {
+        final byte[] headerAndPayload = "header and payload".getBytes(StandardCharsets.UTF_8);
+        final Build build = createBuild(1, null);
+        final RPM rpm = build.getRpms().get(0);
+        Files.write(new File(root, getPath("pkg0")).toPath(), createRpm(headerAndPayload));
+        rpm.setPayloadHash(hex(MessageDigest.getInstance("MD5").digest(headerAndPayload)));
+
+        createDownloader(build, 1).invoke(temporaryFolder.newFolder(), null);
+        Assert.assertNotNull(rpm.getSha256Sum());
+        // koji advertises payloadhash, so no checksum is asked for
+        Assert.assertNull(requests.get("/" + getPath("pkg0") + ".sha256"));
+
+        rpm.setPayloadHash(hex(MessageDigest.getInstance("MD5").digest(createRpm(headerAndPayload))));
+        try {
+            createDownloader(build, 1).invoke(temporaryFolder.newFolder(), null);
+            Assert.fail("md5 of whole rpm was accepted as payloadhash");
+        } catch (RuntimeException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("does not match"));
+        }
+    }
+
+    @Test
+    public void filesOfSameBuildAreDownloadedOncePerNode() throws Exception {
+        final File node = temporaryFolder.newFolder();
+        final List<List<String>> results = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            final KojiBuildDownloader downloader = createDownloader(createBuild(4, null), 2);
+            downloader.setArtifactCache(node.getAbsolutePath(), 1024 * 1024);
+            results.add(downloader.invoke(temporaryFolder.newFolder(), null).getRpmFiles());
+        }
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(1, requests.get("/" + getPath("pkg" + i)).get());
+            Assert.assertTrue(Files.isSameFile(new File(results.get(0).get(i)).toPath(), new File(results.get(1).get(i)).toPath()));
+        }
+    }
+}
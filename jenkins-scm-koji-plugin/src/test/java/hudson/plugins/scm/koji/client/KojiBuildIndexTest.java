@@ -0,0 +1,119 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.model.Build;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KojiBuildIndexTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Build createBuild(int id) {
+        return new Build(id, "java", "1.8.0", "" + id, "java-1.8.0-" + id, "2017-01-0" + id + " 10:00:00", null, null, null, null);
+    }
+
+    @Test
+    public void indexSurvivesReload() throws IOException {
+        File file = new File(temporaryFolder.newFolder(), "index");
+        KojiBuildIndex index = KojiBuildIndex.read(file);
+        Assert.assertNull(index.getPackageId());
+        Assert.assertNull(index.getTags(1));
+        index.setPackageId(42);
+        index.add(createBuild(1), new HashSet<>(Arrays.asList("f25", "f26")));
+        index.add(createBuild(2), Collections.emptySet());
+
+        KojiBuildIndex reloaded = KojiBuildIndex.read(file);
+        Assert.assertEquals(Integer.valueOf(42), reloaded.getPackageId());
+        Assert.assertEquals(2, reloaded.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("f25", "f26")), reloaded.getTags(1));
+        Assert.assertEquals(Collections.emptySet(), reloaded.getTags(2));
+        Assert.assertNull(reloaded.getTags(3));
+    }
+
+    @Test
+    public void refreshedTagsOverwriteIndexedOnes() throws IOException {
+        File file = new File(temporaryFolder.newFolder(), "index");
+        KojiBuildIndex index = KojiBuildIndex.read(file);
+        index.add(createBuild(1), Collections.singleton("f25"));
+        index.add(createBuild(1), Collections.singleton("f26"));
+        Assert.assertEquals(Collections.singleton("f26"), index.getTags(1));
+        Assert.assertEquals(Collections.singleton("f26"), KojiBuildIndex.read(file).getTags(1));
+    }
+
+    @Test
+    public void outdatedTagsAreNotReturned() throws IOException {
+        File file = new File(temporaryFolder.newFolder(), "index");
+        KojiBuildIndex index = KojiBuildIndex.read(file);
+        index.add(createBuild(1), Collections.singleton("f25"));
+        index.setTagTtl(0);
+        Assert.assertNull(index.getTags(1));
+        Assert.assertEquals(1, index.size());
+        index.setTagTtl(KojiBuildIndex.TAG_TTL);
+        Assert.assertEquals(Collections.singleton("f25"), index.getTags(1));
+    }
+
+    @Test
+    public void outdatedLinesAreCompacted() throws IOException {
+        File file = new File(temporaryFolder.newFolder(), "index");
+        KojiBuildIndex index = KojiBuildIndex.read(file);
+        index.setPackageId(42);
+        for (int i = 0; i < 5; i++) {
+            index.add(createBuild(1), Collections.singleton("f2" + i));
+        }
+        Assert.assertEquals(6, Files.readAllLines(file.toPath()).size());
+        KojiBuildIndex reloaded = KojiBuildIndex.read(file);
+        Assert.assertEquals(2, Files.readAllLines(file.toPath()).size());
+        Assert.assertEquals(Integer.valueOf(42), reloaded.getPackageId());
+        Assert.assertEquals(Collections.singleton("f24"), reloaded.getTags(1));
+    }
+
+    @Test
+    public void malformedLinesAreSkipped() throws IOException {
+        File file = new File(temporaryFolder.newFolder(), "index");
+        KojiBuildIndex index = KojiBuildIndex.read(file);
+        index.add(createBuild(1), Collections.singleton("f25"));
+        Files.write(file.toPath(), Arrays.asList("garbage", "package\tnotANumber"), StandardOpenOption.APPEND);
+        KojiBuildIndex reloaded = KojiBuildIndex.read(file);
+        Assert.assertEquals(1, reloaded.size());
+        Assert.assertNull(reloaded.getPackageId());
+    }
+
+    @Test
+    public void linesWithoutFetchTimeAreRead() throws IOException {
+        File file = new File(temporaryFolder.newFolder(), "index");
+        Files.write(file.toPath(), Arrays.asList(
+                "package\t42",
+                "build\t1\tjava-1.8.0-1\tjava\t1.8.0\t1\t2017-01-01 10:00:00\tf25,f26"));
+        KojiBuildIndex index = KojiBuildIndex.read(file);
+        Assert.assertEquals(Integer.valueOf(42), index.getPackageId());
+        Assert.assertEquals(1, index.size());
+        // tags of unknown age are fetched again
+        Assert.assertNull(index.getTags(1));
+    }
+
+    @Test
+    public void leastRecentlyUsedIndexesAreDropped() {
+        KojiBuildIndex first = KojiBuildIndex.get(null, "http://localhost/RPC2", "first");
+        for (int i = 0; i < KojiBuildIndex.MAX_INDEXES; i++) {
+            KojiBuildIndex.get(null, "http://localhost/RPC2", "package" + i);
+        }
+        Assert.assertNotSame(first, KojiBuildIndex.get(null, "http://localhost/RPC2", "first"));
+    }
+
+    @Test
+    public void memoryOnlyIndex() {
+        KojiBuildIndex index = KojiBuildIndex.get(null, "http://localhost/RPC2", "java");
+        Assert.assertSame(index, KojiBuildIndex.get(null, "http://localhost/RPC2", "java"));
+        Assert.assertNotSame(index, KojiBuildIndex.get(null, "http://localhost/RPC2", "other"));
+    }
+}
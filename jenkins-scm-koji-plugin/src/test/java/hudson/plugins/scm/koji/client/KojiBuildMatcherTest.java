@@ -0,0 +1,118 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.NotProcessedNvrPredicate;
+import hudson.plugins.scm.koji.RealKojiXmlRpcApi;
+import hudson.plugins.scm.koji.model.Build;
+import hudson.plugins.scm.koji.model.BuildProvider;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListBuilds;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.ListTags;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.BuildList;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.TagSet;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class KojiBuildMatcherTest {
+
+    private static final int HISTORY = 200;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Package with long history, every third build is tagged as matching.
+     */
+    private static class CountingMatcher extends KojiBuildMatcher {
+
+        private final AtomicInteger tagLookups = new AtomicInteger();
+
+        CountingMatcher(int maxBuilds, File indexDir) {
+            super(
+                    BuildMatcherTest.createKojiBuildProviders(),
+                    NotProcessedNvrPredicate.createNotProcessedNvrPredicate(new ArrayList<>()),
+                    maxBuilds,
+                    new RealKojiXmlRpcApi("b", "x86_64", "wanted", null, null),
+                    indexDir
+            );
+        }
+
+        @Override
+        protected CompletableFuture<Object> executeAsync(String url, XmlRpcRequestParams params) {
+            if (params instanceof ListBuilds) {
+                final List<Build> builds = new ArrayList<>();
+                // oldest first, as koji does not sort them by time
+                for (int i = 0; i < HISTORY; i++) {
+                    builds.add(BuildMatcherTest.createBuild(i, BuildMatcherTest.getDtfDate(i / 60, i % 60)));
+                }
+                Collections.shuffle(builds);
+                return CompletableFuture.completedFuture(toArray(new BuildList(builds).toObject()));
+            }
+            return CompletableFuture.completedFuture(1);
+        }
+
+        @Override
+        protected CompletableFuture<List<Object>> multicallAsync(String url, List<? extends XmlRpcRequestParams> params) {
+            final List<Object> results = new ArrayList<>();
+            for (XmlRpcRequestParams param : params) {
+                tagLookups.incrementAndGet();
+                final int id = ((ListTags) param).getBuildId();
+                results.add(toArray(new TagSet(Collections.singleton(id % 3 == 0 ? "wanted" : "other")).toObject()));
+            }
+            return CompletableFuture.completedFuture(results);
+        }
+
+        private static Object[] toArray(Object list) {
+            return ((List<?>) list).toArray();
+        }
+    }
+
+    @Test
+    public void onlyNewestTagsAreFetched() throws IOException {
+        CountingMatcher matcher = new CountingMatcher(3, temporaryFolder.newFolder());
+        List<Build> builds = matcher.getBuilds(BuildMatcherTest.createBuildProvider());
+        Assert.assertEquals(
+                Arrays.asList(198, 195, 192),
+                builds.stream().map(Build::getId).collect(Collectors.toList())
+        );
+        // single page is enough
+        Assert.assertEquals(10, matcher.tagLookups.get());
+    }
+
+    @Test
+    public void pagesAreWalkedUntilEnoughBuildsMatch() throws IOException {
+        CountingMatcher matcher = new CountingMatcher(20, temporaryFolder.newFolder());
+        List<Build> builds = matcher.getBuilds(BuildMatcherTest.createBuildProvider());
+        Assert.assertEquals(20, builds.size());
+        Assert.assertEquals(198, (int) builds.get(0).getId());
+        Assert.assertEquals(141, (int) builds.get(19).getId());
+        // three pages of 20 builds, possibly fourth one prefetched
+        Assert.assertTrue(matcher.tagLookups.get() >= 60);
+        Assert.assertTrue(matcher.tagLookups.get() <= 80);
+    }
+
+    @Test
+    public void resultIsSameAsOfWholeHistory() throws IOException {
+        CountingMatcher matcher = new CountingMatcher(HISTORY, temporaryFolder.newFolder());
+        BuildProvider provider = BuildMatcherTest.createBuildProvider();
+        List<Build> all = matcher.getBuilds(provider);
+        Assert.assertEquals(HISTORY / 3 + 1, all.size());
+        for (Build build : all) {
+            Assert.assertEquals(0, build.getId() % 3);
+        }
+        List<Build> newest = new CountingMatcher(5, temporaryFolder.newFolder()).getBuilds(provider);
+        Assert.assertEquals(all.subList(0, 5).stream().map(Build::getId).collect(Collectors.toList()),
+                newest.stream().map(Build::getId).collect(Collectors.toList()));
+    }
+}
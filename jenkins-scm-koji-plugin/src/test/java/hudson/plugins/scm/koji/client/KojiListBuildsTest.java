@@ -128,6 +128,18 @@ public class KojiListBuildsTest {
         );
     }
 
+    RealKojiXmlRpcApi createConfigCustomFedoraTagFirst() {
+        RealKojiXmlRpcApi api = new RealKojiXmlRpcApi(
+                "java-1.8.0-openjdk",
+                "x86_64,src",
+                "f24-updates-fakeTag f25-updates-fakeTag",
+                "",
+                null
+        );
+        api.setTagFirst(true);
+        return api;
+    }
+
     RealKojiXmlRpcApi createConfigCustomRhel7() {
         return new RealKojiXmlRpcApi(
                 "java-1.8.0-openjdk",
@@ -437,6 +449,28 @@ public class KojiListBuildsTest {
         testListMatchingBuildsCustom(worker);
     }
 
+    @Test
+    public void testListMatchingBuildsCustomTagFirst() throws Exception {
+        KojiListBuilds worker = new KojiListBuilds(
+                createLocalhostOnlyList(),
+                createConfigCustomFedoraTagFirst(),
+                new NotProcessedNvrPredicate(new ArrayList<>()),
+                10
+        );
+        testListMatchingBuildsCustom(worker);
+    }
+
+    @Test
+    public void testLiteralTags() {
+        Assert.assertEquals(Arrays.asList("f24-updates", "rhel-7.4-candidate"), KojiBuildMatcher.composeLiteralTags(" f24-updates  rhel-7\\.4-candidate "));
+        // bare dot matches any char in tag predicate, so it is not literal
+        Assert.assertNull(KojiBuildMatcher.composeLiteralTags("rhel-7.4-candidate"));
+        Assert.assertNull(KojiBuildMatcher.composeLiteralTags("f24-updates rhel-7.*-candidate"));
+        Assert.assertNull(KojiBuildMatcher.composeLiteralTags("f24-updates+"));
+        Assert.assertNull(KojiBuildMatcher.composeLiteralTags(""));
+        Assert.assertNull(KojiBuildMatcher.composeLiteralTags(null));
+    }
+
     @Test
     public void testListMatchingBuildsCustomWindows() throws Exception {
         KojiListBuilds worker = new KojiListBuilds(
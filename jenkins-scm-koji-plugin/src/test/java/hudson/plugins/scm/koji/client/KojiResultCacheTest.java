@@ -0,0 +1,148 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.model.RPM;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KojiResultCacheTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static ArrayList<String> list(String... values) {
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+    private static File[] entries(File dir) {
+        return new File(dir, KojiResultCache.CACHE_DIR).listFiles();
+    }
+
+    @Test
+    public void storedResultIsReturnedAndSurvivesReload() throws IOException {
+        File dir = temporaryFolder.newFolder();
+        KojiResultCache cache = new KojiResultCache(new File(dir, KojiResultCache.CACHE_DIR), 1024 * 1024);
+        Assert.assertNull(cache.get("a"));
+        cache.put("a", list("x", "y"));
+        Assert.assertEquals(list("x", "y"), cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+
+        KojiResultCache reloaded = new KojiResultCache(new File(dir, KojiResultCache.CACHE_DIR), 1024 * 1024);
+        Assert.assertEquals(list("x", "y"), reloaded.get("a"));
+        Assert.assertEquals(cache.size(), reloaded.size());
+    }
+
+    @Test
+    public void corruptedEntryIsDropped() throws IOException {
+        File dir = temporaryFolder.newFolder();
+        KojiResultCache cache = new KojiResultCache(new File(dir, KojiResultCache.CACHE_DIR), 1024 * 1024);
+        cache.put("a", list("x"));
+        File[] files = entries(dir);
+        Assert.assertEquals(1, files.length);
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            file.seek(file.length() - 1);
+            file.write(file.read() ^ 0xff);
+        }
+        KojiResultCache reloaded = new KojiResultCache(new File(dir, KojiResultCache.CACHE_DIR), 1024 * 1024);
+        Assert.assertNull(reloaded.get("a"));
+        Assert.assertEquals(0, reloaded.size());
+        Assert.assertEquals(0, entries(dir).length);
+    }
+
+    @Test
+    public void rpmsAreStored() throws IOException {
+        File dir = temporaryFolder.newFolder();
+        KojiResultCache cache = new KojiResultCache(new File(dir, KojiResultCache.CACHE_DIR), 1024 * 1024);
+        cache.put("a", Arrays.asList(new RPM("java", "1.8.0", "1.fc24", "java-1.8.0-1.fc24", "x86_64", "java-1.8.0-1.fc24.x86_64.rpm")));
+        List<?> result = new KojiResultCache(new File(dir, KojiResultCache.CACHE_DIR), 1024 * 1024).get("a");
+        Assert.assertEquals(1, result.size());
+        RPM rpm = (RPM) result.get(0);
+        Assert.assertEquals("java-1.8.0-1.fc24", rpm.getNvr());
+        Assert.assertEquals("x86_64", rpm.getArch());
+    }
+
+    @Test
+    public void serializedObjectsAreNotRead() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        File cacheDir = new File(dir, KojiResultCache.CACHE_DIR);
+        KojiResultCache cache = new KojiResultCache(cacheDir, 1024 * 1024);
+        cache.put("a", list("x"));
+        File entry = entries(dir)[0];
+        // entry of valid checksum, but java serialized content
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(list("x"));
+        }
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+        StringBuilder checksum = new StringBuilder();
+        for (byte b : digest) {
+            checksum.append(String.format("%02x", b));
+        }
+        try (OutputStream output = new FileOutputStream(entry)) {
+            output.write((checksum + "\n").getBytes(StandardCharsets.US_ASCII));
+            bytes.writeTo(output);
+        }
+        KojiResultCache reloaded = new KojiResultCache(cacheDir, 1024 * 1024);
+        Assert.assertNull(reloaded.get("a"));
+        Assert.assertEquals(0, entries(dir).length);
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+        File dir = temporaryFolder.newFolder();
+        KojiResultCache probe = new KojiResultCache(new File(temporaryFolder.newFolder(), KojiResultCache.CACHE_DIR), 1024 * 1024);
+        probe.put("a", list("x"));
+        long entrySize = probe.size();
+
+        KojiResultCache cache = new KojiResultCache(new File(dir, KojiResultCache.CACHE_DIR), entrySize * 2);
+        cache.put("a", list("x"));
+        cache.put("b", list("x"));
+        Assert.assertNotNull(cache.get("a"));
+        cache.put("c", list("x"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNotNull(cache.get("c"));
+        Assert.assertEquals(entrySize * 2, cache.size());
+        Assert.assertEquals(2, entries(dir).length);
+    }
+
+    @Test
+    public void leftOverTmpFilesAreRemoved() throws IOException {
+        File dir = temporaryFolder.newFolder();
+        File cacheDir = new File(dir, KojiResultCache.CACHE_DIR);
+        Assert.assertTrue(cacheDir.mkdirs());
+        Assert.assertTrue(new File(cacheDir, "abc.tmp").createNewFile());
+        KojiResultCache cache = new KojiResultCache(cacheDir, 1024 * 1024);
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, entries(dir).length);
+    }
+
+    @Test
+    public void statsAreSharedPerJob() throws IOException {
+        File job = temporaryFolder.newFolder();
+        KojiResultCache.getStats(job).hit();
+        KojiResultCache.getStats(job).miss();
+        KojiResultCache.getStats(job).miss();
+        Assert.assertEquals(1, KojiResultCache.getStats(job).getHits());
+        Assert.assertEquals(2, KojiResultCache.getStats(job).getMisses());
+        Assert.assertEquals(0, KojiResultCache.getStats(temporaryFolder.newFolder()).getHits());
+        KojiResultCache.Stats poll = new KojiResultCache.Stats();
+        poll.hit();
+        KojiResultCache.getStats(job).add(poll);
+        Assert.assertEquals(2, KojiResultCache.getStats(job).getHits());
+        Assert.assertEquals("2 hits, 2 misses", KojiResultCache.getStats(job).toString());
+    }
+}
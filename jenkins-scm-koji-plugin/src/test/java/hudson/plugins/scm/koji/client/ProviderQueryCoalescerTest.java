@@ -0,0 +1,163 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.NotProcessedNvrPredicate;
+import hudson.plugins.scm.koji.model.Build;
+import hudson.plugins.scm.koji.model.BuildProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static hudson.plugins.scm.koji.client.BuildMatcherTest.createBuild;
+import static hudson.plugins.scm.koji.client.BuildMatcherTest.createKojiBuildProviders;
+import static hudson.plugins.scm.koji.client.BuildMatcherTest.getDtfDate;
+
+public class ProviderQueryCoalescerTest {
+
+    @Before
+    public void clear() {
+        ProviderQueryCoalescer.clear();
+    }
+
+    private static BuildMatcher createMatcher(AtomicInteger queries, List<String> processed) {
+        BuildMatcher bm = new BuildMatcher(createKojiBuildProviders(), NotProcessedNvrPredicate.createNotProcessedNvrPredicate(processed), 3) {
+            @Override
+            List<Build> getBuilds(BuildProvider buildProvider) {
+                queries.incrementAndGet();
+                return Arrays.asList(createBuild(1, getDtfDate(10, 10)),
+                        createBuild(2, getDtfDate(9, 9)));
+            }
+
+            @Override
+            String getQueryKey(BuildProvider buildProvider) {
+                return "same";
+            }
+
+            @Override
+            Build getBuild(Build build) {
+                return build;
+            }
+        };
+        bm.setQueryCacheTtl(60000);
+        return bm;
+    }
+
+    @Test
+    public void jobsShareQueryButNotProcessedBuilds() {
+        AtomicInteger queries = new AtomicInteger();
+        List<Build> first = BuildMatcher.listBuilds(createMatcher(queries, new ArrayList<>())).collect(Collectors.toList());
+        List<Build> second = BuildMatcher.listBuilds(createMatcher(queries, Arrays.asList("b-1-1"))).collect(Collectors.toList());
+        Assert.assertEquals(1, queries.get());
+        Assert.assertEquals(2, first.size());
+        Assert.assertEquals(1, second.size());
+        Assert.assertEquals("b-1-2", second.get(0).getNvr());
+    }
+
+    @Test
+    public void noTtlNoSharing() {
+        AtomicInteger queries = new AtomicInteger();
+        BuildMatcher first = createMatcher(queries, new ArrayList<>());
+        first.setQueryCacheTtl(0);
+        BuildMatcher second = createMatcher(queries, new ArrayList<>());
+        second.setQueryCacheTtl(0);
+        BuildMatcher.listBuilds(first).collect(Collectors.toList());
+        BuildMatcher.listBuilds(second).collect(Collectors.toList());
+        Assert.assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void expiredResultIsQueriedAgain() throws InterruptedException {
+        AtomicInteger queries = new AtomicInteger();
+        ProviderQueryCoalescer.get("key", 50, () -> Collections.singletonList(createBuild(queries.incrementAndGet(), getDtfDate(1, 1))));
+        ProviderQueryCoalescer.get("key", 50, () -> Collections.singletonList(createBuild(queries.incrementAndGet(), getDtfDate(1, 1))));
+        Assert.assertEquals(1, queries.get());
+        Thread.sleep(100);
+        ProviderQueryCoalescer.get("key", 50, () -> Collections.singletonList(createBuild(queries.incrementAndGet(), getDtfDate(1, 1))));
+        Assert.assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void failedQueryIsNotKept() {
+        try {
+            ProviderQueryCoalescer.get("key", 60000, () -> {
+                throw new IllegalStateException("hub is down");
+            });
+            Assert.fail("exception expected");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        List<Build> builds = ProviderQueryCoalescer.get("key", 60000, () -> Collections.singletonList(createBuild(1, getDtfDate(1, 1))));
+        Assert.assertEquals(1, builds.size());
+    }
+
+    @Test
+    public void concurrentQueriesWaitForRunningOne() throws Exception {
+        AtomicInteger queries = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Build>>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> ProviderQueryCoalescer.get("key", 60000, () -> {
+                queries.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return Collections.singletonList(createBuild(1, getDtfDate(1, 1)));
+            })));
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> ProviderQueryCoalescer.get("key", 60000, () -> {
+                    queries.incrementAndGet();
+                    return Collections.emptyList();
+                })));
+            }
+            release.countDown();
+            for (Future<List<Build>> future : futures) {
+                Assert.assertEquals(1, future.get(10, TimeUnit.SECONDS).size());
+            }
+            Assert.assertEquals(1, queries.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancelledCallerDoesNotFailOthers() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Build>> first = executor.submit(() -> ProviderQueryCoalescer.get("key", 60000, () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return Collections.singletonList(createBuild(1, getDtfDate(1, 1)));
+            }));
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<List<Build>> second = executor.submit(() -> ProviderQueryCoalescer.get("key", 60000, Collections::emptyList));
+            // deadline of the first job passed
+            first.cancel(true);
+            release.countDown();
+            Assert.assertEquals(1, second.get(10, TimeUnit.SECONDS).size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
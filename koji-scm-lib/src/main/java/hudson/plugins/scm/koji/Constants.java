@@ -17,6 +17,9 @@ abstract public class Constants {
     public static final String listTags = "listTags";
     public static final String listRPMs = "listRPMs";
     public static final String listArchives = "listArchives";
+    public static final String listTagged = "listTagged";
+    public static final String tag = "tag";
+    public static final String packageLabel = "package";
     public static final String buildID = "buildID";
     public static final String arches = "arches";
     public static final String build = "build";
@@ -31,9 +34,23 @@ abstract public class Constants {
     public static final String release = "release";
     public static final String arch = "arch";
     public static final String filename = "filename";
+    public static final String payloadhash = "payloadhash";
 
     public static final String getBuildList = "getBuildList";
     public static final String getBuildDetail = "getBuildDetail";
+    public static final String getChangeToken = "getChangeToken";
+
+    public static final String multicall = "system.multicall";
+    public static final String methodName = "methodName";
+    public static final String params = "params";
+    public static final String faultCode = "faultCode";
+    public static final String faultString = "faultString";
+
+    // fake-koji -> jenkins notification about arrived build
+    public static final String notifyUrl = "koji-notify";
+    public static final String notifyBuild = "build";
+    public static final String project = "project";
+    public static final String notifyToken = "token";
 
     public static final DateTimeFormatter DTF = new DateTimeFormatterBuilder()
             .appendValue(ChronoField.YEAR, 4)
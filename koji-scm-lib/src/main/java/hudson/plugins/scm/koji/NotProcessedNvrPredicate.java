@@ -25,9 +25,7 @@ package hudson.plugins.scm.koji;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -41,27 +39,15 @@ public class NotProcessedNvrPredicate implements Predicate<String>, java.io.Seri
 
     private static final Logger LOG = LoggerFactory.getLogger(NotProcessedNvrPredicate.class);
 
+    /**
+     * Histories of both files are cached and only their new lines are read.
+     * The sets are shared with other polls, not copied.
+     */
     public static Predicate<String> createNotProcessedNvrPredicateFromFile(File processedNvrFile, File globalprocessedNvrFile) throws IOException {
-        List<String> singleJobProcessed = fileToList(processedNvrFile);
-        List<String> globalProcessed = fileToList(globalprocessedNvrFile);
-        List<String> joinedList = new ArrayList<>(singleJobProcessed.size()+globalProcessed.size());
-        joinedList.addAll(singleJobProcessed);
-        joinedList.addAll(globalProcessed);
-        return new NotProcessedNvrPredicate(joinedList);
-    }
-    
-    private static List<String> fileToList(File processedNvrFile) throws IOException {    
-        if (processedNvrFile!= null && processedNvrFile.exists()) {
-            if (processedNvrFile.isFile() && processedNvrFile.canRead()) {
-                try (Stream<String> stream = Files.lines(processedNvrFile.toPath(), StandardCharsets.UTF_8)) {
-                    return streamToList(stream);
-                }
-            } else {
-                throw new IOException("Processed NVRs is not readable: " + processedNvrFile.getAbsolutePath());
-            }
-        } else {
-            return new ArrayList<>(0);
-        }
+        final Set<String> singleJobProcessed = processedNvrFile == null ? Collections.emptySet() : ProcessedNvrHistory.of(processedNvrFile);
+        final Set<String> globalProcessed = globalprocessedNvrFile == null ? Collections.emptySet() : ProcessedNvrHistory.of(globalprocessedNvrFile);
+        LOG.info("Loaded " + singleJobProcessed.size() + " processed NVRs of job and " + globalProcessed.size() + " global ones");
+        return new NotProcessedNvrPredicate(singleJobProcessed, globalProcessed);
     }
 
     public static List<String> streamToList(Stream<String> stream) throws IOException {
@@ -73,9 +59,11 @@ public class NotProcessedNvrPredicate implements Predicate<String>, java.io.Seri
     }
 
     private final Set<String> processedNvrs;
+    private final Set<String> globalProcessedNvrs;
 
-    private NotProcessedNvrPredicate(Set<String> processedNvrs) {
+    private NotProcessedNvrPredicate(Set<String> processedNvrs, Set<String> globalProcessedNvrs) {
         this.processedNvrs = processedNvrs;
+        this.globalProcessedNvrs = globalProcessedNvrs;
     }
 
     public NotProcessedNvrPredicate(List<String> processedNvrs) {
@@ -90,12 +78,13 @@ public class NotProcessedNvrPredicate implements Predicate<String>, java.io.Seri
             }
         }
         this.processedNvrs = nvrsSet;
+        this.globalProcessedNvrs = Collections.emptySet();
     }
 
     @Override
     public boolean test(String nvr) {
-        LOG.info("Searching for " + nvr + " in " + processedNvrs.toString());
-        boolean result = !processedNvrs.contains(nvr);
+        // the sets may be huge, so they are not logged
+        boolean result = !processedNvrs.contains(nvr) && !globalProcessedNvrs.contains(nvr);
         LOG.info("found[" + nvr + "]: " + !result);
         return result;
     }
@@ -0,0 +1,167 @@
+package hudson.plugins.scm.koji;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Processed NVRs of a processed.txt file, kept in memory between polls.
+ * <p>
+ * The file is usually only appended to, so when it changes and the part read
+ * before is still the same (by its checksum), only the appended part is read.
+ * When it is replaced (other file key), shrinks or is edited in place (e.g. to
+ * remove an NVR, so its build is processed again), it is read again from the
+ * beginning. When neither its size nor its modification time changed, nothing
+ * is read at all.
+ * <p>
+ * Each line is an NVR, optionally followed by space and anything else. Only
+ * lines terminated by new line count, unfinished last line may still be being
+ * written, so it is left for the next read.
+ */
+public class ProcessedNvrHistory {
+
+    private static final Map<File, ProcessedNvrHistory> HISTORIES = new ConcurrentHashMap<>();
+
+    private final File file;
+    // grows only, so snapshots handed out stay valid
+    private Set<String> nvrs = ConcurrentHashMap.newKeySet();
+    private Object fileKey;
+    private long lastModified = -1;
+    private long size = -1;
+    // end of last complete line read
+    private long offset;
+    // checksum of the part of the file before offset
+    private CRC32 readChecksum = new CRC32();
+
+    ProcessedNvrHistory(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return processed NVRs of the file, shared with other callers asking for
+     * the same file, empty if the file does not exist
+     */
+    public static Set<String> of(File processedNvrFile) throws IOException {
+        final File key = processedNvrFile.getAbsoluteFile();
+        return HISTORIES.computeIfAbsent(key, ProcessedNvrHistory::new).read();
+    }
+
+    static void clear() {
+        HISTORIES.clear();
+    }
+
+    synchronized Set<String> read() throws IOException {
+        if (!file.exists()) {
+            reset(null);
+            return nvrs;
+        }
+        if (!file.isFile() || !file.canRead()) {
+            throw new IOException("Processed NVRs is not readable: " + file.getAbsolutePath());
+        }
+        final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        final long currentSize = attributes.size();
+        final long currentLastModified = attributes.lastModifiedTime().toMillis();
+        if (!Objects.equals(fileKey, attributes.fileKey()) || currentSize < offset) {
+            reset(attributes.fileKey());
+        } else if (currentSize == size && currentLastModified == lastModified) {
+            return nvrs;
+        } else if (!isReadPartUnchanged()) {
+            reset(attributes.fileKey());
+        }
+        readFrom(offset);
+        size = currentSize;
+        lastModified = currentLastModified;
+        return nvrs;
+    }
+
+    private void reset(Object newFileKey) {
+        // callers may still hold the old set
+        if (!nvrs.isEmpty()) {
+            nvrs = ConcurrentHashMap.newKeySet();
+        }
+        fileKey = newFileKey;
+        lastModified = -1;
+        size = -1;
+        offset = 0;
+        readChecksum = new CRC32();
+    }
+
+    private boolean isReadPartUnchanged() throws IOException {
+        if (offset == 0) {
+            return true;
+        }
+        final CRC32 checksum = new CRC32();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(offset, 64 * 1024));
+            long position = 0;
+            while (position < offset) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), offset - position));
+                final int read = channel.read(buffer, position);
+                if (read < 0) {
+                    return false;
+                }
+                checksum.update(buffer.array(), 0, read);
+                position += read;
+            }
+        }
+        return checksum.getValue() == readChecksum.getValue();
+    }
+
+    private void readFrom(long position) throws IOException {
+        final byte[] content;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long length = channel.size() - position;
+            if (length <= 0) {
+                return;
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Processed NVRs is too big: " + file.getAbsolutePath());
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            content = buffer.array();
+        }
+        int lineStart = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] == '\n') {
+                addLine(content, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        // unfinished last line is read once it is finished
+        readChecksum.update(content, 0, lineStart);
+        offset = position + lineStart;
+    }
+
+    private void addLine(byte[] content, int start, int end) {
+        while (start < end && isWhitespace(content[start])) {
+            start++;
+        }
+        int nvrEnd = start;
+        while (nvrEnd < end && !isWhitespace(content[nvrEnd])) {
+            nvrEnd++;
+        }
+        if (nvrEnd > start) {
+            nvrs.add(new String(content, start, nvrEnd - start, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+}
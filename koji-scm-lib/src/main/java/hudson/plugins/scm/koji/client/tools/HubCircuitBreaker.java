@@ -0,0 +1,197 @@
+package hudson.plugins.scm.koji.client.tools;
+
+import org.apache.xmlrpc.client.XmlRpcHttpTransportException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Health of single hub, as seen by XML-RPC calls made by this jvm.
+ * <p>
+ * After {@link XmlRpcClientPool.Settings#getFailureThreshold()} consecutive
+ * failures (the hub did not answer, or answered by server error), the hub is
+ * considered down and calls to it fail right away, instead of waiting for
+ * timeouts. Once {@link XmlRpcClientPool.Settings#getOpenTime()} passes,
+ * single call is let through as a probe: if it succeeds, the hub is up again,
+ * otherwise it stays down for another period.
+ * <p>
+ * Faults returned by the hub do not count as failures, the hub is alive.
+ */
+public final class HubCircuitBreaker {
+
+    public enum State {
+        /**
+         * Calls pass.
+         */
+        CLOSED,
+        /**
+         * Calls fail right away.
+         */
+        OPEN,
+        /**
+         * Single probe call is running, others fail right away.
+         */
+        HALF_OPEN
+    }
+
+    private static final Map<String, HubCircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private final String url;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private long rejected;
+    private String lastFailure;
+    private long lastFailureTime;
+
+    private HubCircuitBreaker(String url) {
+        this.url = url;
+    }
+
+    static HubCircuitBreaker get(String url) {
+        return BREAKERS.computeIfAbsent(url, HubCircuitBreaker::new);
+    }
+
+    /**
+     * @return state of all hubs called so far, by this jvm
+     */
+    public static List<Status> getStatuses() {
+        final List<Status> statuses = new ArrayList<>(BREAKERS.size());
+        for (HubCircuitBreaker breaker : BREAKERS.values()) {
+            statuses.add(breaker.getStatus());
+        }
+        statuses.sort((s1, s2) -> s1.getUrl().compareTo(s2.getUrl()));
+        return statuses;
+    }
+
+    static void clear() {
+        BREAKERS.clear();
+    }
+
+    /**
+     * @return true if the failure means the hub may be down (or overloaded),
+     * so the call may succeed later
+     */
+    static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+            if (cause instanceof XmlRpcHttpTransportException) {
+                return ((XmlRpcHttpTransportException) cause).getStatusCode() >= 500;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Called before each call.
+     *
+     * @throws RuntimeException if the hub is considered down
+     */
+    synchronized void acquire(XmlRpcClientPool.Settings settings) {
+        if (state == State.CLOSED || settings.getFailureThreshold() <= 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        if (state == State.OPEN && now >= openedAt + settings.getOpenTime()) {
+            // this call is the probe
+            state = State.HALF_OPEN;
+            return;
+        }
+        rejected++;
+        final long retryIn = Math.max(0, openedAt + settings.getOpenTime() - now);
+        throw new RuntimeException("Hub " + url + " is considered down after " + failures + " failures, next call in "
+                + (retryIn / 1000) + "s, last failure: " + lastFailure);
+    }
+
+    /**
+     * Called when the hub answered, including faults.
+     */
+    synchronized void responded() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Called when the hub did not answer, see {@link #isTransient(Throwable)}.
+     */
+    synchronized void failed(Throwable failure, XmlRpcClientPool.Settings settings) {
+        failures++;
+        lastFailure = failure.toString();
+        lastFailureTime = System.currentTimeMillis();
+        if (state == State.HALF_OPEN || (settings.getFailureThreshold() > 0 && failures >= settings.getFailureThreshold())) {
+            state = State.OPEN;
+            openedAt = lastFailureTime;
+        }
+    }
+
+    synchronized Status getStatus() {
+        return new Status(url, state, failures, state == State.CLOSED ? 0 : openedAt, rejected, lastFailure, lastFailureTime);
+    }
+
+    /**
+     * Snapshot of state of single hub.
+     */
+    public static final class Status {
+
+        private final String url;
+        private final State state;
+        private final int failures;
+        private final long openedAt;
+        private final long rejected;
+        private final String lastFailure;
+        private final long lastFailureTime;
+
+        Status(String url, State state, int failures, long openedAt, long rejected, String lastFailure, long lastFailureTime) {
+            this.url = url;
+            this.state = state;
+            this.failures = failures;
+            this.openedAt = openedAt;
+            this.rejected = rejected;
+            this.lastFailure = lastFailure;
+            this.lastFailureTime = lastFailureTime;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return number of consecutive failures
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return when the hub was considered down, null if it is not
+         */
+        public Date getOpenedAt() {
+            return openedAt == 0 ? null : new Date(openedAt);
+        }
+
+        /**
+         * @return number of calls failed right away, since start of the jvm
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        public String getLastFailure() {
+            return lastFailure;
+        }
+
+        public Date getLastFailureTime() {
+            return lastFailureTime == 0 ? null : new Date(lastFailureTime);
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package hudson.plugins.scm.koji.client.tools;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.parser.TypeParser;
+import org.apache.xmlrpc.parser.TypeParserImpl;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.StructMapper;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Parses array returned by XML-RPC method as it is read, mapping its structs
+ * straight to objects by {@link StructMapper}. Struct members, which the mapper
+ * does not need, are skipped, so big responses (e.g. all builds of package) are
+ * never held in memory as nested arrays and maps.
+ * <p>
+ * Values without shape (e.g. faults or results of other calls in
+ * system.multicall) are parsed by the usual parsers of the type factory.
+ */
+class StreamingResponseParser extends TypeParserImpl {
+
+    private static final String VALUE = "value";
+    private static final String ARRAY = "array";
+    private static final String STRUCT = "struct";
+    private static final String MEMBER = "member";
+    private static final String NAME = "name";
+
+    private final GenericParsers genericParsers;
+    private final ArrayHandler root;
+
+    /**
+     * Usual parsers of the type factory.
+     */
+    interface GenericParsers {
+
+        TypeParser getParser(String uri, String localName) throws SAXException;
+    }
+
+    /**
+     * @param genericParsers parsers of values without shape
+     * @param shape shape of the array
+     */
+    StreamingResponseParser(GenericParsers genericParsers, ResponseShape shape) {
+        this.genericParsers = genericParsers;
+        this.root = new ArrayHandler(shape);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        root.startElement(uri, localName, qName, attributes);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        root.endElement(uri, localName, qName);
+        if (root.isDone()) {
+            setResult(root.getResult());
+        }
+    }
+
+    @Override
+    public void characters(char[] chars, int start, int length) throws SAXException {
+        root.characters(chars, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] chars, int start, int length) throws SAXException {
+        root.characters(chars, start, length);
+    }
+
+    /**
+     * Expected shape of value, either struct to be mapped or array of values
+     * with their own shapes.
+     */
+    static final class ResponseShape {
+
+        private final StructMapper<?> mapper;
+        private final IntFunction<ResponseShape> elements;
+        private final boolean asList;
+
+        private ResponseShape(StructMapper<?> mapper, IntFunction<ResponseShape> elements, boolean asList) {
+            this.mapper = mapper;
+            this.elements = elements;
+            this.asList = asList;
+        }
+
+        /**
+         * @return shape of array of structs, which is parsed to list of
+         * mapped objects
+         */
+        static ResponseShape structs(StructMapper<?> mapper) {
+            final ResponseShape struct = new ResponseShape(mapper, null, false);
+            return new ResponseShape(null, index -> struct, true);
+        }
+
+        /**
+         * @param shapes shapes of results of the calls, null if the result is
+         * to be parsed as usual
+         * @return shape of system.multicall result, which is parsed to array of
+         * single element arrays (or fault structs), as usual
+         */
+        static ResponseShape multicall(List<ResponseShape> shapes) {
+            return new ResponseShape(null, index -> {
+                final ResponseShape result = index < shapes.size() ? shapes.get(index) : null;
+                return result == null ? null : new ResponseShape(null, i -> result, false);
+            }, false);
+        }
+    }
+
+    /**
+     * Handles single element and everything inside it.
+     */
+    private abstract static class Handler {
+
+        private boolean done;
+
+        abstract void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException;
+
+        abstract void endElement(String uri, String localName, String qName) throws SAXException;
+
+        abstract void characters(char[] chars, int start, int length) throws SAXException;
+
+        abstract Object getResult() throws SAXException;
+
+        void setDone() {
+            done = true;
+        }
+
+        boolean isDone() {
+            return done;
+        }
+    }
+
+    /**
+     * Handles one of nested elements by child handler.
+     */
+    private abstract static class CompositeHandler extends Handler {
+
+        private Handler child;
+
+        void setChild(Handler child) {
+            this.child = child;
+        }
+
+        @Override
+        void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if (child != null) {
+                child.startElement(uri, localName, qName, attributes);
+            } else {
+                start(uri, localName, qName, attributes);
+            }
+        }
+
+        @Override
+        void endElement(String uri, String localName, String qName) throws SAXException {
+            if (child != null) {
+                child.endElement(uri, localName, qName);
+                if (child.isDone()) {
+                    final Handler finished = child;
+                    child = null;
+                    childDone(finished);
+                }
+            } else {
+                end(uri, localName, qName);
+            }
+        }
+
+        @Override
+        void characters(char[] chars, int start, int length) throws SAXException {
+            if (child != null) {
+                child.characters(chars, start, length);
+            } else {
+                text(chars, start, length);
+            }
+        }
+
+        abstract void start(String uri, String localName, String qName, Attributes attributes) throws SAXException;
+
+        abstract void end(String uri, String localName, String qName) throws SAXException;
+
+        void text(char[] chars, int start, int length) throws SAXException {
+        }
+
+        abstract void childDone(Handler child) throws SAXException;
+    }
+
+    /**
+     * Array of values of shapes given by array shape.
+     */
+    private class ArrayHandler extends CompositeHandler {
+
+        private final ResponseShape shape;
+        private final List<Object> values = new ArrayList<>();
+
+        ArrayHandler(ResponseShape shape) {
+            this.shape = shape;
+        }
+
+        @Override
+        void start(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            // array and data elements carry nothing
+            if (VALUE.equals(localName)) {
+                final Handler handler = new ValueHandler(shape.elements.apply(values.size()));
+                setChild(handler);
+                handler.startElement(uri, localName, qName, attributes);
+            }
+        }
+
+        @Override
+        void end(String uri, String localName, String qName) {
+            if (ARRAY.equals(localName)) {
+                setDone();
+            }
+        }
+
+        @Override
+        void childDone(Handler child) throws SAXException {
+            values.add(child.getResult());
+        }
+
+        @Override
+        Object getResult() {
+            return shape.asList ? values : values.toArray();
+        }
+    }
+
+    /**
+     * Value element, either with type element inside or with plain text, which
+     * is string.
+     */
+    private class ValueHandler extends CompositeHandler {
+
+        private final ResponseShape shape;
+        private final StringBuilder text = new StringBuilder();
+        private boolean started;
+        private boolean typed;
+        private Object result;
+
+        ValueHandler(ResponseShape shape) {
+            this.shape = shape;
+        }
+
+        @Override
+        void start(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if (!started) {
+                // the value element itself
+                started = true;
+                return;
+            }
+            typed = true;
+            final Handler handler;
+            if (shape != null && shape.mapper != null && STRUCT.equals(localName)) {
+                handler = new StructHandler(shape.mapper);
+            } else if (shape != null && shape.elements != null && ARRAY.equals(localName)) {
+                handler = new ArrayHandler(shape);
+            } else {
+                handler = new GenericHandler(genericParsers.getParser(uri, localName));
+            }
+            setChild(handler);
+            handler.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        void text(char[] chars, int start, int length) {
+            if (!typed) {
+                text.append(chars, start, length);
+            }
+        }
+
+        @Override
+        void end(String uri, String localName, String qName) {
+            if (VALUE.equals(localName)) {
+                if (!typed) {
+                    result = text.toString();
+                }
+                setDone();
+            }
+        }
+
+        @Override
+        void childDone(Handler child) throws SAXException {
+            result = child.getResult();
+        }
+
+        @Override
+        Object getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * Struct mapped by mapper, unknown members are skipped.
+     */
+    private class StructHandler extends CompositeHandler {
+
+        private final StructMapper<?> mapper;
+        private final Map<String, Object> members = new HashMap<>();
+        private final StringBuilder name = new StringBuilder();
+        private boolean inName;
+        private String memberName;
+
+        StructHandler(StructMapper<?> mapper) {
+            this.mapper = mapper;
+        }
+
+        @Override
+        void start(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            switch (localName) {
+                case STRUCT:
+                    break;
+                case MEMBER:
+                    memberName = null;
+                    break;
+                case NAME:
+                    inName = true;
+                    name.setLength(0);
+                    break;
+                case VALUE:
+                    if (memberName == null) {
+                        throw new SAXParseException("Struct member without name", getDocumentLocator());
+                    }
+                    final Handler handler = mapper.getMembers().contains(memberName) ? new ValueHandler(null) : new SkippingHandler();
+                    setChild(handler);
+                    handler.startElement(uri, localName, qName, attributes);
+                    break;
+                default:
+                    throw new SAXParseException("Unexpected element in struct: " + qName, getDocumentLocator());
+            }
+        }
+
+        @Override
+        void text(char[] chars, int start, int length) {
+            if (inName) {
+                name.append(chars, start, length);
+            }
+        }
+
+        @Override
+        void end(String uri, String localName, String qName) {
+            if (NAME.equals(localName)) {
+                inName = false;
+                memberName = name.toString();
+            } else if (STRUCT.equals(localName)) {
+                setDone();
+            }
+        }
+
+        @Override
+        void childDone(Handler child) throws SAXException {
+            if (child instanceof ValueHandler) {
+                members.put(memberName, child.getResult());
+            }
+        }
+
+        @Override
+        Object getResult() {
+            return mapper.map(members);
+        }
+    }
+
+    /**
+     * Skips element and everything inside it.
+     */
+    private static class SkippingHandler extends Handler {
+
+        private int depth;
+
+        @Override
+        void startElement(String uri, String localName, String qName, Attributes attributes) {
+            depth++;
+        }
+
+        @Override
+        void endElement(String uri, String localName, String qName) {
+            if (--depth == 0) {
+                setDone();
+            }
+        }
+
+        @Override
+        void characters(char[] chars, int start, int length) {
+        }
+
+        @Override
+        Object getResult() {
+            return null;
+        }
+    }
+
+    /**
+     * Passes element to usual parser of its type.
+     */
+    private static class GenericHandler extends Handler {
+
+        private final TypeParser parser;
+        private int depth;
+
+        GenericHandler(TypeParser parser) throws SAXException {
+            this.parser = parser;
+            parser.startDocument();
+        }
+
+        @Override
+        void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            depth++;
+            parser.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        void endElement(String uri, String localName, String qName) throws SAXException {
+            parser.endElement(uri, localName, qName);
+            if (--depth == 0) {
+                parser.endDocument();
+                setDone();
+            }
+        }
+
+        @Override
+        void characters(char[] chars, int start, int length) throws SAXException {
+            parser.characters(chars, start, length);
+        }
+
+        @Override
+        Object getResult() throws SAXException {
+            try {
+                return parser.getResult();
+            } catch (XmlRpcException ex) {
+                throw new SAXException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package hudson.plugins.scm.koji.client.tools;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.XmlRpcRequest;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientConfig;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
+import org.apache.xmlrpc.client.XmlRpcCommonsTransport;
+import org.apache.xmlrpc.client.XmlRpcCommonsTransportFactory;
+import org.apache.xmlrpc.client.XmlRpcHttpClientConfig;
+import org.apache.xmlrpc.client.XmlRpcTransport;
+import org.apache.xmlrpc.common.XmlRpcStreamRequestConfig;
+import org.apache.xmlrpc.util.HttpUtil;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * XML-RPC clients shared by all calls to the same hub.
+ * <p>
+ * Each hub has its own pool of persistent HTTP connections, so consecutive
+ * calls do not pay for new TCP (and TLS) connection. Clients are thread safe,
+ * so concurrent polls share them too.
+ * <p>
+ * Every call asks for gzip compressed response, hubs not supporting it just
+ * ignore that. Requests are compressed only once the hub announced it accepts
+ * them (by Accept-Encoding header of its response, as fake-koji does).
+ */
+public final class XmlRpcClientPool {
+
+    private static final Map<String, PooledClient> CLIENTS = new ConcurrentHashMap<>();
+    private static final TrafficCounter TOTAL = new TrafficCounter();
+    private static volatile Settings settings = new Settings(
+            Settings.DEFAULT_CONNECTION_TIMEOUT,
+            Settings.DEFAULT_REPLY_TIMEOUT,
+            Settings.DEFAULT_POOL_SIZE
+    );
+
+    private XmlRpcClientPool() {
+    }
+
+    /**
+     * Clients created with previous settings are dropped, calls running on
+     * them finish normally, then their connections are shut down.
+     */
+    public static void configure(Settings newSettings) {
+        if (newSettings == null || newSettings.equals(settings)) {
+            return;
+        }
+        settings = newSettings;
+        for (String key : CLIENTS.keySet()) {
+            final PooledClient client = CLIENTS.remove(key);
+            if (client != null) {
+                client.retire();
+            }
+        }
+    }
+
+    public static Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * @param url xml-rpc url of the hub
+     * @param timeout if not null, overrides both connection and reply timeout
+     * of settings, in milliseconds
+     */
+    static XmlRpcClient get(String url, Integer timeout) {
+        final Settings current = settings;
+        final int connectionTimeout = timeout == null ? current.connectionTimeout : timeout;
+        final int replyTimeout = timeout == null ? current.replyTimeout : timeout;
+        final String key = url + " " + connectionTimeout + " " + replyTimeout + " " + current.poolSize;
+        return CLIENTS.computeIfAbsent(key, k -> new PooledClient(url, connectionTimeout, replyTimeout, current.poolSize)).client;
+    }
+
+    /**
+     * @param client client returned by {@link #get(String, Integer)}
+     * @param counter counter to add traffic of the call to, besides the total
+     * one, may be null
+     * @return config of single call of the client
+     */
+    static XmlRpcClientConfig getCallConfig(XmlRpcClient client, TrafficCounter counter) {
+        if (counter == null) {
+            return client.getClientConfig();
+        }
+        // clone keeps the class, so it is counting config too
+        final CountingConfig config = (CountingConfig) ((CountingConfig) client.getClientConfig()).cloneMe();
+        config.counter = counter;
+        return config;
+    }
+
+    /**
+     * @return traffic of all calls made so far, to all hubs
+     */
+    public static Traffic getTraffic() {
+        return TOTAL.getTraffic();
+    }
+
+    static void clear() {
+        for (PooledClient client : CLIENTS.values()) {
+            client.connectionManager.shutdown();
+        }
+        CLIENTS.clear();
+    }
+
+    static class PooledClient {
+
+        private final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+        private final XmlRpcClient client = new XmlRpcClient();
+        private volatile boolean acceptsGzipRequests;
+        private int runningCalls;
+        private boolean retired;
+        private boolean shutDown;
+
+        PooledClient(String url, int connectionTimeout, int replyTimeout, int poolSize) {
+            final HttpConnectionManagerParams params = connectionManager.getParams();
+            params.setConnectionTimeout(connectionTimeout);
+            params.setSoTimeout(replyTimeout);
+            params.setDefaultMaxConnectionsPerHost(poolSize);
+            params.setMaxTotalConnections(poolSize);
+            params.setStaleCheckingEnabled(true);
+            final CountingConfig config = new CountingConfig();
+            try {
+                config.setServerURL(new URL(url));
+            } catch (MalformedURLException ex) {
+                throw new RuntimeException("Invalid XML-RPC url: " + url, ex);
+            }
+            // transport sets these to the connection manager too, so they must match
+            config.setConnectionTimeout(connectionTimeout);
+            config.setReplyTimeout(replyTimeout);
+            config.setEnabledForExtensions(true);
+            client.setConfig(config);
+            client.setTypeFactory(new XmlRpcHelper.KojiTypeFactory(client));
+            final XmlRpcCommonsTransportFactory transportFactory = new XmlRpcCommonsTransportFactory(client) {
+                @Override
+                public XmlRpcTransport getTransport() {
+                    return new GzipTransport(this, PooledClient.this);
+                }
+            };
+            transportFactory.setHttpClient(new HttpClient(connectionManager));
+            client.setTransportFactory(transportFactory);
+        }
+
+        synchronized void callStarted() {
+            runningCalls++;
+        }
+
+        synchronized void callFinished() {
+            runningCalls--;
+            if (retired && runningCalls == 0) {
+                shutDown();
+            }
+        }
+
+        /**
+         * Client is not used by new calls any more, so its connections are
+         * shut down as soon as running calls finish.
+         */
+        synchronized void retire() {
+            retired = true;
+            if (runningCalls == 0) {
+                shutDown();
+            }
+        }
+
+        synchronized boolean isShutDown() {
+            return shutDown;
+        }
+
+        private void shutDown() {
+            connectionManager.shutdown();
+            shutDown = true;
+        }
+    }
+
+    /**
+     * Config carrying counter of the call context to the transport.
+     */
+    private static class CountingConfig extends XmlRpcClientConfigImpl {
+
+        private TrafficCounter counter;
+    }
+
+    /**
+     * Transport of single call, negotiating compression and counting bytes.
+     */
+    private static class GzipTransport extends XmlRpcCommonsTransport {
+
+        private final PooledClient pooledClient;
+        // decided once, so headers and body of the request match
+        private final boolean compressingRequest;
+        private int contentLength;
+        private CountingInputStream wireInput;
+        private TrafficCounter counter;
+
+        GzipTransport(XmlRpcCommonsTransportFactory factory, PooledClient pooledClient) {
+            super(factory);
+            this.pooledClient = pooledClient;
+            this.compressingRequest = pooledClient.acceptsGzipRequests;
+        }
+
+        @Override
+        public Object sendRequest(XmlRpcRequest request) throws XmlRpcException {
+            if (request.getConfig() instanceof CountingConfig) {
+                counter = ((CountingConfig) request.getConfig()).counter;
+            }
+            pooledClient.callStarted();
+            try {
+                return super.sendRequest(request);
+            } finally {
+                pooledClient.callFinished();
+            }
+        }
+
+        @Override
+        protected void setCompressionHeaders(XmlRpcHttpClientConfig config) {
+            setRequestHeader("Accept-Encoding", "gzip");
+            if (compressingRequest) {
+                setRequestHeader("Content-Encoding", "gzip");
+            }
+        }
+
+        @Override
+        protected boolean isCompressingRequest(XmlRpcStreamRequestConfig config) {
+            return compressingRequest;
+        }
+
+        @Override
+        protected ReqWriter newReqWriter(XmlRpcRequest request) throws XmlRpcException, IOException, SAXException {
+            final ReqWriter writer = super.newReqWriter(request);
+            if (!compressingRequest) {
+                return writer;
+            }
+            // super sets length of uncompressed request, which breaks kept alive connection
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            writer.write(body);
+            setContentLength(body.size());
+            return body::writeTo;
+        }
+
+        @Override
+        protected void setContentLength(int length) {
+            super.setContentLength(length);
+            contentLength = length;
+        }
+
+        @Override
+        protected InputStream getInputStream() throws XmlRpcException {
+            final Header acceptEncoding = method.getResponseHeader("Accept-Encoding");
+            if (acceptEncoding != null && HttpUtil.isUsingGzipEncoding(acceptEncoding.getValue())) {
+                pooledClient.acceptsGzipRequests = true;
+            }
+            wireInput = new CountingInputStream(super.getInputStream());
+            return wireInput;
+        }
+
+        @Override
+        protected Object readResponse(XmlRpcStreamRequestConfig config, InputStream input) throws XmlRpcException {
+            final CountingInputStream decodedInput = new CountingInputStream(input);
+            try {
+                return super.readResponse(config, decodedInput);
+            } finally {
+                TOTAL.add(contentLength, wireInput.count, decodedInput.count);
+                if (counter != null) {
+                    counter.add(contentLength, wireInput.count, decodedInput.count);
+                }
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Counts traffic of calls of one context, e.g. single poll, which are
+     * handed the counter, see
+     * {@link XmlRpcHelper.XmlRpcExecutioner#setTrafficCounter(TrafficCounter)}.
+     */
+    public static final class TrafficCounter {
+
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicLong decoded = new AtomicLong();
+
+        void add(long sentBytes, long receivedBytes, long decodedBytes) {
+            calls.incrementAndGet();
+            sent.addAndGet(sentBytes);
+            received.addAndGet(receivedBytes);
+            decoded.addAndGet(decodedBytes);
+        }
+
+        public Traffic getTraffic() {
+            return new Traffic(calls.get(), sent.get(), received.get(), decoded.get());
+        }
+    }
+
+    /**
+     * Bytes of XML-RPC calls, as sent and received over the wire and after
+     * decompression of responses.
+     */
+    public static final class Traffic {
+
+        private final long calls;
+        private final long sent;
+        private final long received;
+        private final long decoded;
+
+        Traffic(long calls, long sent, long received, long decoded) {
+            this.calls = calls;
+            this.sent = sent;
+            this.received = received;
+            this.decoded = decoded;
+        }
+
+        /**
+         * @return traffic between the earlier snapshot and this one, which
+         * includes calls of all concurrent polls in this JVM
+         */
+        public Traffic since(Traffic earlier) {
+            return new Traffic(
+                    calls - earlier.calls,
+                    sent - earlier.sent,
+                    received - earlier.received,
+                    decoded - earlier.decoded
+            );
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * @return bytes of request bodies on the wire
+         */
+        public long getSent() {
+            return sent;
+        }
+
+        /**
+         * @return bytes of response bodies on the wire
+         */
+        public long getReceived() {
+            return received;
+        }
+
+        /**
+         * @return bytes of response bodies after decompression
+         */
+        public long getDecoded() {
+            return decoded;
+        }
+
+        @Override
+        public String toString() {
+            return calls + " calls, " + sent + " bytes sent, " + received + " bytes received (" + decoded + " uncompressed)";
+        }
+    }
+
+    /**
+     * Timeouts and size of connection pool of each hub, retries of failed
+     * calls and settings of {@link HubCircuitBreaker}.
+     */
+    public static final class Settings implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Default connection timeout, in milliseconds.
+         */
+        public static final int DEFAULT_CONNECTION_TIMEOUT = 60 * 1000;
+        /**
+         * Default reply timeout, in milliseconds.
+         */
+        public static final int DEFAULT_REPLY_TIMEOUT = 60 * 1000;
+        /**
+         * Default max number of connections to single hub.
+         */
+        public static final int DEFAULT_POOL_SIZE = 8;
+        /**
+         * Default number of retries of failed idempotent call.
+         */
+        public static final int DEFAULT_RETRIES = 2;
+        /**
+         * Default delay before first retry, in milliseconds. It doubles with
+         * every retry.
+         */
+        public static final int DEFAULT_RETRY_DELAY = 1000;
+        /**
+         * Default number of consecutive failures, after which the hub is
+         * considered down.
+         */
+        public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+        /**
+         * Default time for which the hub is considered down, in milliseconds.
+         */
+        public static final int DEFAULT_OPEN_TIME = 60 * 1000;
+
+        private final int connectionTimeout;
+        private final int replyTimeout;
+        private final int poolSize;
+        private final int retries;
+        private final int retryDelay;
+        private final int failureThreshold;
+        private final int openTime;
+
+        /**
+         * @param connectionTimeout in milliseconds
+         * @param replyTimeout in milliseconds
+         * @param poolSize max number of connections to single hub
+         */
+        public Settings(int connectionTimeout, int replyTimeout, int poolSize) {
+            this(connectionTimeout, replyTimeout, poolSize, DEFAULT_RETRIES, DEFAULT_RETRY_DELAY, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_TIME);
+        }
+
+        /**
+         * @param connectionTimeout in milliseconds
+         * @param replyTimeout in milliseconds
+         * @param poolSize max number of connections to single hub
+         * @param retries max number of retries of failed idempotent call
+         * @param retryDelay delay before first retry, in milliseconds
+         * @param failureThreshold consecutive failures, after which the hub
+         * is considered down, 0 to never consider it down
+         * @param openTime time for which the hub is considered down, in
+         * milliseconds
+         */
+        public Settings(int connectionTimeout, int replyTimeout, int poolSize, int retries, int retryDelay, int failureThreshold, int openTime) {
+            if (connectionTimeout < 0 || replyTimeout < 0 || poolSize < 1 || retries < 0 || retryDelay < 0 || failureThreshold < 0 || openTime < 0) {
+                throw new IllegalArgumentException("Invalid XML-RPC client settings: " + connectionTimeout + ", " + replyTimeout + ", " + poolSize
+                        + ", " + retries + ", " + retryDelay + ", " + failureThreshold + ", " + openTime);
+            }
+            this.connectionTimeout = connectionTimeout;
+            this.replyTimeout = replyTimeout;
+            this.poolSize = poolSize;
+            this.retries = retries;
+            this.retryDelay = retryDelay;
+            this.failureThreshold = failureThreshold;
+            this.openTime = openTime;
+        }
+
+        public int getConnectionTimeout() {
+            return connectionTimeout;
+        }
+
+        public int getReplyTimeout() {
+            return replyTimeout;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public int getRetries() {
+            return retries;
+        }
+
+        public int getRetryDelay() {
+            return retryDelay;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public int getOpenTime() {
+            return openTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+            final Settings other = (Settings) o;
+            return connectionTimeout == other.connectionTimeout
+                    && replyTimeout == other.replyTimeout
+                    && poolSize == other.poolSize
+                    && retries == other.retries
+                    && retryDelay == other.retryDelay
+                    && failureThreshold == other.failureThreshold
+                    && openTime == other.openTime;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connectionTimeout, replyTimeout, poolSize, retries, retryDelay, failureThreshold, openTime);
+        }
+
+        @Override
+        public String toString() {
+            return "connectionTimeout=" + connectionTimeout + "ms, replyTimeout=" + replyTimeout + "ms, poolSize=" + poolSize
+                    + ", retries=" + retries + ", retryDelay=" + retryDelay + "ms, failureThreshold=" + failureThreshold
+                    + ", openTime=" + openTime + "ms";
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package hudson.plugins.scm.koji.client.tools;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs XML-RPC calls in background, so independent calls overlap.
+ * <p>
+ * All calls share fixed number of threads. Each hub has at most as many calls
+ * in flight as it has pooled connections (see {@link XmlRpcClientPool}),
+ * other calls to it wait in its queue without holding a thread, so slow hub
+ * does not block calls to the others. Delayed calls (retries) are queued once
+ * their delay passes, so they do not hold a thread nor a slot while waiting.
+ */
+final class XmlRpcDispatcher {
+
+    /**
+     * Max number of calls running at once, to all hubs.
+     */
+    static final int MAX_THREADS = 32;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            MAX_THREADS,
+            MAX_THREADS,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                final Thread thread = new Thread(runnable, "koji-xmlrpc-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+    private static final ScheduledThreadPoolExecutor DELAYER = new ScheduledThreadPoolExecutor(
+            1,
+            runnable -> {
+                final Thread thread = new Thread(runnable, "koji-xmlrpc-delay");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+    private static final Map<String, Hub> HUBS = new ConcurrentHashMap<>();
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+        DELAYER.setRemoveOnCancelPolicy(true);
+    }
+
+    private XmlRpcDispatcher() {
+    }
+
+    /**
+     * @param url xml-rpc url of the hub, calls to the same url share its
+     * limit
+     * @param call blocking call
+     * @return future completed by result of the call, cancelling it before the
+     * call started skips the call
+     */
+    static <T> CompletableFuture<T> submit(String url, Supplier<T> call) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        enqueue(url, call, future);
+        return future;
+    }
+
+    /**
+     * Same as {@link #submit(String, Supplier)}, but the call is queued only
+     * after given delay.
+     *
+     * @param delay delay in milliseconds, 0 or less to queue right away
+     */
+    static <T> CompletableFuture<T> submit(String url, Supplier<T> call, long delay) {
+        if (delay <= 0) {
+            return submit(url, call);
+        }
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        DELAYER.schedule(() -> enqueue(url, call, future), delay, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private static <T> void enqueue(String url, Supplier<T> call, CompletableFuture<T> future) {
+        if (future.isDone()) {
+            return;
+        }
+        HUBS.computeIfAbsent(url, u -> new Hub()).submit(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(call.get());
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+    }
+
+    /**
+     * @return number of calls to the hub, which are running or waiting
+     */
+    static int getPending(String url) {
+        final Hub hub = HUBS.get(url);
+        return hub == null ? 0 : hub.getPending();
+    }
+
+    private static class Hub {
+
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private int running;
+
+        void submit(Runnable call) {
+            synchronized (this) {
+                // read every time, so new settings apply right away
+                if (running >= XmlRpcClientPool.getSettings().getPoolSize()) {
+                    waiting.add(call);
+                    return;
+                }
+                running++;
+            }
+            start(call);
+        }
+
+        private void start(Runnable call) {
+            EXECUTOR.execute(() -> {
+                try {
+                    call.run();
+                } finally {
+                    finished();
+                }
+            });
+        }
+
+        private void finished() {
+            final Runnable next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+            // the slot passes to the next call
+            start(next);
+        }
+
+        synchronized int getPending() {
+            return running + waiting.size();
+        }
+    }
+}
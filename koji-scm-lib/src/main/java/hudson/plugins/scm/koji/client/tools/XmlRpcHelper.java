@@ -23,13 +23,19 @@
  */
 package hudson.plugins.scm.koji.client.tools;
 
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 import hudson.plugins.scm.koji.Constants;
+import hudson.plugins.scm.koji.client.tools.StreamingResponseParser.ResponseShape;
 import org.apache.ws.commons.util.NamespaceContextImpl;
+import org.apache.xmlrpc.XmlRpcException;
 import org.apache.xmlrpc.client.XmlRpcClient;
-import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
 import org.apache.xmlrpc.common.TypeFactoryImpl;
 import org.apache.xmlrpc.common.XmlRpcController;
 import org.apache.xmlrpc.common.XmlRpcStreamConfig;
@@ -38,13 +44,18 @@ import org.apache.xmlrpc.parser.TypeParser;
 import org.apache.xmlrpc.serializer.I4Serializer;
 import org.apache.xmlrpc.serializer.TypeSerializer;
 import org.apache.xmlrpc.serializer.TypeSerializerImpl;
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.MultiCall;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.ArchiveList;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.BuildList;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.MultiCallResponse;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.RPMList;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.TagSet;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.PackageId;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.StructMapper;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.XmlRpcResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
@@ -55,10 +66,25 @@ import org.xml.sax.SAXParseException;
  */
 public class XmlRpcHelper {
 
+    private static final Logger LOG = LoggerFactory.getLogger(XmlRpcHelper.class);
+
     public static class XmlRpcExecutioner {
 
+        /**
+         * Max number of calls packed into one system.multicall request, so
+         * single request/response does not grow too much.
+         */
+        public static final int MULTICALL_BATCH_SIZE = 100;
+
+        /**
+         * Max delay between retries, in milliseconds.
+         */
+        static final long MAX_RETRY_DELAY = 30 * 1000;
+
         private final String currentURL ;
-        private Integer timeout = 60*1000;
+        // if null, timeouts of XmlRpcClientPool settings are used
+        private Integer timeout;
+        private XmlRpcClientPool.TrafficCounter trafficCounter;
 
         public XmlRpcExecutioner(String currentURL) {
             this.currentURL = currentURL;
@@ -68,41 +94,250 @@ public class XmlRpcHelper {
             this.timeout = timeout;
         }
 
+        /**
+         * @param trafficCounter counter to add traffic of calls of this
+         * executioner to, so the traffic of one poll is not mixed with
+         * concurrent ones, may be null
+         */
+        public void setTrafficCounter(XmlRpcClientPool.TrafficCounter trafficCounter) {
+            this.trafficCounter = trafficCounter;
+        }
+
+        /**
+         * Arrays of structs, which the method declares mapper for, are mapped
+         * while the response is read, see {@link StreamingResponseParser}.
+         * <p>
+         * Idempotent call, which fails on its way to or from the hub, is
+         * retried with exponential backoff, see
+         * {@link XmlRpcClientPool.Settings#getRetries()}. Calls to hub, which
+         * is considered down, fail right away, see {@link HubCircuitBreaker}.
+         * The backoff waits in the calling thread.
+         */
         public Object execute(XmlRpcRequestParams params) {
-            try {
-                final XmlRpcClient client = createClient();
-                return client.execute(params.getMethodName(), Collections.singletonList(params.toObject()));
-            } catch (Exception ex) {
-                throw new RuntimeException("Exception while executing " + params.getMethodName(), ex);
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return executeOnce(params);
+                } catch (RuntimeException ex) {
+                    final long delay = getRetryDelay(params, attempt, ex);
+                    if (delay < 0) {
+                        throw ex;
+                    }
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw ex;
+                    }
+                }
             }
         }
 
-        public Object execute(String methodName, Object ...args) {
+        private Object executeOnce(XmlRpcRequestParams params) {
+            return execute(params.getMethodName(), () -> {
+                try {
+                    EXPECTED_SHAPE.set(shapeOf(params));
+                    return call(params.getMethodName(), Collections.singletonList(params.toObject()));
+                } finally {
+                    EXPECTED_SHAPE.remove();
+                }
+            });
+        }
+
+        /**
+         * @return delay before next attempt of the failed call, or -1 if it
+         * is not retried
+         */
+        private long getRetryDelay(XmlRpcRequestParams params, int attempt, RuntimeException ex) {
+            final XmlRpcClientPool.Settings settings = XmlRpcClientPool.getSettings();
+            final int attempts = params.isIdempotent() ? settings.getRetries() + 1 : 1;
+            if (attempt >= attempts || !HubCircuitBreaker.isTransient(ex)) {
+                return -1;
+            }
+            final long delay = getRetryDelay(settings.getRetryDelay(), attempt);
+            LOG.warn("Attempt " + attempt + " of " + attempts + " to execute " + params.getMethodName() + " on " + currentURL
+                    + " failed, retrying in " + delay + "ms: " + ex.getCause());
+            return delay;
+        }
+
+        /**
+         * Runs single call through circuit breaker of the hub.
+         */
+        private Object execute(String methodName, XmlRpcCall call) {
+            final HubCircuitBreaker breaker = HubCircuitBreaker.get(currentURL);
+            final XmlRpcClientPool.Settings settings = XmlRpcClientPool.getSettings();
+            breaker.acquire(settings);
             try {
-                XmlRpcClient client = createClient();
-                return client.execute(methodName, args);
+                final Object result = call.execute();
+                breaker.responded();
+                return result;
             } catch (Exception ex) {
+                if (HubCircuitBreaker.isTransient(ex)) {
+                    breaker.failed(ex, settings);
+                } else {
+                    // fault, the hub is alive
+                    breaker.responded();
+                }
                 throw new RuntimeException("Exception while executing " + methodName, ex);
             }
         }
 
-        private XmlRpcClient createClient() throws Exception {
-            XmlRpcClientConfigImpl xmlRpcConfig = new XmlRpcClientConfigImpl();
-            xmlRpcConfig.setServerURL(new URL(currentURL));
-            if (timeout != null) {
-                xmlRpcConfig.setConnectionTimeout(timeout);
-                xmlRpcConfig.setReplyTimeout(timeout);
-                xmlRpcConfig.setEnabledForExtensions(true);
+        /**
+         * @return delay before retry following given attempt, doubled with
+         * every attempt up to {@link #MAX_RETRY_DELAY}, then randomly
+         * shortened by up to half, so jobs failed together do not retry
+         * together
+         */
+        static long getRetryDelay(int retryDelay, int attempt) {
+            final long delay = Math.min(MAX_RETRY_DELAY, (long) retryDelay << Math.min(attempt - 1, 20));
+            return delay - (long) (ThreadLocalRandom.current().nextDouble() * delay / 2);
+        }
+
+        private static ResponseShape shapeOf(XmlRpcRequestParams params) {
+            if (params instanceof MultiCall) {
+                final List<ResponseShape> shapes = new ArrayList<>();
+                boolean any = false;
+                for (XmlRpcRequestParams call : ((MultiCall) params).getCalls()) {
+                    final ResponseShape shape = shapeOf(call);
+                    any |= shape != null;
+                    shapes.add(shape);
+                }
+                return any ? ResponseShape.multicall(shapes) : null;
+            }
+            final StructMapper<?> mapper = params.getResultMapper();
+            return mapper == null ? null : ResponseShape.structs(mapper);
+        }
+
+        /**
+         * Method may not be idempotent, so it is not retried.
+         */
+        public Object execute(String methodName, Object ...args) {
+            return execute(methodName, () -> call(methodName, Arrays.asList(args)));
+        }
+
+        /**
+         * Executes all calls using system.multicall, at most
+         * {@link #MULTICALL_BATCH_SIZE} calls per request.
+         *
+         * @param calls calls to execute, may be of different methods
+         * @return raw results in order of calls
+         */
+        public List<Object> multicall(List<? extends XmlRpcRequestParams> calls) {
+            final List<Object> results = new ArrayList<>(calls.size());
+            for (int from = 0; from < calls.size(); from += MULTICALL_BATCH_SIZE) {
+                results.addAll(executeBatch(calls.subList(from, Math.min(from + MULTICALL_BATCH_SIZE, calls.size()))));
+            }
+            return results;
+        }
+
+        private List<Object> executeBatch(List<? extends XmlRpcRequestParams> batch) {
+            return toBatchResults(batch, execute(new MultiCall(batch)));
+        }
+
+        private static List<Object> toBatchResults(List<? extends XmlRpcRequestParams> batch, Object multicallResult) {
+            final MultiCallResponse response = MultiCallResponse.create(multicallResult);
+            final List<Object> batchResults = response.getValue();
+            if (batchResults.size() != batch.size()) {
+                throw new RuntimeException("Expected " + batch.size() + " results of " + Constants.multicall + ", got " + batchResults.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                final Object result = batchResults.get(i);
+                if (result instanceof MultiCallResponse.Fault) {
+                    throw new RuntimeException("Exception while executing " + batch.get(i).getMethodName() + ": " + result);
+                }
+            }
+            return batchResults;
+        }
+
+        /**
+         * Same as {@link #multicall(List)}, but parses the results using given
+         * parser, e.g. TagSet::create.
+         */
+        public <T> List<T> multicall(List<? extends XmlRpcRequestParams> calls, Function<Object, T> parser) {
+            final List<Object> results = multicall(calls);
+            final List<T> parsed = new ArrayList<>(results.size());
+            for (Object result : results) {
+                parsed.add(parser.apply(result));
             }
-            XmlRpcClient client = new XmlRpcClient();
-            client.setConfig(xmlRpcConfig);
-            client.setTypeFactory(new KojiTypeFactory(client));
-            return client;
+            return parsed;
+        }
+
+        /**
+         * Same as {@link #execute(XmlRpcRequestParams)}, but the call runs in
+         * background, see {@link XmlRpcDispatcher}. Retry is submitted again
+         * once its backoff passes, so waiting for it does not hold a thread
+         * nor a slot of the hub.
+         */
+        public CompletableFuture<Object> executeAsync(XmlRpcRequestParams params) {
+            final CompletableFuture<Object> result = new CompletableFuture<>();
+            submitAttempt(params, 1, 0, result);
+            return result;
+        }
+
+        private void submitAttempt(XmlRpcRequestParams params, int attempt, long delay, CompletableFuture<Object> result) {
+            final CompletableFuture<Object> call = XmlRpcDispatcher.submit(currentURL, () -> executeOnce(params), delay);
+            // cancelling the result skips the call, if it did not start yet
+            result.whenComplete((value, ex) -> call.cancel(false));
+            call.whenComplete((value, ex) -> {
+                if (ex == null) {
+                    result.complete(value);
+                    return;
+                }
+                final long retryDelay = ex instanceof RuntimeException ? getRetryDelay(params, attempt, (RuntimeException) ex) : -1;
+                if (retryDelay < 0 || result.isDone()) {
+                    result.completeExceptionally(ex);
+                } else {
+                    submitAttempt(params, attempt + 1, retryDelay, result);
+                }
+            });
+        }
+
+        /**
+         * Same as {@link #executeAsync(XmlRpcRequestParams)}, but parses the
+         * result using given parser, e.g. BuildList::create.
+         */
+        public <T extends XmlRpcResponse> CompletableFuture<T> executeAsync(XmlRpcRequestParams params, Function<Object, T> parser) {
+            return executeAsync(params).thenApply(parser);
+        }
+
+        /**
+         * Same as {@link #multicall(List)}, but the batches run in background
+         * and overlap each other.
+         */
+        public CompletableFuture<List<Object>> multicallAsync(List<? extends XmlRpcRequestParams> calls) {
+            final List<CompletableFuture<List<Object>>> batches = new ArrayList<>();
+            for (int from = 0; from < calls.size(); from += MULTICALL_BATCH_SIZE) {
+                final List<? extends XmlRpcRequestParams> batch = calls.subList(from, Math.min(from + MULTICALL_BATCH_SIZE, calls.size()));
+                batches.add(executeAsync(new MultiCall(batch)).thenApply(result -> toBatchResults(batch, result)));
+            }
+            return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+                final List<Object> results = new ArrayList<>(calls.size());
+                for (CompletableFuture<List<Object>> batch : batches) {
+                    results.addAll(batch.join());
+                }
+                return results;
+            });
+        }
+
+        private Object call(String methodName, List<Object> args) throws XmlRpcException {
+            // clients are shared, so connections to the hub are reused
+            final XmlRpcClient client = XmlRpcClientPool.get(currentURL, timeout);
+            return client.execute(XmlRpcClientPool.getCallConfig(client, trafficCounter), methodName, args);
         }
 
     }
 
-    private static class KojiTypeFactory extends TypeFactoryImpl {
+    private interface XmlRpcCall {
+
+        Object execute() throws Exception;
+    }
+
+    /**
+     * Shape of response of call running in current thread, taken by type
+     * factory once it gets to the returned array.
+     */
+    private static final ThreadLocal<ResponseShape> EXPECTED_SHAPE = new ThreadLocal<>();
+
+    static class KojiTypeFactory extends TypeFactoryImpl {
 
         public KojiTypeFactory(XmlRpcController pController) {
             super(pController);
@@ -110,6 +345,11 @@ public class XmlRpcHelper {
 
         @Override
         public TypeParser getParser(XmlRpcStreamConfig pConfig, NamespaceContextImpl pContext, String pURI, String pLocalName) {
+            if ("array".equals(pLocalName) && EXPECTED_SHAPE.get() != null) {
+                final ResponseShape shape = EXPECTED_SHAPE.get();
+                EXPECTED_SHAPE.remove();
+                return new StreamingResponseParser((uri, localName) -> getParser(pConfig, pContext, uri, localName), shape);
+            }
             switch (pLocalName) {
                 case "nil":
                     return new NilParser();
@@ -4,6 +4,7 @@ import hudson.plugins.scm.koji.Constants;
 
 import java.net.URL;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -43,6 +44,10 @@ public class Build implements Comparable<Build>, java.io.Serializable {
     @XmlElement(name = "provider", type = BuildProvider.class)
     private BuildProvider provider;
     private URL srcUrl;
+    // parsed once, used as sort keys, transient fields are skipped by jaxb too
+    private transient Long completionTimeKey;
+    private transient RpmVersion versionKey;
+    private transient RpmVersion releaseKey;
 
     public Build(
             Integer id,
@@ -110,6 +115,47 @@ public class Build implements Comparable<Build>, java.io.Serializable {
         return completionTime;
     }
 
+    /**
+     * Completion time as number of nanoseconds since epoch (UTC), parsed
+     * once and cached, so the builds can be compared cheaply.
+     *
+     * @throws java.time.format.DateTimeParseException if completion time is
+     * not in {@link Constants#DTF} format
+     */
+    public long getCompletionTimeKey() {
+        Long key = completionTimeKey;
+        if (key == null) {
+            final LocalDateTime time = LocalDateTime.parse(completionTime, Constants.DTF);
+            key = time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+            completionTimeKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * Version parsed once for rpmvercmp like comparison.
+     */
+    public RpmVersion getVersionKey() {
+        RpmVersion key = versionKey;
+        if (key == null) {
+            key = RpmVersion.parse(version);
+            versionKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * Release parsed once for rpmvercmp like comparison.
+     */
+    public RpmVersion getReleaseKey() {
+        RpmVersion key = releaseKey;
+        if (key == null) {
+            key = RpmVersion.parse(release);
+            releaseKey = key;
+        }
+        return key;
+    }
+
     public List<RPM> getRpms() {
         return Collections.unmodifiableList(rpms);
     }
@@ -23,6 +23,9 @@ public class RPM implements java.io.Serializable {
     private final String filename;
     private String url;
     private String hashSum;
+    private String sha256Sum;
+    // md5 of header and payload, as advertised by koji
+    private String payloadHash;
 
     public RPM(String name, String version, String release, String nvr, String arch, String filename) {
         this.name = name;
@@ -108,6 +111,22 @@ public class RPM implements java.io.Serializable {
         return hashSum;
     }
 
+    public void setSha256Sum(String sha256Sum) {
+        this.sha256Sum = sha256Sum;
+    }
+
+    public String getSha256Sum() {
+        return sha256Sum;
+    }
+
+    public void setPayloadHash(String payloadHash) {
+        this.payloadHash = payloadHash;
+    }
+
+    public String getPayloadHash() {
+        return payloadHash;
+    }
+
     public static enum Suffix {
         INSTANCE;
 
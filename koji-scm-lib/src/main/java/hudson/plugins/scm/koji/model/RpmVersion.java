@@ -0,0 +1,197 @@
+package hudson.plugins.scm.koji.model;
+
+import java.util.Arrays;
+
+/**
+ * Version (or release) split to segments the same way as rpm's rpmvercmp does
+ * it, so that two versions can be compared without any further parsing or
+ * allocation.
+ * <p>
+ * Segments are runs of digits, runs of letters, '~' (sorts before anything,
+ * even end of version) and '^' (sorts after end of version, but before
+ * anything else). Everything else is separator. Numeric segments are compared
+ * as numbers of any length, leading zeros are ignored.
+ */
+public final class RpmVersion implements Comparable<RpmVersion> {
+
+    private static final int TILDE = 0;
+    private static final int CARET = 1;
+    private static final int NUMERIC = 2;
+    private static final int ALPHA = 3;
+
+    private final String value;
+    // triplets of kind, start and end of segment in value
+    private final int[] segments;
+    private final int count;
+
+    private RpmVersion(String value, int[] segments, int count) {
+        this.value = value;
+        this.segments = segments;
+        this.count = count;
+    }
+
+    public static RpmVersion parse(CharSequence version) {
+        final String value = version == null ? "" : version.toString();
+        int[] segments = new int[3 * 8];
+        int count = 0;
+        int i = 0;
+        final int length = value.length();
+        while (i < length) {
+            final char c = value.charAt(i);
+            final int kind;
+            int start = i;
+            if (c == '~') {
+                kind = TILDE;
+                i++;
+            } else if (c == '^') {
+                kind = CARET;
+                i++;
+            } else if (isDigit(c)) {
+                kind = NUMERIC;
+                while (i < length && isDigit(value.charAt(i))) {
+                    i++;
+                }
+                // leading zeros do not matter
+                while (start < i - 1 && value.charAt(start) == '0') {
+                    start++;
+                }
+            } else if (isAlpha(c)) {
+                kind = ALPHA;
+                while (i < length && isAlpha(value.charAt(i))) {
+                    i++;
+                }
+            } else {
+                i++;
+                continue;
+            }
+            if (3 * count + 3 > segments.length) {
+                segments = Arrays.copyOf(segments, segments.length * 2);
+            }
+            segments[3 * count] = kind;
+            segments[3 * count + 1] = start;
+            segments[3 * count + 2] = i;
+            count++;
+        }
+        return new RpmVersion(value, segments, count);
+    }
+
+    /**
+     * Same as rpmvercmp(a, b).
+     *
+     * @return negative if a is older than b, zero if they are equal, positive
+     * if a is newer than b
+     */
+    public static int compare(CharSequence a, CharSequence b) {
+        return parse(a).compareTo(parse(b));
+    }
+
+    @Override
+    public int compareTo(RpmVersion other) {
+        int i = 0;
+        int j = 0;
+        while (true) {
+            final int a = i < count ? segments[3 * i] : -1;
+            final int b = j < other.count ? other.segments[3 * j] : -1;
+            if (a == -1 && b == -1) {
+                return 0;
+            }
+            if (a == TILDE || b == TILDE) {
+                if (a != TILDE) {
+                    return 1;
+                }
+                if (b != TILDE) {
+                    return -1;
+                }
+                i++;
+                j++;
+                continue;
+            }
+            if (a == CARET || b == CARET) {
+                if (a == -1) {
+                    return -1;
+                }
+                if (b == -1) {
+                    return 1;
+                }
+                if (a != CARET) {
+                    return 1;
+                }
+                if (b != CARET) {
+                    return -1;
+                }
+                i++;
+                j++;
+                continue;
+            }
+            if (a == -1) {
+                return -1;
+            }
+            if (b == -1) {
+                return 1;
+            }
+            if (a != b) {
+                // numeric segment is newer than alphabetic one
+                return a == NUMERIC ? 1 : -1;
+            }
+            final int result = compareSegments(
+                    value, segments[3 * i + 1], segments[3 * i + 2],
+                    other.value, other.segments[3 * j + 1], other.segments[3 * j + 2],
+                    a == NUMERIC
+            );
+            if (result != 0) {
+                return result;
+            }
+            i++;
+            j++;
+        }
+    }
+
+    private static int compareSegments(String a, int aStart, int aEnd, String b, int bStart, int bEnd, boolean numeric) {
+        final int aLength = aEnd - aStart;
+        final int bLength = bEnd - bStart;
+        if (numeric && aLength != bLength) {
+            // no leading zeros, so longer number is bigger
+            return aLength > bLength ? 1 : -1;
+        }
+        final int length = Math.min(aLength, bLength);
+        for (int k = 0; k < length; k++) {
+            final char ca = a.charAt(aStart + k);
+            final char cb = b.charAt(bStart + k);
+            if (ca != cb) {
+                return ca < cb ? -1 : 1;
+            }
+        }
+        return Integer.compare(aLength, bLength);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RpmVersion && compareTo((RpmVersion) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < count; i++) {
+            final int kind = segments[3 * i];
+            hash = 31 * hash + kind;
+            for (int k = segments[3 * i + 1]; k < segments[3 * i + 2]; k++) {
+                hash = 31 * hash + value.charAt(k);
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,63 @@
+package org.fakekoji.xmlrpc.server.xmlrpcrequestparams;
+
+import hudson.plugins.scm.koji.Constants;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestUtils.starStarLabel;
+import static org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestUtils.toMap;
+
+/**
+ * Asks fake-koji for token, which changes whenever builds of the package (or
+ * project) change. Either package or project is set.
+ */
+public class GetChangeToken implements XmlRpcRequestParams {
+
+    private final String packageName;
+    private final String projectName;
+
+    private GetChangeToken(String packageName, String projectName) {
+        this.packageName = packageName;
+        this.projectName = projectName;
+    }
+
+    public static GetChangeToken ofPackage(String packageName) {
+        return new GetChangeToken(packageName, null);
+    }
+
+    public static GetChangeToken ofProject(String projectName) {
+        return new GetChangeToken(null, projectName);
+    }
+
+    @Override
+    public Object toObject() {
+        final Map<String, Object> map = new HashMap<>();
+        if (packageName != null) {
+            map.put(Constants.packageLabel, packageName);
+        }
+        if (projectName != null) {
+            map.put(Constants.project, projectName);
+        }
+        map.put(starStarLabel, Boolean.TRUE);
+        return map;
+    }
+
+    @Override
+    public String getMethodName() {
+        return Constants.getChangeToken;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    public static GetChangeToken create(Object object) {
+        final Map<String, Object> map = toMap(object);
+        return new GetChangeToken((String) map.get(Constants.packageLabel), (String) map.get(Constants.project));
+    }
+}
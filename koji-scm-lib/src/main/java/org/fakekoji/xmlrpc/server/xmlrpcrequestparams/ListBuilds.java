@@ -1,6 +1,8 @@
 package org.fakekoji.xmlrpc.server.xmlrpcrequestparams;
 
 import hudson.plugins.scm.koji.Constants;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.BuildList;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.StructMapper;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -33,6 +35,11 @@ public class ListBuilds implements XmlRpcRequestParams {
         return Constants.listBuilds;
     }
 
+    @Override
+    public StructMapper<?> getResultMapper() {
+        return BuildList.MAPPER;
+    }
+
     public Integer getPackageId() {
         return packageId;
     }
@@ -1,6 +1,8 @@
 package org.fakekoji.xmlrpc.server.xmlrpcrequestparams;
 
 import hudson.plugins.scm.koji.Constants;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.RPMList;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.StructMapper;
 
 import java.util.List;
 import java.util.Map;
@@ -18,6 +20,11 @@ public class ListRPMs extends ListArtefacts {
         return Constants.listRPMs;
     }
 
+    @Override
+    public StructMapper<?> getResultMapper() {
+        return RPMList.MAPPER;
+    }
+
     public static ListRPMs create(Object object) {
         final Map<String, Object> map = toMap(object);
         return new ListRPMs(
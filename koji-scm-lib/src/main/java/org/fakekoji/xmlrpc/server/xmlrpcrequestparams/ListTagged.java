@@ -0,0 +1,59 @@
+package org.fakekoji.xmlrpc.server.xmlrpcrequestparams;
+
+import hudson.plugins.scm.koji.Constants;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.BuildList;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.StructMapper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestUtils.starStarLabel;
+import static org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestUtils.toMap;
+
+/**
+ * Lists builds of given package tagged by given tag. Response has the same
+ * format as response of listBuilds, so {@link org.fakekoji.xmlrpc.server.xmlrpcresponse.BuildList}
+ * is used to parse it.
+ */
+public class ListTagged implements XmlRpcRequestParams {
+
+    private final String tag;
+    private final String packageName;
+
+    public ListTagged(String tag, String packageName) {
+        this.tag = tag;
+        this.packageName = packageName;
+    }
+
+    @Override
+    public Object toObject() {
+        final Map<String, Object> map = new HashMap<>();
+        map.put(Constants.tag, tag);
+        map.put(Constants.packageLabel, packageName);
+        map.put(starStarLabel, Boolean.TRUE);
+        return map;
+    }
+
+    @Override
+    public String getMethodName() {
+        return Constants.listTagged;
+    }
+
+    @Override
+    public StructMapper<?> getResultMapper() {
+        return BuildList.MAPPER;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public static ListTagged create(Object object) {
+        final Map<String, Object> map = toMap(object);
+        return new ListTagged((String) map.get(Constants.tag), (String) map.get(Constants.packageLabel));
+    }
+}
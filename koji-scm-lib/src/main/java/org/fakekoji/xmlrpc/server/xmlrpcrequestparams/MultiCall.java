@@ -0,0 +1,105 @@
+package org.fakekoji.xmlrpc.server.xmlrpcrequestparams;
+
+import hudson.plugins.scm.koji.Constants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestUtils.toMaps;
+
+/**
+ * Parameters of system.multicall. Packs several calls into one XML-RPC request,
+ * each call is sent as struct of method name and its parameters. Results come
+ * back in the same order (see MultiCallResponse).
+ */
+public class MultiCall implements XmlRpcRequestParams {
+
+    private final List<? extends XmlRpcRequestParams> calls;
+
+    public MultiCall(List<? extends XmlRpcRequestParams> calls) {
+        this.calls = calls;
+    }
+
+    @Override
+    public Object toObject() {
+        final List<Map<String, Object>> maps = new ArrayList<>(calls.size());
+        for (XmlRpcRequestParams call : calls) {
+            final Map<String, Object> map = new HashMap<>();
+            map.put(Constants.methodName, call.getMethodName());
+            map.put(Constants.params, Collections.singletonList(call.toObject()));
+            maps.add(map);
+        }
+        return maps;
+    }
+
+    @Override
+    public String getMethodName() {
+        return Constants.multicall;
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        for (XmlRpcRequestParams call : calls) {
+            if (!call.isIdempotent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<? extends XmlRpcRequestParams> getCalls() {
+        return calls;
+    }
+
+    public static MultiCall create(Object object) {
+        final List<Map<String, Object>> maps = toMaps(object);
+        if (maps == null) {
+            return new MultiCall(Collections.emptyList());
+        }
+        final List<Call> calls = new ArrayList<>(maps.size());
+        for (Map<String, Object> map : maps) {
+            final Object[] params = (Object[]) map.get(Constants.params);
+            calls.add(new Call(
+                    (String) map.get(Constants.methodName),
+                    params == null || params.length == 0 ? null : params[0]
+            ));
+        }
+        return new MultiCall(calls);
+    }
+
+    /**
+     * Single call as received by server, parameter is not yet parsed as it
+     * depends on method name.
+     */
+    public static class Call implements XmlRpcRequestParams {
+
+        private final String methodName;
+        private final Object parameter;
+
+        public Call(String methodName, Object parameter) {
+            this.methodName = methodName;
+            this.parameter = parameter;
+        }
+
+        @Override
+        public Object toObject() {
+            return parameter;
+        }
+
+        @Override
+        public String getMethodName() {
+            return methodName;
+        }
+
+        /**
+         * Method is not known, so it is not repeated.
+         */
+        @Override
+        public boolean isIdempotent() {
+            return false;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.fakekoji.xmlrpc.server.xmlrpcrequestparams;
 
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.StructMapper;
+
 import java.io.Serializable;
 
 public interface XmlRpcRequestParams extends Serializable {
@@ -22,4 +24,21 @@ public interface XmlRpcRequestParams extends Serializable {
      */
     String getMethodName();
 
+    /**
+     * @return mapper of structs in array returned by the method, so client can
+     * map them while parsing the response, or null if the response is parsed
+     * as usual
+     */
+    default StructMapper<?> getResultMapper() {
+        return null;
+    }
+
+    /**
+     * @return true if the call may be repeated, when it fails on its way to or
+     * from the hub (all koji methods used here only read)
+     */
+    default boolean isIdempotent() {
+        return true;
+    }
+
 }
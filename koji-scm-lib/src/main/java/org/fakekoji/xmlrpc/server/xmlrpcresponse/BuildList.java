@@ -4,10 +4,13 @@ import hudson.plugins.scm.koji.Constants;
 import hudson.plugins.scm.koji.model.Build;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestUtils.toMaps;
 
@@ -40,6 +43,31 @@ public class BuildList implements XmlRpcResponse<List<Build>> {
         return builds;
     }
 
+    /**
+     * Maps build structs while the response is parsed.
+     */
+    public static final StructMapper<Build> MAPPER = new StructMapper<Build>() {
+
+        private final Set<String> members = new HashSet<>(Arrays.asList(
+                Constants.build_id,
+                Constants.name,
+                Constants.version,
+                Constants.release,
+                Constants.nvr,
+                Constants.completion_time
+        ));
+
+        @Override
+        public Set<String> getMembers() {
+            return members;
+        }
+
+        @Override
+        public Build map(Map<String, Object> members) {
+            return parseBuildMap(members);
+        }
+    };
+
     private static Build parseBuildMap(Map<String, Object> map) {
         return new Build(
                 (Integer) map.get(Constants.build_id),
@@ -75,7 +103,12 @@ public class BuildList implements XmlRpcResponse<List<Build>> {
         return map;
     }
 
+    @SuppressWarnings("unchecked")
     public static BuildList create(Object object) {
+        if (object instanceof List) {
+            // already mapped by MAPPER
+            return new BuildList((List<Build>) object);
+        }
         return new BuildList(parseBuildMaps(toMaps(object)));
     }
 }
@@ -0,0 +1,24 @@
+package org.fakekoji.xmlrpc.server.xmlrpcresponse;
+
+public class ChangeToken implements XmlRpcResponse<String> {
+
+    private final String token;
+
+    public ChangeToken(String token) {
+        this.token = token;
+    }
+
+    @Override
+    public Object toObject() {
+        return token;
+    }
+
+    @Override
+    public String getValue() {
+        return token;
+    }
+
+    public static ChangeToken create(Object object) {
+        return new ChangeToken((String) object);
+    }
+}
@@ -0,0 +1,93 @@
+package org.fakekoji.xmlrpc.server.xmlrpcresponse;
+
+import hudson.plugins.scm.koji.Constants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response of system.multicall. Successful result is wrapped in one item array,
+ * failed one is fault struct, see {@link Fault}.
+ */
+public class MultiCallResponse implements XmlRpcResponse<List<Object>> {
+
+    private final List<Object> results;
+
+    public MultiCallResponse(List<Object> results) {
+        this.results = results;
+    }
+
+    @Override
+    public Object toObject() {
+        final List<Object> objects = new ArrayList<>(results.size());
+        for (Object result : results) {
+            if (result instanceof Fault) {
+                objects.add(((Fault) result).toObject());
+            } else {
+                objects.add(new Object[]{result});
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * @return results in order of calls, failed calls are represented by
+     * {@link Fault}
+     */
+    @Override
+    public List<Object> getValue() {
+        return results;
+    }
+
+    public static MultiCallResponse create(Object object) {
+        final Object[] objects = (Object[]) object;
+        final List<Object> results = new ArrayList<>(objects.length);
+        for (Object o : objects) {
+            if (o instanceof Object[]) {
+                final Object[] wrapped = (Object[]) o;
+                results.add(wrapped.length == 0 ? null : wrapped[0]);
+            } else {
+                results.add(Fault.create(o));
+            }
+        }
+        return new MultiCallResponse(results);
+    }
+
+    public static class Fault {
+
+        private final Integer faultCode;
+        private final String faultString;
+
+        public Fault(Integer faultCode, String faultString) {
+            this.faultCode = faultCode;
+            this.faultString = faultString;
+        }
+
+        public Integer getFaultCode() {
+            return faultCode;
+        }
+
+        public String getFaultString() {
+            return faultString;
+        }
+
+        Object toObject() {
+            final Map<String, Object> map = new HashMap<>();
+            map.put(Constants.faultCode, faultCode);
+            map.put(Constants.faultString, faultString);
+            return map;
+        }
+
+        static Fault create(Object object) {
+            final Map<String, Object> map = (Map<String, Object>) object;
+            return new Fault((Integer) map.get(Constants.faultCode), (String) map.get(Constants.faultString));
+        }
+
+        @Override
+        public String toString() {
+            return faultCode + ": " + faultString;
+        }
+    }
+}
@@ -4,10 +4,13 @@ import hudson.plugins.scm.koji.Constants;
 import hudson.plugins.scm.koji.model.RPM;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestUtils.toMaps;
 
@@ -40,8 +43,34 @@ public class RPMList implements XmlRpcResponse<List<RPM>> {
         return rpms;
     }
 
+    /**
+     * Maps rpm structs while the response is parsed.
+     */
+    public static final StructMapper<RPM> MAPPER = new StructMapper<RPM>() {
+
+        private final Set<String> members = new HashSet<>(Arrays.asList(
+                Constants.name,
+                Constants.version,
+                Constants.release,
+                Constants.nvr,
+                Constants.arch,
+                Constants.filename,
+                Constants.payloadhash
+        ));
+
+        @Override
+        public Set<String> getMembers() {
+            return members;
+        }
+
+        @Override
+        public RPM map(Map<String, Object> members) {
+            return parseRpmMap(members);
+        }
+    };
+
     private static RPM parseRpmMap(Map<String, Object> map) {
-        return new RPM(
+        final RPM rpm = new RPM(
                 (String) map.get(Constants.name),
                 (String) map.get(Constants.version),
                 (String) map.get(Constants.release),
@@ -49,6 +78,8 @@ public class RPMList implements XmlRpcResponse<List<RPM>> {
                 (String) map.get(Constants.arch),
                 (String) map.get(Constants.filename)
         );
+        rpm.setPayloadHash((String) map.get(Constants.payloadhash));
+        return rpm;
     }
 
     private List<Map<String, Object>> parseRpms() {
@@ -67,10 +98,18 @@ public class RPMList implements XmlRpcResponse<List<RPM>> {
         map.put(Constants.filename, rpm.getFilename(""));
         map.put(Constants.nvr, rpm.getNvr());
         map.put(Constants.arch, rpm.getArch());
+        if (rpm.getPayloadHash() != null) {
+            map.put(Constants.payloadhash, rpm.getPayloadHash());
+        }
         return map;
     }
 
+    @SuppressWarnings("unchecked")
     public static RPMList create(Object object) {
+        if (object instanceof List) {
+            // already mapped by MAPPER
+            return new RPMList((List<RPM>) object);
+        }
         return new RPMList(parseRpmMaps(toMaps(object)));
     }
 }
@@ -0,0 +1,24 @@
+package org.fakekoji.xmlrpc.server.xmlrpcresponse;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates object of response directly from members of XML-RPC struct, while
+ * the response is being parsed. Members, which are not needed, are skipped
+ * without being parsed.
+ *
+ * @param <T> type of created object
+ */
+public interface StructMapper<T> {
+
+    /**
+     * @return names of members needed by {@link #map(Map)}
+     */
+    Set<String> getMembers();
+
+    /**
+     * @param members values of needed members, missing ones are not present
+     */
+    T map(Map<String, Object> members);
+}
@@ -23,9 +23,16 @@
  */
 package hudson.plugins.scm.koji;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Predicate;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -127,4 +134,61 @@ public class NotProcessedNvrPredicateTest {
         
     }
 
+    @Test
+    public void predicateFromFilesSeesAppendedNvrs() throws IOException {
+        File dir = Files.createTempDirectory("processed").toFile();
+        File job = new File(dir, "job-processed.txt");
+        File global = new File(dir, "processed.txt");
+        Files.write(job.toPath(), Arrays.asList("a-1-1", "a-1-2 some garbage"));
+        Files.write(global.toPath(), Arrays.asList("g-1-1"));
+        Predicate<String> predicate = NotProcessedNvrPredicate.createNotProcessedNvrPredicateFromFile(job, global);
+        assertFalse(predicate.test("a-1-1"));
+        assertFalse(predicate.test("a-1-2"));
+        assertFalse(predicate.test("g-1-1"));
+        assertTrue(predicate.test("a-1-3"));
+
+        // last line without new line is read once finished
+        Files.write(job.toPath(), "a-1-3\na-1-".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        predicate = NotProcessedNvrPredicate.createNotProcessedNvrPredicateFromFile(job, global);
+        assertFalse(predicate.test("a-1-3"));
+        assertTrue(predicate.test("a-1-"));
+        Files.write(job.toPath(), "4 more garbage\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        predicate = NotProcessedNvrPredicate.createNotProcessedNvrPredicateFromFile(job, global);
+        assertFalse(predicate.test("a-1-4"));
+        assertFalse(predicate.test("a-1-1"));
+        assertFalse(predicate.test("g-1-1"));
+    }
+
+    @Test
+    public void predicateFromFilesRereadsRewrittenFile() throws IOException {
+        File dir = Files.createTempDirectory("processed").toFile();
+        File job = new File(dir, "processed.txt");
+        Files.write(job.toPath(), Arrays.asList("a-1-1", "a-1-2"));
+        assertFalse(NotProcessedNvrPredicate.createNotProcessedNvrPredicateFromFile(job, null).test("a-1-1"));
+        Files.write(job.toPath(), Arrays.asList("b-1-1"));
+        Predicate<String> predicate = NotProcessedNvrPredicate.createNotProcessedNvrPredicateFromFile(job, null);
+        assertTrue(predicate.test("a-1-1"));
+        assertFalse(predicate.test("b-1-1"));
+        Files.delete(job.toPath());
+        assertTrue(NotProcessedNvrPredicate.createNotProcessedNvrPredicateFromFile(job, null).test("b-1-1"));
+    }
+
+    @Test
+    public void predicateFromFilesRereadsFileEditedInPlace() throws IOException {
+        File dir = Files.createTempDirectory("processed").toFile();
+        File job = new File(dir, "processed.txt");
+        Files.write(job.toPath(), Arrays.asList("a-1-1", "a-1-2"));
+        assertFalse(NotProcessedNvrPredicate.createNotProcessedNvrPredicateFromFile(job, null).test("a-1-2"));
+        long modified = job.lastModified();
+        // a-1-2 is removed, so its build is processed again, the size stays
+        try (FileChannel channel = FileChannel.open(job.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("a-1-3".getBytes(StandardCharsets.UTF_8)), 6);
+        }
+        assertTrue(job.setLastModified(modified + 2000));
+        Predicate<String> predicate = NotProcessedNvrPredicate.createNotProcessedNvrPredicateFromFile(job, null);
+        assertTrue(predicate.test("a-1-2"));
+        assertFalse(predicate.test("a-1-3"));
+        assertFalse(predicate.test("a-1-1"));
+    }
+
 }
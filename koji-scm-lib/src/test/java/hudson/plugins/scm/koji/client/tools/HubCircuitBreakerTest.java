@@ -0,0 +1,102 @@
+package hudson.plugins.scm.koji.client.tools;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcHttpTransportException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+
+public class HubCircuitBreakerTest {
+
+    private static XmlRpcClientPool.Settings settings(int failureThreshold, int openTime) {
+        return new XmlRpcClientPool.Settings(1000, 1000, 1, 0, 0, failureThreshold, openTime);
+    }
+
+    private static void assertRejected(HubCircuitBreaker breaker, XmlRpcClientPool.Settings settings) {
+        try {
+            breaker.acquire(settings);
+            Assert.fail("Call should be rejected");
+        } catch (RuntimeException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("considered down"));
+        }
+    }
+
+    @Test
+    public void onlyFailuresOfTransportAreTransient() {
+        Assert.assertTrue(HubCircuitBreaker.isTransient(new RuntimeException(new XmlRpcException("x", new ConnectException()))));
+        Assert.assertTrue(HubCircuitBreaker.isTransient(new IOException()));
+        Assert.assertTrue(HubCircuitBreaker.isTransient(new XmlRpcHttpTransportException(503, "Service Unavailable")));
+        Assert.assertFalse(HubCircuitBreaker.isTransient(new XmlRpcHttpTransportException(404, "Not Found")));
+        Assert.assertFalse(HubCircuitBreaker.isTransient(new RuntimeException(new XmlRpcException(1, "fault"))));
+    }
+
+    @Test
+    public void hubIsOpenedAfterConsecutiveFailures() {
+        final HubCircuitBreaker breaker = HubCircuitBreaker.get("http://opened.example.com/kojihub");
+        final XmlRpcClientPool.Settings settings = settings(3, 60000);
+        for (int i = 0; i < 2; i++) {
+            breaker.acquire(settings);
+            breaker.failed(new IOException("down"), settings);
+        }
+        // success resets the count
+        breaker.acquire(settings);
+        breaker.responded();
+        for (int i = 0; i < 3; i++) {
+            breaker.acquire(settings);
+            breaker.failed(new IOException("down"), settings);
+        }
+        assertRejected(breaker, settings);
+        final HubCircuitBreaker.Status status = breaker.getStatus();
+        Assert.assertEquals(HubCircuitBreaker.State.OPEN, status.getState());
+        Assert.assertEquals(3, status.getFailures());
+        Assert.assertEquals(1, status.getRejected());
+        Assert.assertNotNull(status.getOpenedAt());
+        Assert.assertTrue(status.getLastFailure().contains("down"));
+    }
+
+    @Test
+    public void singleProbeIsLetThroughAfterOpenTime() throws InterruptedException {
+        final HubCircuitBreaker breaker = HubCircuitBreaker.get("http://probed.example.com/kojihub");
+        final XmlRpcClientPool.Settings settings = settings(1, 50);
+        breaker.acquire(settings);
+        breaker.failed(new IOException("down"), settings);
+        assertRejected(breaker, settings);
+        Thread.sleep(100);
+        breaker.acquire(settings);
+        Assert.assertEquals(HubCircuitBreaker.State.HALF_OPEN, breaker.getStatus().getState());
+        assertRejected(breaker, settings);
+        // failed probe opens the hub again
+        breaker.failed(new IOException("still down"), settings);
+        Assert.assertEquals(HubCircuitBreaker.State.OPEN, breaker.getStatus().getState());
+        assertRejected(breaker, settings);
+        Thread.sleep(100);
+        breaker.acquire(settings);
+        breaker.responded();
+        Assert.assertEquals(HubCircuitBreaker.State.CLOSED, breaker.getStatus().getState());
+        Assert.assertNull(breaker.getStatus().getOpenedAt());
+        breaker.acquire(settings);
+    }
+
+    @Test
+    public void zeroThresholdNeverOpens() {
+        final HubCircuitBreaker breaker = HubCircuitBreaker.get("http://disabled.example.com/kojihub");
+        final XmlRpcClientPool.Settings settings = settings(0, 60000);
+        for (int i = 0; i < 10; i++) {
+            breaker.acquire(settings);
+            breaker.failed(new IOException("down"), settings);
+        }
+        Assert.assertEquals(HubCircuitBreaker.State.CLOSED, breaker.getStatus().getState());
+    }
+
+    @Test
+    public void retryDelayGrowsWithJitter() {
+        for (int attempt = 1; attempt <= 5; attempt++) {
+            final long full = 100L << (attempt - 1);
+            final long delay = XmlRpcHelper.XmlRpcExecutioner.getRetryDelay(100, attempt);
+            Assert.assertTrue(delay + " of " + full, delay > full / 2 && delay <= full);
+        }
+        Assert.assertTrue(XmlRpcHelper.XmlRpcExecutioner.getRetryDelay(1000, 100) <= XmlRpcHelper.XmlRpcExecutioner.MAX_RETRY_DELAY);
+    }
+}
@@ -0,0 +1,112 @@
+package hudson.plugins.scm.koji.client.tools;
+
+import hudson.plugins.scm.koji.client.tools.StreamingResponseParser.ResponseShape;
+import hudson.plugins.scm.koji.model.Build;
+import hudson.plugins.scm.koji.model.RPM;
+import org.apache.ws.commons.util.NamespaceContextImpl;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.BuildList;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.MultiCallResponse;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.RPMList;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.TagSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class StreamingResponseParserTest {
+
+    private static String build(int id, String extra) {
+        return "<value><struct>"
+                + "<member><name>build_id</name><value><int>" + id + "</int></value></member>"
+                + "<member><name>name</name><value><string>java</string></value></member>"
+                + "<member><name>version</name><value>1.8.0</value></member>"
+                + "<member><name>release</name><value><string>" + id + ".el7</string></value></member>"
+                + "<member><name>nvr</name><value><string>java-1.8.0-" + id + ".el7</string></value></member>"
+                + extra
+                + "<member><name>completion_time</name><value><string>2018-01-0" + id + " 10:00:00</string></value></member>"
+                + "</struct></value>";
+    }
+
+    private static Object parse(String xml, ResponseShape shape) throws Exception {
+        final XmlRpcClient client = new XmlRpcClient();
+        final XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
+        config.setEnabledForExtensions(true);
+        final XmlRpcHelper.KojiTypeFactory factory = new XmlRpcHelper.KojiTypeFactory(client);
+        final NamespaceContextImpl context = new NamespaceContextImpl();
+        final StreamingResponseParser parser = new StreamingResponseParser(
+                (uri, localName) -> factory.getParser(config, context, uri, localName),
+                shape
+        );
+        final SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+        saxParserFactory.setNamespaceAware(true);
+        final XMLReader reader = saxParserFactory.newSAXParser().getXMLReader();
+        reader.setContentHandler(parser);
+        reader.parse(new InputSource(new StringReader(xml)));
+        return parser.getResult();
+    }
+
+    @Test
+    public void structsAreMappedAndUnknownMembersSkipped() throws Exception {
+        final String xml = "<array><data>"
+                + build(1, "<member><name>extra</name><value><struct><member><name>rpms</name><value><array><data>"
+                        + "<value><string>x</string></value></data></array></value></member></struct></value></member>")
+                + build(2, "<member><name>owner_name</name><value><nil/></value></member>")
+                + "</data></array>";
+        final List<Build> builds = BuildList.create(parse(xml, ResponseShape.structs(BuildList.MAPPER))).getValue();
+        Assert.assertEquals(2, builds.size());
+        Assert.assertEquals(1, (int) builds.get(0).getId());
+        Assert.assertEquals("java", builds.get(0).getName());
+        Assert.assertEquals("1.8.0", builds.get(0).getVersion());
+        Assert.assertEquals("1.el7", builds.get(0).getRelease());
+        Assert.assertEquals("java-1.8.0-2.el7", builds.get(1).getNvr());
+        Assert.assertEquals("2018-01-02 10:00:00", builds.get(1).getCompletionTime());
+    }
+
+    @Test
+    public void emptyArray() throws Exception {
+        Assert.assertEquals(
+                Collections.emptyList(),
+                BuildList.create(parse("<array><data></data></array>", ResponseShape.structs(BuildList.MAPPER))).getValue()
+        );
+    }
+
+    @Test
+    public void multicallResultsWithoutShapeAndFaultsAreParsedAsUsual() throws Exception {
+        final String xml = "<array><data>"
+                + "<value><array><data><value><array><data>"
+                + "<value><struct>"
+                + "<member><name>name</name><value><string>java</string></value></member>"
+                + "<member><name>arch</name><value><string>x86_64</string></value></member>"
+                + "<member><name>size</name><value><i4>42</i4></value></member>"
+                + "</struct></value>"
+                + "</data></array></value></data></array></value>"
+                + "<value><array><data><value><array><data>"
+                + "<value><struct><member><name>name</name><value><string>tag-a</string></value></member></struct></value>"
+                + "</data></array></value></data></array></value>"
+                + "<value><struct>"
+                + "<member><name>faultCode</name><value><int>1</int></value></member>"
+                + "<member><name>faultString</name><value><string>no such build</string></value></member>"
+                + "</struct></value>"
+                + "</data></array>";
+        final MultiCallResponse response = MultiCallResponse.create(parse(xml, ResponseShape.multicall(Arrays.asList(
+                ResponseShape.structs(RPMList.MAPPER),
+                null,
+                ResponseShape.structs(RPMList.MAPPER)
+        ))));
+        final List<Object> results = response.getValue();
+        final List<RPM> rpms = RPMList.create(results.get(0)).getValue();
+        Assert.assertEquals(1, rpms.size());
+        Assert.assertEquals("x86_64", rpms.get(0).getArch());
+        Assert.assertEquals(Collections.singleton("tag-a"), TagSet.create(results.get(1)).getValue());
+        Assert.assertTrue(results.get(2) instanceof MultiCallResponse.Fault);
+        Assert.assertEquals(1, (int) ((MultiCallResponse.Fault) results.get(2)).getFaultCode());
+    }
+}
@@ -0,0 +1,113 @@
+package hudson.plugins.scm.koji.client.tools;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class XmlRpcDispatcherTest {
+
+    private static final int POOL_SIZE = 2;
+
+    private XmlRpcClientPool.Settings original;
+
+    @Before
+    public void setup() {
+        original = XmlRpcClientPool.getSettings();
+        XmlRpcClientPool.configure(new XmlRpcClientPool.Settings(1000, 1000, POOL_SIZE));
+    }
+
+    @After
+    public void tearDown() {
+        XmlRpcClientPool.configure(original);
+    }
+
+    /**
+     * Futures complete just before their call frees its slot.
+     */
+    private static void awaitIdle(String hub) throws InterruptedException {
+        for (int i = 0; i < 50 && XmlRpcDispatcher.getPending(hub) > 0; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(0, XmlRpcDispatcher.getPending(hub));
+    }
+
+    @Test
+    public void callsToHubAreLimitedAndOtherHubIsNotBlocked() throws Exception {
+        final String slowHub = "http://slow.example.com/kojihub";
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<CompletableFuture<Integer>> slowCalls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final int value = i;
+            slowCalls.add(XmlRpcDispatcher.submit(slowHub, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                } finally {
+                    running.decrementAndGet();
+                }
+                return value;
+            }));
+        }
+        Assert.assertEquals(10, XmlRpcDispatcher.getPending(slowHub));
+        // other hub gets its call through while the slow one is stuck
+        Assert.assertEquals("fast", XmlRpcDispatcher.submit("http://fast.example.com/kojihub", () -> "fast").get(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (int i = 0; i < slowCalls.size(); i++) {
+            Assert.assertEquals(i, (int) slowCalls.get(i).get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertTrue(maxRunning.get() <= POOL_SIZE);
+        awaitIdle(slowHub);
+    }
+
+    @Test
+    public void failureCompletesFutureExceptionally() throws Exception {
+        final CompletableFuture<Object> future = XmlRpcDispatcher.submit("http://failing.example.com/kojihub", () -> {
+            throw new RuntimeException("boom");
+        });
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Failure expected");
+        } catch (ExecutionException ex) {
+            Assert.assertEquals("boom", ex.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void cancelledCallDoesNotRun() throws Exception {
+        final String hub = "http://cancelled.example.com/kojihub";
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final List<CompletableFuture<Object>> blocking = new ArrayList<>();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            blocking.add(XmlRpcDispatcher.submit(hub, () -> {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return null;
+            }));
+        }
+        final CompletableFuture<Object> waiting = XmlRpcDispatcher.submit(hub, calls::incrementAndGet);
+        Assert.assertTrue(waiting.cancel(true));
+        release.countDown();
+        for (CompletableFuture<Object> future : blocking) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        awaitIdle(hub);
+        Assert.assertEquals(0, calls.get());
+    }
+}
@@ -0,0 +1,171 @@
+package hudson.plugins.scm.koji.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Sorting of builds by version, previous tokenizer based comparison against
+ * {@link RpmVersion} keys, parsed as part of the sort (fresh builds) or before
+ * it. Not a unit test, run with:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) hudson.plugins.scm.koji.model.RpmVersionBenchmark
+ * </pre>
+ * (forked jvm of the benchmark does not see the classpath of exec:java)
+ * add -prof gc (see {@link #main(String[])} arguments) to see allocation
+ * rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpmVersionBenchmark {
+
+    private static final int BUILDS = 1000;
+
+    private String[] versions;
+    private String[] releases;
+    private List<Build> builds;
+    private List<Build> parsedBuilds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Random random = new Random(1);
+        versions = new String[BUILDS];
+        releases = new String[BUILDS];
+        for (int i = 0; i < BUILDS; i++) {
+            versions[i] = "1." + random.nextInt(20) + "." + random.nextInt(300);
+            releases[i] = random.nextInt(10) + ".b" + random.nextInt(20) + ".el7";
+        }
+        parsedBuilds = createBuilds();
+        parsedBuilds.forEach(Build::getVersionKey);
+        parsedBuilds.forEach(Build::getReleaseKey);
+    }
+
+    /**
+     * Each poll gets new builds from the hub, so their keys are not parsed
+     * yet. Sorting them must pay for the parsing, as the tokenizer does.
+     */
+    @Setup(Level.Invocation)
+    public void freshBuilds() {
+        builds = createBuilds();
+    }
+
+    private List<Build> createBuilds() {
+        final List<Build> created = new ArrayList<>(BUILDS);
+        for (int i = 0; i < BUILDS; i++) {
+            created.add(new Build(i, "java", versions[i], releases[i], "java-" + versions[i] + "-" + releases[i],
+                    "2018-01-01 00:00:00", null, null, null, null));
+        }
+        return created;
+    }
+
+    @Benchmark
+    public List<Build> tokenizer() {
+        return sort(builds, RpmVersionBenchmark::compareBuildVersions);
+    }
+
+    /**
+     * Parses the keys of fresh builds and sorts them.
+     */
+    @Benchmark
+    public List<Build> rpmVersion() {
+        return sort(builds, RpmVersionBenchmark::compareBuildKeys);
+    }
+
+    /**
+     * Sorts builds with keys parsed before, as when the same builds are
+     * sorted again within single poll.
+     */
+    @Benchmark
+    public List<Build> rpmVersionParsed() {
+        return sort(parsedBuilds, RpmVersionBenchmark::compareBuildKeys);
+    }
+
+    private static List<Build> sort(List<Build> builds, Comparator<Build> comparator) {
+        final List<Build> sorted = new ArrayList<>(builds);
+        sorted.sort(comparator);
+        return sorted;
+    }
+
+    private static int compareBuildKeys(Build b1, Build b2) {
+        final int res = b2.getVersionKey().compareTo(b1.getVersionKey());
+        return res != 0 ? res : b2.getReleaseKey().compareTo(b1.getReleaseKey());
+    }
+
+    // comparison used by BuildMatcher before RpmVersion
+    private static int compareBuildVersions(Build b1, Build b2) {
+        int res = compareStrings(b1.getVersion(), b2.getVersion());
+        if (res != 0) {
+            return res;
+        }
+        return compareStrings(b1.getRelease(), b2.getRelease());
+    }
+
+    private static int compareStrings(String s1, String s2) {
+        StringTokenizer tokenizer1 = new StringTokenizer(s1, "-.");
+        StringTokenizer tokenizer2 = new StringTokenizer(s2, "-.");
+        while (tokenizer1.hasMoreTokens() && tokenizer2.hasMoreTokens()) {
+            String t1 = tokenizer1.nextToken();
+            String t2 = tokenizer2.nextToken();
+            if (allDigits(t1) && allDigits(t2)) {
+                int intCompared = Integer.parseInt(t1) - Integer.parseInt(t2);
+                if (intCompared != 0) {
+                    return intCompared > 0 ? -1 : 1;
+                }
+                continue;
+            }
+            int stringCompared = t1.compareTo(t2);
+            if (stringCompared != 0) {
+                return stringCompared > 0 ? -1 : 1;
+            }
+        }
+        if (tokenizer1.hasMoreTokens()) {
+            return -1;
+        }
+        if (tokenizer2.hasMoreTokens()) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private static boolean allDigits(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (!Character.isDigit(str.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final OptionsBuilder options = new OptionsBuilder();
+        options.include(RpmVersionBenchmark.class.getSimpleName());
+        if (args.length > 0 && args[0].equals("-prof")) {
+            options.addProfiler(args[1]);
+        }
+        final Options built = options.build();
+        new Runner(built).run();
+    }
+}
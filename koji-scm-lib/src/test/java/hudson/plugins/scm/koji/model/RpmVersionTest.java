@@ -0,0 +1,85 @@
+package hudson.plugins.scm.koji.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RpmVersionTest {
+
+    private static void assertNewer(String newer, String older) {
+        Assert.assertTrue(newer + " > " + older, RpmVersion.compare(newer, older) > 0);
+        Assert.assertTrue(older + " < " + newer, RpmVersion.compare(older, newer) < 0);
+    }
+
+    private static void assertSame(String a, String b) {
+        Assert.assertEquals(a + " == " + b, 0, RpmVersion.compare(a, b));
+        Assert.assertEquals(a + " == " + b, 0, RpmVersion.compare(b, a));
+    }
+
+    @Test
+    public void numbers() {
+        assertSame("1.0", "1.0");
+        assertNewer("1.0.1", "1.0");
+        assertNewer("2.0", "1.0");
+        assertNewer("10", "2");
+        assertNewer("1.10", "1.9");
+        assertSame("010", "10");
+        assertSame("1.0", "1.00");
+        assertSame("0", "000");
+    }
+
+    @Test
+    public void separators() {
+        assertSame("1.0", "1_0");
+        assertSame("1.0", "1..0");
+        assertSame("1.0", "1.0.");
+        assertSame("2_0", "2+0");
+    }
+
+    @Test
+    public void letters() {
+        assertNewer("b", "a");
+        assertNewer("1.0a", "1.0");
+        assertNewer("1.0b", "1.0a");
+        assertNewer("1", "a");
+        assertNewer("1.0.1", "1.0a");
+        assertNewer("a", "A");
+        assertNewer("abc", "ab");
+    }
+
+    @Test
+    public void tilde() {
+        assertNewer("1.0", "1.0~rc1");
+        assertNewer("1.0~rc2", "1.0~rc1");
+        assertNewer("1.0~rc1", "1.0~~rc1");
+        assertNewer("1.0~rc1", "1.0~");
+        assertSame("1.0~rc1", "1.0~rc1");
+    }
+
+    @Test
+    public void caret() {
+        assertNewer("1.0^", "1.0");
+        assertNewer("1.0^git1", "1.0");
+        assertNewer("1.0.1", "1.0^git1");
+        assertNewer("1.0^git2", "1.0^git1");
+        assertNewer("1.0^git1", "1.0^git1~pre");
+        assertNewer("1.0^git1", "1.0~rc1");
+    }
+
+    @Test
+    public void longNumbers() {
+        assertNewer("100000000000000000000000000001", "100000000000000000000000000000");
+        assertNewer("1.100000000000000000000", "1.99999999999999999999");
+    }
+
+    @Test
+    public void emptyAndNull() {
+        assertSame("", null);
+        assertNewer("1", "");
+        assertNewer("", "~1");
+    }
+
+    @Test
+    public void manySegments() {
+        assertNewer("1.2.3.4.5.6.7.8.9.10.11.12", "1.2.3.4.5.6.7.8.9.10.11.11");
+    }
+}